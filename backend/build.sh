@@ -80,6 +80,14 @@ test () {
   docker compose run --rm maven mvn $MVN_OPTS test
 }
 
+testDb () {
+  docker compose up -d --wait postgres-test && \
+  docker compose run --rm maven mvn $MVN_OPTS -Pdb-tests test
+  status=$?
+  docker compose rm -fsv postgres-test
+  return $status
+}
+
 
 publish() {
   echo "Publishing..."
@@ -121,6 +129,9 @@ do
     test)
       test
       ;;
+    testDb)
+      testDb
+      ;;
     watch)
       watch
       ;;
@@ -27,11 +27,18 @@ import io.vertx.core.Promise;
 import io.vertx.core.eventbus.DeliveryOptions;
 import net.atos.entng.support.controllers.*;
 import net.atos.entng.support.enums.BugTracker;
+import net.atos.entng.support.backfill.CategoryLabelBackfillWorker;
+import net.atos.entng.support.backfill.ShortDescBackfillWorker;
+import net.atos.entng.support.directory.DirectorySyncWorker;
 import net.atos.entng.support.events.SupportSearchingEvents;
 import net.atos.entng.support.export.TicketExportWorker;
+import net.atos.entng.support.filters.AuthorizationCache;
 import net.atos.entng.support.helpers.PromiseHelper;
+import net.atos.entng.support.histo.HistoJournal;
+import net.atos.entng.support.histo.HistoJournalWorker;
 import net.atos.entng.support.message.MessageResponseHandler;
 import net.atos.entng.support.services.*;
+import net.atos.entng.support.stats.TicketStatsWorker;
 
 import org.apache.commons.lang3.tuple.Pair;
 import org.entcore.common.folders.FolderManager;
@@ -91,6 +98,8 @@ public class Support extends BaseServer {
 		FolderManager folderManager = FolderManager.mongoManager("documents", storage, vertx, shareService, imageResizerAddress, useOldQueryChildren);
 
 		ServiceFactory serviceFactory = new ServiceFactory(vertx, storage, Neo4j.getInstance(), Sql.getInstance(), MongoDb.getInstance(), config, bugTrackerType);
+		AuthorizationCache.init(vertx.eventBus(), config);
+		HistoJournal.init(vertx.eventBus(), config);
 
         // Indicates if the user can have direct communication with redmine, or if the admin has to transfer the informations.
         bugTrackerCommDirect = config.getBoolean("bug-tracker-comm-direct", true);
@@ -128,6 +137,13 @@ public class Support extends BaseServer {
 		}
 
 		vertx.deployVerticle(TicketExportWorker.class, new DeploymentOptions().setConfig(config).setWorker(true));
+		vertx.deployVerticle(DirectorySyncWorker.class, new DeploymentOptions().setConfig(config).setWorker(true));
+		vertx.deployVerticle(ShortDescBackfillWorker.class, new DeploymentOptions().setConfig(config).setWorker(true));
+		vertx.deployVerticle(CategoryLabelBackfillWorker.class, new DeploymentOptions().setConfig(config).setWorker(true));
+		vertx.deployVerticle(TicketStatsWorker.class, new DeploymentOptions().setConfig(config).setWorker(true));
+		if (HistoJournal.isEnabled()) {
+			vertx.deployVerticle(HistoJournalWorker.class, new DeploymentOptions().setConfig(config).setWorker(true));
+		}
 
 		return Future.succeededFuture();
 	}
@@ -149,4 +165,12 @@ public class Support extends BaseServer {
 		return promise.future();
 	}
 
+	public static Future<Void> launchCategoryLabelBackfillWorker(EventBus eb) {
+		Promise<JsonObject> promise = Promise.promise();
+		eb.request(CategoryLabelBackfillWorker.class.getName(), new JsonObject(),
+				MessageResponseHandler.messageJsonObjectHandler(PromiseHelper.handler(promise)));
+
+		return promise.future().mapEmpty();
+	}
+
 }
@@ -13,6 +13,8 @@ import java.util.ArrayList;
 
 public class Ticket implements IdObject
 {
+    public static final int SHORT_DESCRIPTION_LENGTH = 100;
+
     public Id<Ticket, Integer> id;
     public TicketStatus status;
 
@@ -60,7 +62,7 @@ public class Ticket implements IdObject
         for(Comment m : this.comments)
             jsonComments.add(m.toJsonObject());
 
-        String shortDesc = this.shortDescription != null ? this.shortDescription : this.description != null ? this.description.substring(0, this.description.length() < 101 ? this.description.length() : 101) : null;
+        String shortDesc = this.shortDescription != null ? this.shortDescription : shortDescription(this.description);
 
         return new JsonObject()
                     .put("id", this.id.get())
@@ -81,4 +83,14 @@ public class Ticket implements IdObject
                     .put("attachmentsNames", jsonAttachmentsNames)
                     .put("comments", jsonComments);
     }
+
+    /**
+     * @return the beginning of the description shown in listings, stored in support.tickets.short_desc
+     */
+    public static String shortDescription(String description)
+    {
+        return description != null && description.length() > SHORT_DESCRIPTION_LENGTH
+                ? description.substring(0, SHORT_DESCRIPTION_LENGTH)
+                : description;
+    }
 }
@@ -0,0 +1,108 @@
+package net.atos.entng.support.backfill;
+
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import net.atos.entng.support.constants.JiraTicket;
+import net.atos.entng.support.enums.BackfillStatus;
+import net.atos.entng.support.services.TicketServiceSql;
+import net.atos.entng.support.services.impl.TicketServiceSqlImpl;
+import org.vertx.java.busmods.BusModBase;
+
+/**
+ * Fills support.tickets.category_label for the tickets created without it, once the backfill has been started in
+ * support.backfill_jobs. Runs on any message sent to its class name, and on start to resume a backfill stopped by a restart.
+ * Tickets are scanned by batches of "category-label-backfill-batch-size" from the checkpoint of the job, with a pause
+ * of "category-label-backfill-pause" milliseconds between two batches.
+ * Every node deploys the worker, the job row is locked by each batch so that a single node fills the tickets.
+ */
+public class CategoryLabelBackfillWorker extends BusModBase implements Handler<Message<JsonObject>> {
+
+    protected final Logger log = LoggerFactory.getLogger(CategoryLabelBackfillWorker.class);
+
+    private TicketServiceSql ticketServiceSql;
+    private int batchSize;
+    private long pause;
+    private boolean backfillInProgress = false;
+
+    @Override
+    public void start(Promise<Void> startPromise) {
+        super.start();
+        ticketServiceSql = new TicketServiceSqlImpl(null);
+        batchSize = Math.max(1, config.getInteger("category-label-backfill-batch-size", 1000));
+        pause = config.getLong("category-label-backfill-pause", 100L);
+
+        eb.consumer(this.getClass().getName(), this);
+        log.info(String.format("[Support@%s::start] Launching worker %s, deploy verticle %s",
+                this.getClass().getSimpleName(), this.getClass().getSimpleName(), vertx.getOrCreateContext().deploymentID()));
+        startPromise.complete();
+        vertx.setTimer(pause, timerId -> resume());
+    }
+
+    @Override
+    public void handle(Message<JsonObject> event) {
+        resume();
+        event.reply(new JsonObject().put(JiraTicket.STATUS, JiraTicket.OK));
+    }
+
+    private void resume() {
+        if (backfillInProgress) {
+            return;
+        }
+        backfillInProgress = true;
+        ticketServiceSql.getCategoryLabelBackfill()
+                .onSuccess(job -> {
+                    if (!BackfillStatus.RUNNING.status().equals(job.getString(JiraTicket.STATUS))) {
+                        backfillInProgress = false;
+                        return;
+                    }
+                    log.info(String.format("[Support@%s::resume] Filling category labels after ticket %s",
+                            this.getClass().getSimpleName(), job.getValue("last_id")));
+                    backfill(job.getJsonObject("params"));
+                })
+                .onFailure(err -> {
+                    log.error(String.format("[Support@%s::resume] Fail to read category label backfill: %s",
+                            this.getClass().getSimpleName(), err.getMessage()));
+                    backfillInProgress = false;
+                });
+    }
+
+    private void backfill(JsonObject categoryLabels) {
+        if (categoryLabels == null || categoryLabels.isEmpty()) {
+            end("No category label to fill");
+            return;
+        }
+        ticketServiceSql.backfillCategoryLabels(categoryLabels, batchSize)
+                .onSuccess(progress -> {
+                    if (!progress.containsKey("scanned")) {
+                        // Another node holds the job, or it has been ended: that node goes on with the backfill
+                        log.info(String.format("[Support@%s::backfill] Category label backfill run by another node",
+                                this.getClass().getSimpleName()));
+                        backfillInProgress = false;
+                        return;
+                    }
+                    if (progress.getInteger("scanned", 0) < batchSize) {
+                        log.info(String.format("[Support@%s::backfill] %s category labels filled",
+                                this.getClass().getSimpleName(), progress.getValue("processed")));
+                        end(null);
+                        return;
+                    }
+                    vertx.setTimer(pause, timerId -> backfill(categoryLabels));
+                })
+                .onFailure(err -> {
+                    log.error(String.format("[Support@%s::backfill] Backfill stopped: %s",
+                            this.getClass().getSimpleName(), err.getMessage()));
+                    end(err.getMessage());
+                });
+    }
+
+    private void end(String error) {
+        ticketServiceSql.endCategoryLabelBackfill(error)
+                .onFailure(err -> log.error(String.format("[Support@%s::end] Fail to end category label backfill: %s",
+                        this.getClass().getSimpleName(), err.getMessage())))
+                .onComplete(result -> backfillInProgress = false);
+    }
+}
@@ -0,0 +1,79 @@
+package net.atos.entng.support.backfill;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import net.atos.entng.support.helpers.JobLeaseHelper;
+import net.atos.entng.support.services.TicketServiceSql;
+import net.atos.entng.support.services.impl.TicketServiceSqlImpl;
+import org.vertx.java.busmods.BusModBase;
+
+/**
+ * Fills support.tickets.short_desc for the tickets created before the column existed.
+ * Tickets are updated by batches of "short-desc-backfill-batch-size", with a pause of "short-desc-backfill-pause"
+ * milliseconds between two batches so that the backfill does not hold the table. Stops once no ticket is left.
+ * Every node deploys the worker, the backfill only runs on the node holding the "short_desc_backfill" lease of
+ * support.job_leases, renewed for "short-desc-backfill-lease" seconds before each batch.
+ */
+public class ShortDescBackfillWorker extends BusModBase {
+
+    protected final Logger log = LoggerFactory.getLogger(ShortDescBackfillWorker.class);
+
+    private static final String BACKFILL_LEASE = "short_desc_backfill";
+
+    private TicketServiceSql ticketServiceSql;
+    private String owner;
+    private long leaseDuration;
+    private int batchSize;
+    private long pause;
+    private long backfilled = 0;
+
+    @Override
+    public void start(Promise<Void> startPromise) {
+        super.start();
+        ticketServiceSql = new TicketServiceSqlImpl(null);
+        owner = vertx.getOrCreateContext().deploymentID();
+        leaseDuration = config.getLong("short-desc-backfill-lease", 600L);
+        batchSize = Math.max(1, config.getInteger("short-desc-backfill-batch-size", 1000));
+        pause = config.getLong("short-desc-backfill-pause", 100L);
+        log.info(String.format("[Support@%s::start] Launching worker %s, deploy verticle %s",
+                this.getClass().getSimpleName(), this.getClass().getSimpleName(), owner));
+        startPromise.complete();
+        vertx.setTimer(pause, timerId -> backfill());
+    }
+
+    private void backfill() {
+        JobLeaseHelper.lock(BACKFILL_LEASE, owner, leaseDuration, 0L)
+                .compose(locked -> {
+                    if (!locked) {
+                        log.info(String.format("[Support@%s::backfill] Backfill running on another node",
+                                this.getClass().getSimpleName()));
+                        return Future.succeededFuture(false);
+                    }
+                    return ticketServiceSql.backfillShortDescriptions(batchSize)
+                            .compose(updated -> {
+                                backfilled += updated;
+                                if (updated >= batchSize) {
+                                    return Future.succeededFuture(true);
+                                }
+                                if (backfilled > 0) {
+                                    log.info(String.format("[Support@%s::backfill] %d short descriptions filled",
+                                            this.getClass().getSimpleName(), backfilled));
+                                }
+                                return JobLeaseHelper.unlock(BACKFILL_LEASE, owner, true).map(false);
+                            });
+                })
+                .onSuccess(hasMore -> {
+                    if (hasMore) {
+                        vertx.setTimer(pause, timerId -> backfill());
+                    }
+                })
+                .onFailure(err -> {
+                    log.error(String.format("[Support@%s::backfill] Backfill stopped after %d tickets: %s",
+                            this.getClass().getSimpleName(), backfilled, err.getMessage()));
+                    // The lease is released so that another node can take the backfill over on its next start
+                    JobLeaseHelper.unlock(BACKFILL_LEASE, owner, false);
+                });
+    }
+}
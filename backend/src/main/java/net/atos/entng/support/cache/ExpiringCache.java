@@ -0,0 +1,88 @@
+package net.atos.entng.support.cache;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Small in-memory cache whose entries expire after a fixed time to live.
+ * Expired entries are dropped lazily on read, and purged when the cache grows over its maximum size.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class ExpiringCache<K, V> {
+
+    private final Map<K, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final long ttl;
+    private final int maxSize;
+
+    /**
+     * @param ttl     time to live of an entry in milliseconds, 0 or less disables the cache
+     * @param maxSize max number of entries kept in the cache
+     */
+    public ExpiringCache(long ttl, int maxSize) {
+        this.ttl = ttl;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @param key key of the entry
+     * @return {V} cached value or null if absent or expired
+     */
+    public V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.isExpired()) {
+            entries.remove(key, entry);
+            return null;
+        }
+        return entry.value;
+    }
+
+    public void put(K key, V value) {
+        if (ttl <= 0 || value == null) {
+            return;
+        }
+        if (entries.size() >= maxSize) {
+            purge();
+        }
+        entries.put(key, new Entry<>(value, System.currentTimeMillis() + ttl));
+    }
+
+    public void invalidate(K key) {
+        entries.remove(key);
+    }
+
+    public void invalidateIf(Predicate<K> predicate) {
+        entries.keySet().removeIf(predicate);
+    }
+
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    private void purge() {
+        entries.values().removeIf(Entry::isExpired);
+        if (entries.size() >= maxSize) {
+            // Every entry is still alive: start again from an empty cache rather than growing unbounded
+            entries.clear();
+        }
+    }
+
+    private static class Entry<V> {
+        private final V value;
+        private final long expiration;
+
+        private Entry(V value, long expiration) {
+            this.value = value;
+            this.expiration = expiration;
+        }
+
+        private boolean isExpired() {
+            return System.currentTimeMillis() > expiration;
+        }
+    }
+}
@@ -36,6 +36,21 @@ public class JiraTicket {
     public static final String SORT_BY = "sortBy";
     public static final String ORDER = "order";
     public static final String PAGE = "page";
+    public static final String AFTER = "after";
+    public static final String CURSOR = "cursor";
+    public static final String OWNER_PROFILE_RANK = "owner_profile_rank";
+    public static final String RELEVANCE = "relevance";
+    public static final String COUNT = "count";
+    public static final String ESTIMATED = "estimated";
+    public static final String TOTAL_RESULTS = "total_results";
+    public static final String TOTAL_RESULTS_ESTIMATED = "total_results_estimated";
+    public static final String TOTAL = "total";
+    public static final String STATUSES = "statuses";
+    public static final String SCHOOLS = "schools";
+    public static final String CATEGORIES = "categories";
+    public static final String COMMENTS = "comments";
+    public static final String ATTACHMENTS = "attachments";
+    public static final String EVENTS = "events";
     public static final String APPLICANT = "applicant";
     public static final String OWNER = "owner";
     public static final String OWNERIDS = "ownerIds";
@@ -54,6 +69,13 @@ public class JiraTicket {
     public static final String STRUCTURE_ID = "structureId";
     public static final String USERID = "userId";
     public static final String CATEGORY_LABEL = "category_label";
+    public static final String ESCALATION_STATUS = "escalation_status";
+    public static final String ISSUE_UPDATE_DATE = "issue_update_date";
+    public static final String OWNER_NAME = "owner_name";
+    public static final String LAST_ISSUE_UPDATE = "last_issue_update";
+    public static final String SHORT_DESC = "short_desc";
+    public static final String FIELDS = "fields";
+    public static final String ACTION = "action";
 
     // Rights
     public static final String AUTO_OPEN_TICKET = "support.ticket.auto.open";
@@ -74,6 +96,7 @@ public class JiraTicket {
     public static final String RESULT = "result";
     public static final String RESULTS = "results";
     public static final String OK = "ok";
+    public static final String ALREADY_RUNNING = "already_running";
     public static final String USER = "user";
     public static final String DISPLAYNAME = "displayName";
     public static final String FILENAME = "fileName";
@@ -6,6 +6,7 @@ import fr.wseduc.security.SecuredAction;
 import io.vertx.core.http.HttpServerRequest;
 import io.vertx.core.json.JsonObject;
 import net.atos.entng.support.constants.JiraTicket;
+import net.atos.entng.support.histo.HistoJournal;
 import org.entcore.common.controller.ControllerHelper;
 import org.entcore.common.http.filter.AdminFilter;
 import org.entcore.common.http.filter.ResourceFilter;
@@ -31,4 +32,13 @@ public class ConfigController extends ControllerHelper {
     public void getNumberTicketsPerPage(final HttpServerRequest request) {
         renderJson(request, new JsonObject().put(JiraTicket.NBTICKETSPERPAGE, config.getInteger(JiraTicket.NBTICKETSPERPAGE, 25)));
     }
+
+    @Get("/config/histo/journal/metrics")
+    @SecuredAction(value = "", type = ActionType.RESOURCE)
+    @ResourceFilter(SuperAdminFilter.class)
+    public void getHistoJournalMetrics(final HttpServerRequest request) {
+        HistoJournal.metrics()
+                .onSuccess(metrics -> renderJson(request, metrics))
+                .onFailure(err -> renderError(request, new JsonObject().put(JiraTicket.MESSAGE, err.getMessage())));
+    }
 }
\ No newline at end of file
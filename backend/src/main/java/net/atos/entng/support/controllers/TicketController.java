@@ -29,6 +29,7 @@ import fr.wseduc.security.SecuredAction;
 import fr.wseduc.webutils.Either;
 import fr.wseduc.webutils.I18n;
 import fr.wseduc.webutils.request.RequestUtils;
+import io.vertx.core.CompositeFuture;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.MultiMap;
@@ -36,6 +37,7 @@ import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
 import io.vertx.core.eventbus.Message;
 import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import net.atos.entng.support.Attachment;
@@ -51,16 +53,23 @@ import net.atos.entng.support.enums.TicketStatus;
 import net.atos.entng.support.export.TicketsCSVExport;
 import net.atos.entng.support.filters.Admin;
 import net.atos.entng.support.filters.AdminOfTicketsStructure;
+import net.atos.entng.support.filters.AuthorizationCache;
 import net.atos.entng.support.filters.OwnerOrLocalAdmin;
+import net.atos.entng.support.helpers.BoundedTaskQueue;
 import net.atos.entng.support.helpers.CSVHelper;
+import net.atos.entng.support.helpers.ETagHelper;
+import net.atos.entng.support.helpers.EnrichmentHelper;
+import net.atos.entng.support.helpers.PaginationHelper;
 import net.atos.entng.support.helpers.PromiseHelper;
 import net.atos.entng.support.helpers.RequestHelper;
+import net.atos.entng.support.helpers.StreamHelper;
 import net.atos.entng.support.helpers.UserInfosHelper;
 import net.atos.entng.support.model.I18nConfig;
 import net.atos.entng.support.services.EscalationService;
 import net.atos.entng.support.services.ServiceFactory;
 import net.atos.entng.support.services.TicketService;
 import net.atos.entng.support.services.TicketServiceSql;
+import net.atos.entng.support.services.TicketStatsService;
 import net.atos.entng.support.services.UserService;
 import net.atos.entng.support.services.impl.TicketServiceNeo4jImpl;
 import org.entcore.common.controller.ControllerHelper;
@@ -77,6 +86,8 @@ import org.entcore.common.user.UserUtils;
 import org.entcore.common.utils.Id;
 import org.vertx.java.core.http.RouteMatcher;
 
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
@@ -101,14 +112,18 @@ public class TicketController extends ControllerHelper {
 
     private final TicketServiceSql ticketServiceSql;
     private final TicketService ticketService;
+    private final TicketStatsService ticketStatsService;
     private final UserService userService;
     private final EscalationService escalationService;
     private final Storage storage;
     private final EventHelper eventHelper;
+    // Bug tracker synchronisations of a bulk update, so that they do not all run at once
+    private BoundedTaskQueue issueSyncQueue;
 
     public TicketController(ServiceFactory serviceFactory) {
         ticketServiceSql = serviceFactory.ticketServiceSql();
         this.ticketService = serviceFactory.ticketService();
+        this.ticketStatsService = serviceFactory.ticketStatsService();
         userService = serviceFactory.userService();
         escalationService = serviceFactory.escalationService();
         this.storage = serviceFactory.getStorage();
@@ -119,6 +134,7 @@ public class TicketController extends ControllerHelper {
     @Override
     public void init(Vertx vertx, JsonObject config, RouteMatcher rm, Map<String, fr.wseduc.webutils.security.SecuredAction> securedActions) {
         super.init(vertx, config, rm, securedActions);
+        this.issueSyncQueue = new BoundedTaskQueue(config.getInteger("bugtracker-sync-concurrency", 4));
     }
 
     @Post("/ticket")
@@ -150,7 +166,10 @@ public class TicketController extends ControllerHelper {
                             ticket.put("category_label", categoryLabel != null ? categoryLabel : displayName);
 
                             final Handler<Either<String,Ticket>> handler = getCreateOrUpdateTicketHandler(request, user, ticket, null);
-                            ticketServiceSql.createTicket(ticket, attachments, user, I18n.acceptLanguage(request), eventHelper.onCreateResource(request, RESOURCE_NAME, handler));
+                            String histoEvent = I18n.getInstance().translate("support.ticket.histo.creation", getHost(request),
+                                    I18n.acceptLanguage(request));
+                            ticketServiceSql.createTicket(ticket, attachments, user, I18n.acceptLanguage(request), histoEvent,
+                                    eventHelper.onCreateResource(request, RESOURCE_NAME, handler));
                         })
                         .onFailure(err -> {
                             String errorMessage = "[Support@TicketController::fillCategoryLabel] Failed to fill tickets without category label : ";
@@ -177,53 +196,19 @@ public class TicketController extends ControllerHelper {
                         response.ownerName = user.getUsername();
                         response.ownerId = user.getUserId();
                         notifyTicketCreated(request, user, response);
-                        ticketServiceSql.createTicketHisto(response.id.toString(),
-                                I18n.getInstance().translate("support.ticket.histo.creation", getHost(request),
-                                        I18n.acceptLanguage(request)),
-                                ticket.getInteger("status"), user.getUserId(), TicketHisto.NEW, res -> {
-                                    if (res.isLeft()) {
-                                        log.error("Error creation historization : " + res.left().getValue());
-                                    }
-                                });
                         renderJson(request, response.toJsonObject(), 200);
                     } else {
-                        ticketServiceSql.updateEventCount(ticketId, res -> {
-                            if (res.isLeft()) {
-                                log.error("Error updating ticket (event_count) : " + res.left().getValue());
-                            }
-                        });
+                        if (ticket.containsKey(JiraTicket.OWNER) || ticket.containsKey(JiraTicket.SCHOOL_ID)) {
+                            // Who may access the ticket changed
+                            AuthorizationCache.invalidate(eb);
+                        }
                         List<Attachment> attachments = response.attachments;
                         boolean commentSentToBugtracker = false;
-                        // we only historize if no comment has been added. If there is a comment, it will appear in the history
+                        // event_count and history have been updated with the ticket (see TicketServiceSql#updateTicket)
                         if (ticket.getString("newComment") == null || "".equals(ticket.getString("newComment"))) {
-                            ticketServiceSql.createTicketHisto(ticketId, I18n.getInstance().translate("support.ticket.histo.modification",
-                                    getHost(request), I18n.acceptLanguage(request)),
-                                    ticket.getInteger("status"), user.getUserId(), TicketHisto.UPDATED, res -> {
-                                        if (res.isLeft()) {
-                                            log.error("Error creation historization : " + res.left().getValue());
-                                        } else {
-                                            sendTicketUpdateToIssue(request, ticketId, ticket, user, false);
-                                        }
-                                    });
+                            sendTicketUpdateToIssue(request, ticketId, ticket, user, false);
                         } else {
-                            if (response.status == TicketStatus.RESOLVED || response.status == TicketStatus.CLOSED) {
-                                ticketServiceSql.createTicketHisto(ticketId, I18n.getInstance()
-                                                .translate("support.ticket.histo.modification", getHost(request),
-                                                        I18n.acceptLanguage(request)), TicketStatus.OPENED.status(),
-                                        user.getUserId(), TicketHisto.UPDATED, res -> {
-                                            if (res.isLeft()) {
-                                                log.error("Error creation historization : " + res.left().getValue());
-                                            }
-                                        });
-                            } else if (response.status == TicketStatus.NEW && !user.getUserId().equals(response.ownerId)) {
-                                ticketServiceSql.createTicketHisto(ticketId, I18n.getInstance()
-                                                .translate("support.ticket.histo.modification", getHost(request),
-                                                        I18n.acceptLanguage(request)), TicketStatus.OPENED.status(),
-                                        user.getUserId(), TicketHisto.UPDATED, res -> {
-                                            if (res.isLeft()) {
-                                                log.error("Error creation historization : " + res.left().getValue());
-                                            }
-                                        });
+                            if (response.status == TicketStatus.NEW && !user.getUserId().equals(response.ownerId)) {
                                 response.status = TicketStatus.OPENED;
                             }
 
@@ -310,12 +295,45 @@ public class TicketController extends ControllerHelper {
         });
     }
 
-    private void updateIssuesStatus(HttpServerRequest request, List<Integer> ids) {
-        for (Integer id : ids) {
-            sendTicketUpdateToIssue(request, id.toString(), null, null, true);
+    /**
+     * Send the tickets updated in bulk to the bug tracker, a few at a time
+     *
+     * @param escalatedTickets [{"id": Long}] of the updated tickets escalated to a bug tracker
+     */
+    private void updateIssuesStatus(HttpServerRequest request, UserInfos user, JsonArray escalatedTickets) {
+        for (JsonObject escalatedTicket : EnrichmentHelper.jsonObjects(escalatedTickets)) {
+            String ticketId = escalatedTicket.getValue(JiraTicket.ID).toString();
+            issueSyncQueue.submit(() -> syncIssue(request, user, ticketId));
         }
     }
 
+    /**
+     * Same as {@link #escalateTicket(HttpServerRequest, String, boolean, boolean)} updating an escalation,
+     * completed once the bug tracker has answered
+     */
+    private Future<Void> syncIssue(HttpServerRequest request, UserInfos user, String ticketId) {
+        Promise<Void> promise = Promise.promise();
+        ticketServiceSql.getTicketForEscalationService(ticketId, getTicketResponse -> {
+            if (getTicketResponse.isLeft() || getTicketResponse.right().getValue() == null
+                    || getTicketResponse.right().getValue().id == null) {
+                // Logged by the escalation handler
+                getTicketForEscalationHandler(request, ticketId, user, false).handle(getTicketResponse);
+                promise.complete();
+                return;
+            }
+            Ticket ticket = getTicketResponse.right().getValue();
+            ticketServiceSql.getIssue(ticketId, getIssueResponse -> {
+                Issue issue = getIssueResponse.isRight() ? getIssueResponse.right().getValue() : null;
+                Handler<Either<String, Issue>> escalateTicketHandler = getEscalateTicketHandler(request, ticketId, user, false);
+                escalationService.escalateTicket(request, ticket, user, issue, escalationResponse -> {
+                    promise.complete();
+                    escalateTicketHandler.handle(escalationResponse);
+                });
+            });
+        });
+        return promise.future();
+    }
+
     /**
      * Notify local administrators that a ticket has been created
      */
@@ -414,7 +432,7 @@ public class TicketController extends ControllerHelper {
 
                                     ticket.put("category_label", categoryLabel != null ? categoryLabel : displayName);
 
-                                    ticketServiceSql.updateTicket(ticketId, ticket, user,
+                                    ticketServiceSql.updateTicket(ticketId, ticket, user, histoModification(request),
                                             getCreateOrUpdateTicketHandler(request, user, ticket, ticketId));
                                 }).onFailure(err -> {
                                     String errorMessage = "[Support@TicketController::updateTicket] Failed to fill ticket without category label : ";
@@ -422,7 +440,7 @@ public class TicketController extends ControllerHelper {
                                     renderError(request, new JsonObject().put("error", err.getMessage()));
                                 });
                     } else {
-                        ticketServiceSql.updateTicket(ticketId, ticket, user,
+                        ticketServiceSql.updateTicket(ticketId, ticket, user, histoModification(request),
                                 getCreateOrUpdateTicketHandler(request, user, ticket, ticketId));
                     }
                 });
@@ -444,14 +462,16 @@ public class TicketController extends ControllerHelper {
                 // getting list of tickets ids to update, based on ticketUpdate.json file format.
                 RequestUtils.bodyToJson(request, pathPrefix + "ticketUpdate", data -> {
                     final List<Integer> ids = data.getJsonArray("ids").getList();
-                    ticketServiceSql.updateTicketStatus(newStatus, ids, event -> {
+                    String histoEvent = I18n.getInstance().translate("support.ticket.histo.mass.modification",
+                            getHost(request), I18n.acceptLanguage(request));
+                    ticketServiceSql.updateTicketStatus(newStatus, ids, histoEvent, user.getUserId(), event -> {
                         if (event.isRight()) {
-                            createTicketHistoMultiple(ids, I18n.getInstance().translate("support.ticket.histo.mass.modification",
-                                    getHost(request), I18n.acceptLanguage(request)), TicketHisto.fromEventType(newStatus).eventType(), user.getUserId());
+                            // Grants were given on the previous statuses of the tickets
+                            AuthorizationCache.invalidate(eb);
                             request.response().setStatusCode(200).end();
                             if(escalationService != null && escalationService.getBugTrackerType().getBugTrackerSyncType()
                                     == BugTrackerSyncType.ASYNC) {
-                                updateIssuesStatus(request, ids);
+                                updateIssuesStatus(request, user, event.right().getValue());
                             }
                             //renderJson(request, wholeIssue);
                         } else {
@@ -546,15 +566,17 @@ public class TicketController extends ControllerHelper {
         UserUtils.getUserInfos(eb, request, user -> {
             if (user != null) {
                 Map<String, UserInfos.Function> functions = user.getFunctions();
-                if (functions.containsKey(DefaultFunctions.ADMIN_LOCAL) || functions.containsKey(DefaultFunctions.SUPER_ADMIN)) {
-                    Promise<JsonArray> ticketsPromise = Promise.promise();
-                    ticketServiceSql.getTicket(user, id, PromiseHelper.handler(ticketsPromise));
-                    ticketsPromise.future()
-                            .onSuccess(result -> renderJson(request, result))
-                            .onFailure(err -> renderError(request, new JsonObject()));
-                } else {
-                    ticketServiceSql.getMyTicket(user, id, arrayResponseHandler(request));
-                }
+                renderIfModified(request, user, ticketServiceSql.fingerprintTicket(id), () -> {
+                    if (functions.containsKey(DefaultFunctions.ADMIN_LOCAL) || functions.containsKey(DefaultFunctions.SUPER_ADMIN)) {
+                        Promise<JsonArray> ticketsPromise = Promise.promise();
+                        ticketServiceSql.getTicket(user, id, PromiseHelper.handler(ticketsPromise));
+                        ticketsPromise.future()
+                                .onSuccess(result -> renderJson(request, result))
+                                .onFailure(err -> renderError(request, new JsonObject()));
+                    } else {
+                        ticketServiceSql.getMyTicket(user, id, arrayResponseHandler(request));
+                    }
+                });
             } else {
                 log.debug("User not found in session.");
                 unauthorized(request);
@@ -563,6 +585,36 @@ public class TicketController extends ControllerHelper {
 
     }
 
+    @Get("/ticket/:id/full")
+    @ApiDoc("Get a ticket with its comments, attachments, history and bug tracker issue")
+    @SecuredAction(value = "", type = ActionType.AUTHENTICATED)
+    public void getFullTicket(final HttpServerRequest request) {
+        final Integer id;
+        try {
+            id = Integer.valueOf(request.params().get(JiraTicket.ID));
+        } catch (NumberFormatException e) {
+            badRequest(request);
+            return;
+        }
+        UserUtils.getUserInfos(eb, request, user -> {
+            if (user != null) {
+                // Access is checked by the query itself, a ticket the user may not see is not found
+                ticketServiceSql.getFullTicket(user, id)
+                        .onSuccess(ticket -> {
+                            if (ticket == null) {
+                                notFound(request);
+                            } else {
+                                renderJson(request, ticket);
+                            }
+                        })
+                        .onFailure(err -> renderError(request, new JsonObject().put(JiraTicket.MESSAGE, err.getMessage())));
+            } else {
+                log.debug("User not found in session.");
+                unauthorized(request);
+            }
+        });
+    }
+
 
     @Get("/tickets")
     @ApiDoc("If current user is local admin, get all tickets. Otherwise, get my tickets")
@@ -582,15 +634,25 @@ public class TicketController extends ControllerHelper {
         UserUtils.getUserInfos(eb, request, user -> {
             if (user != null) {
                 Map<String, UserInfos.Function> functions = user.getFunctions();
-                if (functions.containsKey(DefaultFunctions.ADMIN_LOCAL) || functions.containsKey(DefaultFunctions.SUPER_ADMIN)) {
-                    Future<JsonArray> future = listTicketOrdered(sortBy, user, page, statuses, applicants,
-                            schoolId, sortBy, order, nbTicketsPerPage);
-                    // getting the profile for users
-                    future.compose(tickets -> ticketService.getProfileFromTickets(tickets, i18nConfig))
-                            .onSuccess(result -> renderJson(request, result))
-                            .onFailure(err -> renderError(request, new JsonObject().put(JiraTicket.ERROR, Error.valueOf(err.getMessage()).toJson())));
+                if ((functions.containsKey(DefaultFunctions.ADMIN_LOCAL) || functions.containsKey(DefaultFunctions.SUPER_ADMIN)) && page == 0
+                        && ticketServiceSql.canListChunksSortedBy(sortBy)) {
+                    // Without pagination the listing can hold every ticket, it is streamed instead of built in memory
+                    streamTickets(request, user, statuses, applicants, schoolId, sortBy, order, i18nConfig);
                 } else {
-                    ticketServiceSql.listMyTickets(user, page, statuses, schoolId, sortBy, order, nbTicketsPerPage, arrayResponseHandler(request));
+                    Future<String> fingerprint = resolveSchoolIds(schoolId)
+                            .compose(schoolIds -> ticketServiceSql.fingerprintTickets(user, schoolIds));
+                    renderIfModified(request, user, fingerprint, () -> {
+                        if (functions.containsKey(DefaultFunctions.ADMIN_LOCAL) || functions.containsKey(DefaultFunctions.SUPER_ADMIN)) {
+                            Future<JsonArray> future = listTicketOrdered(user, page, statuses, applicants,
+                                    schoolId, sortBy, order, nbTicketsPerPage);
+                            // getting the profile for users
+                            future.compose(tickets -> ticketService.getProfileFromTickets(tickets, i18nConfig))
+                                    .onSuccess(result -> renderJson(request, result))
+                                    .onFailure(err -> renderError(request, new JsonObject().put(JiraTicket.ERROR, Error.valueOf(err.getMessage()).toJson())));
+                        } else {
+                            ticketServiceSql.listMyTickets(user, page, statuses, schoolId, sortBy, order, nbTicketsPerPage, arrayResponseHandler(request));
+                        }
+                    });
                 }
             } else {
                 log.debug("User not found in session.");
@@ -620,11 +682,38 @@ public class TicketController extends ControllerHelper {
         });
     }
 
+    @Get("/tickets/facets")
+    @ApiDoc("Count the tickets of the user's scope per status, per school and per category")
+    @SecuredAction(value = "", type = ActionType.AUTHENTICATED)
+    public void facetTickets(final HttpServerRequest request) {
+        List<String> schools = request.params().getAll(JiraTicket.SCHOOL);
+        UserUtils.getUserInfos(eb, request, user -> {
+            if (user != null) {
+                boolean allSchools = schools.isEmpty() || schools.contains(JiraTicket.ASTERISK);
+                List<String> structuresToResolve = allSchools ? user.getStructures() : schools;
+                ticketService.listStructureChildren(structuresToResolve)
+                        .compose(structureChildren -> ticketServiceSql.facetTickets(user, getStructureIds(structureChildren), allSchools))
+                        .onSuccess(result -> renderJson(request, result))
+                        .onFailure(err -> renderError(request, new JsonObject().put(JiraTicket.ERROR, err.getMessage())));
+            } else {
+                log.debug(String.format("[Support@%s::facetTickets] %s",
+                        this.getClass().getSimpleName(), "User not found in session."));
+                unauthorized(request);
+            }
+        });
+    }
+
     private Future<JsonArray> listFilteredTickets(JsonObject body, UserInfos user) {
         Integer page = body.getInteger(JiraTicket.PAGE);
         String sortBy = body.getString(JiraTicket.SORT_BY);
         String order = body.getString(JiraTicket.ORDER);
         String search = body.getString("search");
+        String after = body.getString(JiraTicket.AFTER);
+        List<String> fields = body.getJsonArray(JiraTicket.FIELDS, new JsonArray())
+                                  .stream()
+                                  .filter(String.class::isInstance)
+                                  .map(String.class::cast)
+                                  .collect(Collectors.toList());
         List<String> schools = body.getJsonArray("schools", new JsonArray())
                                    .stream()
                                    .filter(String.class::isInstance)
@@ -646,79 +735,102 @@ public class TicketController extends ControllerHelper {
 
         return ticketService.listStructureChildren(structuresToResolve).compose(structureChildren -> {
             List<String> resolvedSchoolIds = getStructureIds(structureChildren);
-            return ticketServiceSql.listFilteredTickets(user, page, statuses, applicants, resolvedSchoolIds, allSchools,
-                                                        sortBy, order, nbTicketsPerPage, search);
+            Future<JsonArray> ticketsFuture = ticketServiceSql.listFilteredTickets(user, page, statuses, applicants, resolvedSchoolIds,
+                                                                                   allSchools, sortBy, order, nbTicketsPerPage, search, after, fields);
+            Future<JsonObject> countFuture = ticketServiceSql.countFilteredTickets(user, statuses, applicants, resolvedSchoolIds,
+                                                                                   allSchools, search);
+            return CompositeFuture.all(ticketsFuture, countFuture)
+                                  .map(result -> PaginationHelper.addTotalResults(ticketsFuture.result(), countFuture.result()));
         });
     }
 
-    private Future<JsonArray> listTicketOrdered(String isSortBy, UserInfos user, Integer page, List<String> statuses, List<String> applicants,
+    private Future<JsonArray> listTicketOrdered(UserInfos user, Integer page, List<String> statuses, List<String> applicants,
                                                 String schoolId, String sortBy, String order, Integer nbTicketsPerPage) {
-        switch (isSortBy) {
-            case JiraTicket.SCHOOL_ID:
-                return listTicketStructureOrdered(user, page, statuses, applicants, schoolId, sortBy, order, nbTicketsPerPage);
-            case JiraTicket.PROFILE:
-                return listTicketProfileOrdered(user, page, statuses, applicants, schoolId, sortBy, order, nbTicketsPerPage);
-            default:
-                return listTicketDefaultOrdered(user, page, statuses, applicants,
-                        schoolId, sortBy, order, nbTicketsPerPage);
-        }
-    }
-
-    private Future<JsonArray> listTicketStructureOrdered(UserInfos user, Integer page, List<String> statuses, List<String> applicants,
-                                                         String schoolId, String sortBy, String order, Integer nbTicketsPerPage) {
         Promise<JsonArray> promise = Promise.promise();
-        ticketService.listStructureChildren(user.getStructures())
-                .compose(result -> ticketService.sortSchoolByName(getStructureIds(result)))
-                .compose(result -> {
-                    if (result != null && !result.isEmpty())
-                        return ticketServiceSql.listTickets(user, page, statuses, applicants, schoolId, sortBy, order,
-                                nbTicketsPerPage, result.getJsonArray(JiraTicket.STRUCTUREIDS));
-                    log.error(String.format("[Support@%s::listTicketStructureOrdered] error while retrieving tickets",
-                            this.getClass().getSimpleName()));
-                    return Future.failedFuture(Error.SORT_BY_STRUCTURE.name());
-                })
+        ticketService.listStructureChildren(Collections.singletonList(schoolId))
+                .compose(structureChildren -> ticketServiceSql.listTickets(user, page, statuses, applicants,
+                        schoolId, sortBy, order, nbTicketsPerPage, structureChildren))
                 .onSuccess(promise::complete)
                 .onFailure(promise::fail);
 
         return promise.future();
     }
 
-    private Future<JsonArray> listTicketProfileOrdered(UserInfos user, Integer page, List<String> statuses, List<String> applicants,
-                                                       String schoolId, String sortBy, String order, Integer nbTicketsPerPage) {
-        Promise<JsonArray> promise = Promise.promise();
-        ticketService.listStructureChildren(user.getStructures())
-                .compose(structureChildren -> ticketServiceSql.listTicketsOwnerIds(getStructureIds(structureChildren)))
-                .compose(userService::getUserIdsProfileOrdered)
-                .compose(owners -> {
-                    if (owners != null && !owners.isEmpty())
-                        return ticketServiceSql.listTickets(user, page, statuses, applicants,
-                                schoolId, sortBy, order, nbTicketsPerPage, new JsonArray(owners
-                                        .stream()
-                                        .filter(JsonObject.class::isInstance)
-                                        .map(JsonObject.class::cast)
-                                        .map(owner -> owner.getString(JiraTicket.ID))
-                                        .collect(Collectors.toList())));
-                    log.error(String.format("[Support@%s::listTicketProfileOrdered] error while retrieving tickets",
-                            this.getClass().getSimpleName()));
-                    return Future.failedFuture(Error.SORT_BY_STRUCTURE.name());
-                })
-                .onSuccess(promise::complete)
-                .onFailure(promise::fail);
+    private void streamTickets(HttpServerRequest request, UserInfos user, List<String> statuses, List<String> applicants,
+                               String schoolId, String sortBy, String order, I18nConfig i18nConfig) {
+        int chunkSize = config.getInteger("export-chunk-size", 500);
+        ticketService.listStructureChildren(Collections.singletonList(schoolId))
+                .onFailure(err -> renderError(request, new JsonObject().put(JiraTicket.ERROR, err.getMessage())))
+                .onSuccess(structureChildren -> {
+                    HttpServerResponse response = request.response()
+                            .setChunked(true)
+                            .putHeader("Content-Type", "application/json; charset=utf-8");
+                    response.write("[");
+                    StreamHelper.writeChunks(response, chunkSize,
+                                    last -> ticketServiceSql.listTicketsChunk(user, statuses, applicants, schoolId, structureChildren,
+                                            sortBy, order, last, chunkSize),
+                                    (chunk, first) -> ticketService.getProfileFromTickets(withoutProfileRank(chunk), i18nConfig)
+                                            .map(tickets -> StreamHelper.jsonElements(tickets, first)))
+                            .onSuccess(v -> response.end("]"))
+                            .onFailure(err -> abortStream(response, "streamTickets", err));
+                });
+    }
 
-        return promise.future();
+    /**
+     * The profile rank is only read to seek the next chunk when sorting by profile, it is not sent to clients
+     */
+    private static JsonArray withoutProfileRank(JsonArray tickets) {
+        tickets.stream()
+                .filter(JsonObject.class::isInstance)
+                .map(JsonObject.class::cast)
+                .forEach(ticket -> ticket.remove(JiraTicket.OWNER_PROFILE_RANK));
+        return tickets;
     }
 
+    /**
+     * @param schoolId structure asked by the client, or "*"
+     * @return {Future<List<String>>} the structure and its children, null for every structure visible by the user
+     */
+    private Future<List<String>> resolveSchoolIds(String schoolId) {
+        if (schoolId == null || JiraTicket.ASTERISK.equals(schoolId)) {
+            return Future.succeededFuture(null);
+        }
+        return ticketService.listStructureChildren(Collections.singletonList(schoolId))
+                .map(structureChildren -> {
+                    List<String> schoolIds = getStructureIds(structureChildren);
+                    return schoolIds.isEmpty() ? Collections.singletonList(schoolId) : schoolIds;
+                });
+    }
 
-    private Future<JsonArray> listTicketDefaultOrdered(UserInfos user, Integer page, List<String> statuses, List<String> applicants,
-                                                       String schoolId, String sortBy, String order, Integer nbTicketsPerPage) {
-        Promise<JsonArray> promise = Promise.promise();
-        ticketService.listStructureChildren(Collections.singletonList(schoolId))
-                .compose(structureChildren -> ticketServiceSql.listTickets(user, page, statuses, applicants,
-                        schoolId, sortBy, order, nbTicketsPerPage, structureChildren))
-                .onSuccess(promise::complete)
-                .onFailure(promise::fail);
+    /**
+     * Answer 304 Not Modified when the client already holds the response matching the fingerprint of its data,
+     * so that the full query and the enrichment only run when something changed
+     *
+     * @param fingerprint fingerprint of the data of the response, the response is always rendered if it fails or is null
+     * @param render      renders the full response
+     */
+    private void renderIfModified(HttpServerRequest request, UserInfos user, Future<String> fingerprint, Runnable render) {
+        fingerprint.onComplete(ar -> {
+            if (ar.failed() || ar.result() == null) {
+                render.run();
+                return;
+            }
+            String etag = ETagHelper.etag(user.getUserId(), request.uri(), request.headers().get("Accept-Language"), ar.result());
+            if (!ETagHelper.notModified(request, etag)) {
+                render.run();
+            }
+        });
+    }
 
-        return promise.future();
+    private String histoModification(HttpServerRequest request) {
+        return I18n.getInstance().translate("support.ticket.histo.modification", getHost(request), I18n.acceptLanguage(request));
+    }
+
+    private void abortStream(HttpServerResponse response, String method, Throwable err) {
+        log.error(String.format("[Support@%s::%s] Stream interrupted: %s",
+                this.getClass().getSimpleName(), method, err.getMessage()));
+        // The status is already sent, closing the connection lets the client know the content is truncated
+        response.reset();
     }
 
     private List<String> getStructureIds(JsonObject structuresResult) {
@@ -1085,16 +1197,6 @@ public class TicketController extends ControllerHelper {
         });
     }
 
-    public void createTicketHistoMultiple(List<Integer> idList, String event, Integer newStatus, String userid) {
-        for (Integer id : idList) {
-            ticketServiceSql.createTicketHisto(id.toString(), event, newStatus, userid, TicketHisto.UPDATED, res -> {
-                if (res.isLeft()) {
-                    log.error("Error creation historization : " + res.left().getValue());
-                }
-            });
-        }
-    }
-
 
     @Get("/events/:id")
     @ApiDoc("Get historization of a ticket")
@@ -1222,6 +1324,39 @@ public class TicketController extends ControllerHelper {
         });
     }
 
+    @Get("structures/:structureId/tickets/stats/daily")
+    @ApiDoc("Return the tickets opened, resolved and closed per day and category in a structure, between from and to (yyyy-MM-dd)")
+    @SecuredAction(value = "", type = ActionType.RESOURCE)
+    @ResourceFilter(AdminFilter.class)
+    public void listDailyStats(HttpServerRequest request) {
+        final String structureId = request.params().get(JiraTicket.STRUCTURE_ID);
+        final LocalDate from;
+        final LocalDate to;
+        try {
+            // The last 30 days by default
+            to = request.params().contains("to") ? LocalDate.parse(request.params().get("to")) : LocalDate.now();
+            from = request.params().contains("from") ? LocalDate.parse(request.params().get("from")) : to.minusDays(30);
+        } catch (DateTimeParseException e) {
+            badRequest(request, "support.error.invalid.date");
+            return;
+        }
+        UserUtils.getUserInfos(eb, request, user -> {
+            if (user != null) {
+                Future<List<String>> schoolIds = Objects.equals(structureId, JiraTicket.ASTERISK)
+                        ? Future.succeededFuture(user.getStructures())
+                        : resolveSchoolIds(structureId);
+                // Only the rollup is read, reporting does not touch support.tickets
+                schoolIds.compose(ids -> ticketStatsService.listDailyStats(ids, from.toString(), to.toString()))
+                        .onSuccess(result -> renderJson(request, result))
+                        .onFailure(err -> renderError(request, new JsonObject().put(JiraTicket.MESSAGE, err.getMessage())));
+            } else {
+                log.debug(String.format("[Support@%s::listDailyStats] %s",
+                        this.getClass().getSimpleName(), "User not found in session."));
+                unauthorized(request);
+            }
+        });
+    }
+
     @Get("/tickets/export/direct/:structureId")
     @ApiDoc("Generate export CSV and directly download it")
     @SecuredAction(value = "", type = ActionType.RESOURCE)
@@ -1231,28 +1366,28 @@ public class TicketController extends ControllerHelper {
             if (user != null) {
                 final String structureId = request.params().get(JiraTicket.STRUCTURE_ID);
                 I18nConfig i18nConfig = new I18nConfig(request);
-                Promise<JsonArray> promise = Promise.promise();
-                JsonArray tickets = new JsonArray();
-                promise.future()
-                        .compose(ticketsResults -> {
-                            tickets.addAll(CSVHelper.translateTicketCategory(user, ticketsResults));
-                            return ticketService.getSchoolAndProfileFromTicket(tickets, i18nConfig);
-                        })
-                        .onSuccess(result -> {
-                            TicketsCSVExport pce = new TicketsCSVExport(tickets, i18nConfig);
-                            CSVHelper.sendCSV(request, pce.filename(), pce.generate());
-                        })
-                        .onFailure(err -> renderError(request, new JsonObject()));
-
-                if (!Objects.equals(structureId, JiraTicket.ASTERISK)) {
-                    ticketService.listStructureChildren(Collections.singletonList(structureId))
-                            .compose(ticketServiceSql::getTicketsFromStructureIds)
-                            .onComplete(promise);
-                } else {
-                    ticketServiceSql.listTickets(user, 0, Collections.emptyList(), Collections.emptyList(),
-                                    JiraTicket.ASTERISK, JiraTicket.ID, "DESC", 0, null, null)
-                            .onComplete(promise);
-                }
+                int chunkSize = config.getInteger("export-chunk-size", 500);
+                boolean allStructures = Objects.equals(structureId, JiraTicket.ASTERISK);
+                TicketsCSVExport pce = new TicketsCSVExport(new JsonArray(), i18nConfig);
+                resolveSchoolIds(structureId)
+                        .onFailure(err -> renderError(request, new JsonObject()))
+                        .onSuccess(schoolIds -> {
+                            HttpServerResponse response = CSVHelper.startCSV(request, pce.filename());
+                            response.write(pce.generateHeader());
+                            StreamHelper.writeChunks(response, chunkSize,
+                                            // Every ticket of a structure is exported oldest first, the tickets visible by the user newest first
+                                            last -> allStructures
+                                                    ? ticketServiceSql.listTicketsChunk(user, Collections.emptyList(), Collections.emptyList(),
+                                                            JiraTicket.ASTERISK, null, JiraTicket.ID, "DESC", last, chunkSize)
+                                                    : ticketServiceSql.listStructureTicketsChunk(schoolIds, "ASC", last, chunkSize),
+                                            (chunk, first) -> {
+                                                JsonArray tickets = CSVHelper.translateTicketCategory(user, chunk);
+                                                return ticketService.getSchoolAndProfileFromTicket(tickets, i18nConfig)
+                                                        .map(result -> pce.lines(tickets));
+                                            })
+                                    .onSuccess(v -> response.end())
+                                    .onFailure(err -> abortStream(response, "directExport", err));
+                        });
             } else {
                 log.debug(String.format("[Support@%s::directExport] %s",
                         this.getClass().getSimpleName(), "User not found in session."));
@@ -1289,7 +1424,7 @@ public class TicketController extends ControllerHelper {
     }
 
     @Get("/tickets/category/label/fill")
-    @ApiDoc("Fill category_label column in database")
+    @ApiDoc("Start filling category_label column in database, in background")
     @SecuredAction(value = "", type = ActionType.RESOURCE)
     @ResourceFilter(SuperAdminFilter.class)
     public void fillCategoryLabel(HttpServerRequest request) {
@@ -1307,7 +1442,9 @@ public class TicketController extends ControllerHelper {
                     JsonObject moduleI18n = I18n.getInstance().load(request);
                     return ticketService.fillCategoryLabel(I18n.acceptLanguage(request), moduleI18n, portalI18n);
                 })
-                .onSuccess(result -> renderJson(request, new JsonObject().put("message", result + " row updated")))
+                .compose(started -> Support.launchCategoryLabelBackfillWorker(eb))
+                .compose(launched -> ticketServiceSql.getCategoryLabelBackfill())
+                .onSuccess(job -> renderJson(request, job, 202))
                 .onFailure(err -> {
                     String errorMessage = "[Support@TicketController::fillCategoryLabel] Failed to fill tickets without category label : ";
                     log.error(errorMessage + err.getMessage());
@@ -1316,5 +1453,21 @@ public class TicketController extends ControllerHelper {
         });
     }
 
+    @Get("/tickets/category/label/fill/status")
+    @ApiDoc("Get the progress of the category_label backfill")
+    @SecuredAction(value = "", type = ActionType.RESOURCE)
+    @ResourceFilter(SuperAdminFilter.class)
+    public void getCategoryLabelFillStatus(HttpServerRequest request) {
+        ticketServiceSql.getCategoryLabelBackfill()
+            .onSuccess(job -> {
+                if (job.isEmpty()) {
+                    notFound(request);
+                } else {
+                    renderJson(request, job);
+                }
+            })
+            .onFailure(err -> renderError(request, new JsonObject().put("error", err.getMessage())));
+    }
+
 
 }
@@ -0,0 +1,101 @@
+package net.atos.entng.support.directory;
+
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import net.atos.entng.support.constants.JiraTicket;
+import net.atos.entng.support.filters.AuthorizationCache;
+import net.atos.entng.support.services.DirectorySyncService;
+import net.atos.entng.support.services.impl.DirectorySyncServiceImpl;
+import net.atos.entng.support.services.impl.TicketServiceImpl;
+import org.vertx.java.busmods.BusModBase;
+
+/**
+ * Copies to Postgres the parts of the directory used to filter tickets, so listings do not query Neo4j.
+ * Runs every "directory-sync-period" minutes, and on any message sent to its class name.
+ * Every node deploys the worker, a sync only runs on the node holding the lease of support.job_leases: the scheduled
+ * syncs are skipped when another node has synced during the last half period, a message is answered "already_running"
+ * when a sync is running on any node.
+ */
+public class DirectorySyncWorker extends BusModBase implements Handler<Message<JsonObject>> {
+
+    protected final Logger log = LoggerFactory.getLogger(DirectorySyncWorker.class);
+
+    private DirectorySyncService directorySyncService;
+    private String owner;
+    private long leaseDuration;
+    private boolean syncInProgress = false;
+
+    @Override
+    public void start(Promise<Void> startPromise) {
+        super.start();
+        directorySyncService = new DirectorySyncServiceImpl(config);
+        owner = vertx.getOrCreateContext().deploymentID();
+        leaseDuration = config.getLong("directory-sync-lease", 3600L);
+
+        long period = config.getLong("directory-sync-period", 60L) * 60 * 1000;
+        long freshness = period / 2000;
+        vertx.setPeriodic(period, timerId -> sync(freshness));
+        if (config.getBoolean("directory-sync-on-start", true)) {
+            vertx.setTimer(1000, timerId -> sync(freshness));
+        }
+
+        eb.consumer(this.getClass().getName(), this);
+        log.info(String.format("[Support@%s::start] Launching worker %s, deploy verticle %s",
+                this.getClass().getSimpleName(), this.getClass().getSimpleName(), owner));
+        startPromise.complete();
+    }
+
+    @Override
+    public void handle(Message<JsonObject> event) {
+        sync(0L)
+                .onSuccess(synced -> event.reply(new JsonObject().put(JiraTicket.STATUS, synced ? JiraTicket.OK : JiraTicket.ALREADY_RUNNING)))
+                .onFailure(err -> event.reply(new JsonObject().put(JiraTicket.STATUS, JiraTicket.ERROR).put(JiraTicket.MESSAGE, err.getMessage())));
+    }
+
+    /**
+     * @param freshness seconds after a sync of any node during which no sync is run
+     * @return {Future<Boolean>} false when no sync has been run, because a sync is running or has just finished
+     */
+    private Future<Boolean> sync(long freshness) {
+        if (syncInProgress) {
+            return Future.succeededFuture(false);
+        }
+        syncInProgress = true;
+        return directorySyncService.lockSync(owner, leaseDuration, freshness)
+                .compose(locked -> {
+                    if (!locked) {
+                        log.info(String.format("[Support@%s::sync] Directory sync running or just run on another node", this.getClass().getSimpleName()));
+                        return Future.succeededFuture(false);
+                    }
+                    return syncDirectory()
+                            .compose(result -> directorySyncService.unlockSync(owner, true))
+                            .map(true)
+                            .recover(err -> {
+                                // The lease is released so that the next scheduled sync of any node retries
+                                Promise<Boolean> failed = Promise.promise();
+                                directorySyncService.unlockSync(owner, false).onComplete(unlocked -> failed.fail(err));
+                                return failed.future();
+                            });
+                })
+                .onFailure(err -> log.error(String.format("[Support@%s::sync] Fail to sync directory: %s",
+                        this.getClass().getSimpleName(), err.getMessage())))
+                .onComplete(result -> syncInProgress = false);
+    }
+
+    private Future<Void> syncDirectory() {
+        return directorySyncService.syncStructureClosure()
+                .onSuccess(result -> {
+                    eb.publish(TicketServiceImpl.STRUCTURE_CACHE_INVALIDATION_ADDRESS, new JsonObject());
+                    // Admin grants were checked against the previous structure tree
+                    AuthorizationCache.invalidate(eb);
+                })
+                .compose(result -> directorySyncService.syncStructures())
+                .compose(result -> directorySyncService.syncUserProfiles())
+                .mapEmpty();
+    }
+}
@@ -0,0 +1,20 @@
+package net.atos.entng.support.enums;
+
+/**
+ * Status of a background backfill, as stored in support.backfill_jobs.
+ */
+public enum BackfillStatus {
+    RUNNING("running"),
+    DONE("done"),
+    FAILED("failed");
+
+    private final String status;
+
+    BackfillStatus(String status) {
+        this.status = status;
+    }
+
+    public String status() {
+        return status;
+    }
+}
@@ -0,0 +1,41 @@
+package net.atos.entng.support.enums;
+
+/**
+ * How the search of the tickets listing is run.
+ * FULLTEXT, the default, searches the subject, the description and the owner name on the full-text index.
+ * TRIGRAM searches partial words and typos of the subject and the owner name on the trigram indexes, descriptions are not
+ * searched. AUTO is opt-in: it uses the trigram indexes for single-word searches of at most "search-trigram-max-length"
+ * characters, so such searches no longer match descriptions, and the full-text index otherwise.
+ */
+public enum SearchMode {
+    AUTO,
+    FULLTEXT,
+    TRIGRAM;
+
+    public static SearchMode fromConfig(String value) {
+        for (SearchMode mode : values()) {
+            if (mode.name().equalsIgnoreCase(value)) {
+                return mode;
+            }
+        }
+        return FULLTEXT;
+    }
+
+    /**
+     * @param search           search of the user
+     * @param trigramMaxLength longest single word searched on the trigram indexes in AUTO mode
+     * @return {boolean} true if the search must be run on the trigram indexes rather than on the full-text one
+     */
+    public boolean useTrigram(String search, int trigramMaxLength) {
+        switch (this) {
+            case TRIGRAM:
+                return true;
+            case FULLTEXT:
+                return false;
+            default:
+                // A single short word is most likely a partial word
+                String trimmed = search.trim();
+                return !trimmed.contains(" ") && trimmed.length() <= trigramMaxLength;
+        }
+    }
+}
@@ -34,6 +34,14 @@ public abstract class CSVExport {
         return this.fillCSV();
     }
 
+    /**
+     * @return {String} BOM and header line, to start a CSV whose lines are sent chunk by chunk
+     */
+    public String generateHeader() {
+        this.setHeader(header());
+        return this.value.toString();
+    }
+
     public void setHeader(String header) {
         this.value.append(header).append(this.eol);
     }
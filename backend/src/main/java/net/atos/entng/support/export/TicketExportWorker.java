@@ -56,7 +56,7 @@ public class TicketExportWorker extends BusModBase implements Handler<Message<Js
 
     private Future<Void> initTicketExportWoker(StorageFactory storageFactory) {
         ticketServiceSql = new TicketServiceSqlImpl(null);
-        ticketService = new TicketServiceImpl(ticketServiceSql);
+        ticketService = new TicketServiceImpl(ticketServiceSql, eb, config());
 
         Storage storage = storageFactory.getStorage();
         fileService = new DefaultFileService(storage);
@@ -120,7 +120,7 @@ public class TicketExportWorker extends BusModBase implements Handler<Message<Js
     private Future<JsonArray> getTickets(String structureId, UserInfos user) {
         if (Objects.equals(structureId, JiraTicket.ASTERISK)) {
             return ticketServiceSql.listTickets(user, 0, Collections.emptyList(), Collections.emptyList(),
-                    JiraTicket.ASTERISK, JiraTicket.ID, "DESC", 0, null, null);
+                    JiraTicket.ASTERISK, JiraTicket.ID, "DESC", 0, null);
         }
         return ticketService.listStructureChildren(Collections.singletonList(structureId))
                 .compose(ticketServiceSql::getTicketsFromStructureIds);
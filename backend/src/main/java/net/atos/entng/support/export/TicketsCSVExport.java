@@ -44,12 +44,22 @@ public class TicketsCSVExport extends CSVExport {
 
     @Override
     public String fillCSV() {
-        this.tickets.stream()
+        this.value.append(lines(this.tickets));
+        return value.toString();
+    }
+
+    /**
+     * @param tickets chunk of tickets
+     * @return {String} lines of the tickets, without BOM nor header
+     */
+    public String lines(JsonArray tickets) {
+        StringBuilder lines = new StringBuilder();
+        tickets.stream()
                 .filter(JsonObject.class::isInstance)
                 .map(JsonObject.class::cast)
                 .map(this::getLine)
-                .forEach(line -> this.value.append(line));
-        return value.toString();
+                .forEach(lines::append);
+        return lines.toString();
     }
 
     private String getLine(JsonObject ticket) {
@@ -74,6 +74,13 @@ public class Admin implements ResourcesProvider {
 			return;
 		}
 
+		// The id is a ticket, issue or attachment id depending on the route
+		final String cacheKey = AuthorizationCache.key(Admin.class.getSimpleName(), user, binding.getServiceMethod(), id);
+		if (AuthorizationCache.isGranted(cacheKey)) {
+			handler.handle(true);
+			return;
+		}
+
 		request.pause();
 
 		StringBuilder query = new StringBuilder("SELECT count(*) FROM support.tickets AS t ");
@@ -111,7 +118,11 @@ public class Admin implements ResourcesProvider {
 			public void handle(Message<JsonObject> message) {
 				request.resume();
 				Long count = SqlResult.countResult(message);
-				handler.handle(count != null && count > 0);
+				boolean granted = count != null && count > 0;
+				if (granted) {
+					AuthorizationCache.grant(cacheKey);
+				}
+				handler.handle(granted);
 			}
 		});
 	}
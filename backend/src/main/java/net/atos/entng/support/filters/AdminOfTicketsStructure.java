@@ -13,6 +13,7 @@ import org.entcore.common.user.UserInfos;
 
 import java.util.List;
 import java.util.Map;
+import java.util.TreeSet;
 
 
 public class AdminOfTicketsStructure implements ResourcesProvider {
@@ -29,6 +30,11 @@ public class AdminOfTicketsStructure implements ResourcesProvider {
                 handler.handle(false);
                 return;
             }
+            final String cacheKey = AuthorizationCache.key(AdminOfTicketsStructure.class.getSimpleName(), user, new TreeSet<>(ids));
+            if (AuthorizationCache.isGranted(cacheKey)) {
+                handler.handle(true);
+                return;
+            }
             request.pause();
 
             StringBuilder query = new StringBuilder("SELECT count(*) FROM support.tickets AS t");
@@ -61,6 +67,9 @@ public class AdminOfTicketsStructure implements ResourcesProvider {
                 Long count = SqlResult.countResult(message);
 
                 Boolean isSuperAdminOrResultEqualIdsSize = finalAdmin != null || count == ids.size();
+                if (isSuperAdminOrResultEqualIdsSize) {
+                    AuthorizationCache.grant(cacheKey);
+                }
                 handler.handle(isSuperAdminOrResultEqualIdsSize);
             });
     }
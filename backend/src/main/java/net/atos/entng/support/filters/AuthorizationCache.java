@@ -0,0 +1,70 @@
+package net.atos.entng.support.filters;
+
+import io.vertx.core.eventbus.EventBus;
+import io.vertx.core.json.JsonObject;
+import net.atos.entng.support.cache.ExpiringCache;
+import org.entcore.common.user.UserInfos;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Grants of the resource filters, kept for a short time so that the requests of a ticket page only check the database once.
+ * Grants are keyed by filter, user, admin scopes and resource, and all dropped whenever the owner or the structure
+ * of a ticket changes, the statuses of tickets are updated in bulk, or the directory sync refreshes the structure tree.
+ * Denials are never kept.
+ */
+public class AuthorizationCache {
+
+    public static final String INVALIDATION_ADDRESS = "support.authorization.cache.invalidate";
+    // Disabled until the module configures it
+    private static ExpiringCache<String, Boolean> grants = new ExpiringCache<>(0, 0);
+
+    private AuthorizationCache() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Enable the cache with "authorization-cache-ttl" seconds of time to live, and listen to invalidations
+     */
+    public static void init(EventBus eb, JsonObject config) {
+        grants = new ExpiringCache<>(config.getLong("authorization-cache-ttl", 30L) * 1000L,
+                config.getInteger("authorization-cache-max-size", 10000));
+        eb.consumer(INVALIDATION_ADDRESS, message -> grants.invalidateAll());
+    }
+
+    /**
+     * @param filter   filter deciding
+     * @param user     user asking, whose functions and scopes are part of the key
+     * @param resource what the filter reads from the request (ids, route...)
+     * @return {String} key of the decision
+     */
+    public static String key(String filter, UserInfos user, Object... resource) {
+        Map<String, String> scopes = new TreeMap<>();
+        if (user.getFunctions() != null) {
+            user.getFunctions().forEach((name, function) -> scopes.put(name,
+                    function.getScope() == null ? "" : function.getScope().stream().sorted().collect(Collectors.joining(","))));
+        }
+        return filter + "|" + user.getUserId() + "|" + scopes + "|" + Arrays.deepToString(resource);
+    }
+
+    /**
+     * @return {boolean} true if the decision has been granted recently
+     */
+    public static boolean isGranted(String key) {
+        return Boolean.TRUE.equals(grants.get(key));
+    }
+
+    public static void grant(String key) {
+        grants.put(key, true);
+    }
+
+    /**
+     * Drop every kept grant on all the instances of the module
+     */
+    public static void invalidate(EventBus eb) {
+        eb.publish(INVALIDATION_ADDRESS, new JsonObject());
+    }
+}
@@ -59,6 +59,12 @@ public class OwnerOrLocalAdmin implements ResourcesProvider {
 				handler.handle(false);
 				return;
 			}
+			final String cacheKey = AuthorizationCache.key(OwnerOrLocalAdmin.class.getSimpleName(), user, new TreeSet<>(ticketIds));
+			if (AuthorizationCache.isGranted(cacheKey)) {
+				request.resume();
+				handler.handle(true);
+				return;
+			}
 			JsonArray values = new JsonArray();
 			StringBuilder query = new StringBuilder("SELECT count(*) FROM support.tickets AS t");
 			query.append(" WHERE t.id IN (");
@@ -82,12 +88,13 @@ public class OwnerOrLocalAdmin implements ResourcesProvider {
 			Sql.getInstance().prepared(query.toString(), values, result -> {
 				request.resume();
 				Long count = SqlResult.countResult(result);
-				if(userFunctions.get(DefaultFunctions.SUPER_ADMIN) != null) {
-					// super admin is authorized
-					handler.handle(true);
-				} else {
-					handler.handle(count != null && count == ticketIds.size());
+				// super admin is authorized
+				boolean granted = (userFunctions != null && userFunctions.get(DefaultFunctions.SUPER_ADMIN) != null)
+						|| (count != null && count == ticketIds.size());
+				if (granted) {
+					AuthorizationCache.grant(cacheKey);
 				}
+				handler.handle(granted);
 			});
 		});
 	}
@@ -0,0 +1,65 @@
+package net.atos.entng.support.helpers;
+
+import io.vertx.core.Future;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.function.Supplier;
+
+/**
+ * Queue of asynchronous tasks running at most a fixed number of them at the same time.
+ * A task is started once one of the running tasks completes, whether it succeeds or fails.
+ */
+public class BoundedTaskQueue {
+
+    private final Queue<Supplier<Future<Void>>> pending = new ArrayDeque<>();
+    private final int concurrency;
+    private int running = 0;
+
+    /**
+     * @param concurrency max number of tasks running at the same time, at least 1
+     */
+    public BoundedTaskQueue(int concurrency) {
+        this.concurrency = Math.max(1, concurrency);
+    }
+
+    /**
+     * @param task starts the task and returns its completion
+     */
+    public void submit(Supplier<Future<Void>> task) {
+        synchronized (this) {
+            pending.add(task);
+        }
+        next();
+    }
+
+    /**
+     * @return {int} number of tasks waiting for a running task to complete
+     */
+    public synchronized int pendingCount() {
+        return pending.size();
+    }
+
+    private void next() {
+        Supplier<Future<Void>> task;
+        synchronized (this) {
+            if (running >= concurrency || pending.isEmpty()) {
+                return;
+            }
+            task = pending.poll();
+            running++;
+        }
+        Future<Void> completion;
+        try {
+            completion = task.get();
+        } catch (RuntimeException e) {
+            completion = Future.failedFuture(e);
+        }
+        completion.onComplete(ar -> {
+            synchronized (this) {
+                running--;
+            }
+            next();
+        });
+    }
+}
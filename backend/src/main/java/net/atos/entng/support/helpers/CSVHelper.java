@@ -2,6 +2,7 @@ package net.atos.entng.support.helpers;
 
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import net.atos.entng.support.constants.JiraTicket;
@@ -23,6 +24,18 @@ public class CSVHelper {
                 .end(csv);
     }
 
+    /**
+     * Start a CSV response whose content is written chunk by chunk
+     *
+     * @return {HttpServerResponse} chunked response, to end once every line is written
+     */
+    public static HttpServerResponse startCSV(HttpServerRequest request, String filename) {
+        return request.response()
+                .setChunked(true)
+                .putHeader("Content-Type", "text/csv; charset=utf-8")
+                .putHeader("Content-Disposition", "attachment; filename=" + filename);
+    }
+
     public static ExportFile getExportFile(String filename, String csv) {
         Buffer buffer = Buffer.buffer(csv);
         return new ExportFile(buffer, "text/csv; charset=utf-8", filename);
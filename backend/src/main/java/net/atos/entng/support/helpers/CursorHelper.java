@@ -0,0 +1,58 @@
+package net.atos.entng.support.helpers;
+
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.JsonArray;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque cursors used by keyset (seek) pagination.
+ * A cursor stores the sort column, the sort order, the value of the sort column and the id of the last row sent,
+ * so the next page can be fetched with a "(sort_col, id) < (?, ?)" predicate instead of an OFFSET.
+ */
+public class CursorHelper {
+
+    private static final int SORT_BY_INDEX = 0;
+    private static final int ORDER_INDEX = 1;
+    private static final int VALUE_INDEX = 2;
+    private static final int ID_INDEX = 3;
+
+    private CursorHelper() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * @param sortBy sort column of the listing
+     * @param order  [ASC/DESC]
+     * @param value  value of the sort column for the last row of the page
+     * @param id     id of the last row of the page
+     * @return {String} url-safe opaque cursor
+     */
+    public static String encode(String sortBy, String order, Object value, Long id) {
+        JsonArray cursor = new JsonArray().add(sortBy).add(order).add(value).add(id);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.encode().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param cursor cursor sent by the client
+     * @param sortBy sort column of the listing
+     * @param order  [ASC/DESC]
+     * @return {JsonArray} [value, id] or null if the cursor is malformed or has been built for another sort
+     */
+    public static JsonArray decode(String cursor, String sortBy, String order) {
+        if (StringHelper.isNullOrEmpty(cursor)) {
+            return null;
+        }
+        try {
+            JsonArray decoded = new JsonArray(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+            if (decoded.size() != 4 || !sortBy.equals(decoded.getString(SORT_BY_INDEX))
+                    || !order.equals(decoded.getString(ORDER_INDEX)) || decoded.getLong(ID_INDEX) == null) {
+                return null;
+            }
+            return new JsonArray().add(decoded.getValue(VALUE_INDEX)).add(decoded.getLong(ID_INDEX));
+        } catch (IllegalArgumentException | DecodeException | ClassCastException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package net.atos.entng.support.helpers;
+
+import io.vertx.core.http.HttpServerRequest;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Conditional requests: a response is tagged with a hash of what it depends on, and answered with
+ * 304 Not Modified when the client sends that tag back in If-None-Match.
+ */
+public class ETagHelper {
+
+    private ETagHelper() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * @param parts everything the response depends on (user, request, fingerprint of the data...)
+     * @return {String} weak ETag, e.g. W/"5d41402abc4b2a76b9719d911017c592"
+     */
+    public static String etag(String... parts) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1")
+                    .digest(String.join("|", Arrays.asList(parts)).getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder("W/\"");
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.append("\"").toString();
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-1 is available on every JVM
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param ifNoneMatch value of the If-None-Match header, can be null
+     * @param etag        current ETag of the response
+     * @return {boolean} true if the client already holds the current response
+     */
+    public static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || ifNoneMatch.isEmpty()) {
+            return false;
+        }
+        String opaqueTag = etag.startsWith("W/") ? etag.substring(2) : etag;
+        return Arrays.stream(ifNoneMatch.split(","))
+                .map(String::trim)
+                .map(tag -> tag.startsWith("W/") ? tag.substring(2) : tag)
+                .anyMatch(tag -> "*".equals(tag) || tag.equals(opaqueTag));
+    }
+
+    /**
+     * Answer 304 Not Modified if the client holds the current response, otherwise tag the response that will be rendered
+     *
+     * @return {boolean} true if the request has been answered
+     */
+    public static boolean notModified(HttpServerRequest request, String etag) {
+        // no-cache lets the browser keep the response, as long as it checks with the server before using it
+        request.response()
+                .putHeader("ETag", etag)
+                .putHeader("Cache-Control", "no-cache");
+        if (matches(request.headers().get("If-None-Match"), etag)) {
+            request.response().setStatusCode(304).end();
+            return true;
+        }
+        return false;
+    }
+}
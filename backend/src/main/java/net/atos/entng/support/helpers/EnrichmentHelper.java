@@ -0,0 +1,93 @@
+package net.atos.entng.support.helpers;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Adds to a page of tickets values looked up elsewhere (profile of the owner, name of the school...).
+ * Lookup keys are deduplicated and results are indexed by key, so enriching n tickets costs O(n).
+ */
+public class EnrichmentHelper {
+
+    private EnrichmentHelper() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * @param rows JsonArray of tickets, anything else is ignored
+     * @return {List<JsonObject>} the tickets of the array
+     */
+    public static List<JsonObject> jsonObjects(JsonArray rows) {
+        return rows.stream()
+                .filter(JsonObject.class::isInstance)
+                .map(JsonObject.class::cast)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @param rows  rows to read
+     * @param field field to read
+     * @return {List<String>} non null values of the field, without duplicates, in their first appearance order
+     */
+    public static List<String> distinctValues(List<JsonObject> rows, String field) {
+        Set<String> values = new LinkedHashSet<>();
+        for (JsonObject row : rows) {
+            String value = row.getString(field);
+            if (value != null) {
+                values.add(value);
+            }
+        }
+        return new ArrayList<>(values);
+    }
+
+    /**
+     * Index the results of a lookup by key
+     *
+     * @param rows       results of the lookup
+     * @param keyField   field holding the key
+     * @param valueField field holding the value
+     * @return {Map<String, String>} values by key, rows without key or value are ignored
+     */
+    public static Map<String, String> index(JsonArray rows, String keyField, String valueField) {
+        Map<String, String> index = new HashMap<>();
+        for (Object row : rows) {
+            if (row instanceof JsonObject) {
+                String key = ((JsonObject) row).getString(keyField);
+                String value = ((JsonObject) row).getString(valueField);
+                if (key != null && value != null) {
+                    index.put(key, value);
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Put on each row the indexed value of one of its fields, in a single pass
+     *
+     * @param rows        rows to enrich
+     * @param keyField    field of the row holding the key
+     * @param targetField field to fill
+     * @param index       values by key, rows whose key is not indexed are left unchanged
+     * @param mapper      applied once per distinct value before it is copied on the rows
+     */
+    public static void enrich(List<JsonObject> rows, String keyField, String targetField, Map<String, String> index,
+                              Function<String, String> mapper) {
+        Map<String, String> mapped = new HashMap<>();
+        for (JsonObject row : rows) {
+            String value = index.get(row.getString(keyField));
+            if (value != null) {
+                row.put(targetField, mapped.computeIfAbsent(value, mapper));
+            }
+        }
+    }
+}
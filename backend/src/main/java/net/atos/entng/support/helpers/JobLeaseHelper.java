@@ -0,0 +1,64 @@
+package net.atos.entng.support.helpers;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.entcore.common.sql.Sql;
+import org.entcore.common.sql.SqlResult;
+
+/**
+ * Leases of support.job_leases, for the jobs that every node schedules but only one node at a time must run
+ */
+public class JobLeaseHelper {
+
+    // The lease is given when it is free or expired, and the last run is older than the freshness.
+    // The node holding the lease renews it.
+    private static final String LOCK_QUERY = "INSERT INTO support.job_leases AS l (name, owner, locked_until)" +
+            " VALUES (?, ?, timezone('UTC', NOW()) + ? * interval '1 second')" +
+            " ON CONFLICT (name) DO UPDATE SET owner = excluded.owner, locked_until = excluded.locked_until" +
+            " WHERE (l.owner = excluded.owner AND l.locked_until IS NOT NULL)" +
+            " OR ((l.locked_until IS NULL OR l.locked_until < timezone('UTC', NOW()))" +
+            " AND (l.finished IS NULL OR l.finished < timezone('UTC', NOW()) - ? * interval '1 second'))" +
+            " RETURNING l.owner";
+    private static final String UNLOCK_QUERY = "UPDATE support.job_leases SET locked_until = NULL," +
+            " finished = CASE WHEN ? THEN timezone('UTC', NOW()) ELSE finished END" +
+            " WHERE name = ? AND owner = ?";
+
+    private JobLeaseHelper() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Take or renew the lease of a job
+     *
+     * @param name      name of the job
+     * @param owner     node asking for the lease, e.g. its deployment id
+     * @param duration  seconds after which the lease expires if it is not released
+     * @param freshness seconds after a successful run of any node during which the lease is not given
+     * @return {Future<Boolean>} true when the owner holds the lease
+     */
+    public static Future<Boolean> lock(String name, String owner, long duration, long freshness) {
+        Promise<JsonObject> promise = Promise.promise();
+        JsonArray params = new JsonArray().add(name).add(owner).add(duration).add(freshness);
+        String errorMessage = String.format("[Support@%s::lock] Fail to lock job %s", JobLeaseHelper.class.getSimpleName(), name);
+        Sql.getInstance().prepared(LOCK_QUERY, params, SqlResult.validUniqueResultHandler(PromiseHelper.handler(promise, errorMessage)));
+        return promise.future().map(lease -> owner.equals(lease.getString("owner")));
+    }
+
+    /**
+     * Release the lease taken by {@link #lock(String, String, long, long)}
+     *
+     * @param name      name of the job
+     * @param owner     node holding the lease
+     * @param succeeded true to record the end of a successful run
+     * @return {Future<Void>}
+     */
+    public static Future<Void> unlock(String name, String owner, boolean succeeded) {
+        Promise<JsonObject> promise = Promise.promise();
+        JsonArray params = new JsonArray().add(succeeded).add(name).add(owner);
+        String errorMessage = String.format("[Support@%s::unlock] Fail to unlock job %s", JobLeaseHelper.class.getSimpleName(), name);
+        Sql.getInstance().prepared(UNLOCK_QUERY, params, SqlResult.validRowsResultHandler(PromiseHelper.handler(promise, errorMessage)));
+        return promise.future().mapEmpty();
+    }
+}
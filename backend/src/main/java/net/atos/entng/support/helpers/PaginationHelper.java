@@ -0,0 +1,30 @@
+package net.atos.entng.support.helpers;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import net.atos.entng.support.constants.JiraTicket;
+
+public class PaginationHelper {
+
+    private PaginationHelper() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Copy the total number of tickets of a listing on each ticket of the page, where clients expect to find it
+     *
+     * @param tickets page of tickets
+     * @param count   {"count": Long, "estimated": Boolean} result of a count query
+     * @return {JsonArray} the same tickets
+     */
+    public static JsonArray addTotalResults(JsonArray tickets, JsonObject count) {
+        Long total = count.getLong(JiraTicket.COUNT, 0L);
+        boolean estimated = count.getBoolean(JiraTicket.ESTIMATED, false);
+        tickets.stream()
+               .filter(JsonObject.class::isInstance)
+               .map(JsonObject.class::cast)
+               .forEach(ticket -> ticket.put(JiraTicket.TOTAL_RESULTS, total)
+                                        .put(JiraTicket.TOTAL_RESULTS_ESTIMATED, estimated));
+        return tickets;
+    }
+}
@@ -0,0 +1,24 @@
+package net.atos.entng.support.helpers;
+
+import java.util.Collection;
+import java.util.stream.Collectors;
+
+public class SqlHelper {
+
+    private SqlHelper() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Build a Postgres array literal, to bind a whole list as a single parameter with "= ANY(?::varchar[])"
+     * instead of one parameter per value with "IN (?, ?, ...)"
+     *
+     * @param values values of the array
+     * @return {String} array literal, e.g. {"a","b"}
+     */
+    public static String arrayLiteral(Collection<String> values) {
+        return values.stream()
+                .map(value -> "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"")
+                .collect(Collectors.joining(",", "{", "}"));
+    }
+}
@@ -0,0 +1,88 @@
+package net.atos.entng.support.helpers;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Writes large listings of tickets on a chunked response, one chunk of tickets at a time.
+ * The next chunk is read only once the previous one has been handed to the client, so memory stays flat
+ * whatever the number of tickets.
+ */
+public class StreamHelper {
+
+    private StreamHelper() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Write every chunk of tickets on the response, without ending it
+     *
+     * @param response  chunked response, headers and any prefix already written
+     * @param chunkSize size of the chunks, a smaller chunk is the last one
+     * @param readChunk reads the chunk of tickets following the given ticket, the last one of the previous chunk,
+     *                  null for the first chunk
+     * @param render    renders a chunk of tickets, the boolean telling if it is the first one
+     * @return {Future<Void>} completed once the last chunk is written, failed if a chunk could not be read or rendered
+     */
+    public static Future<Void> writeChunks(HttpServerResponse response, int chunkSize, Function<JsonObject, Future<JsonArray>> readChunk,
+                                           BiFunction<JsonArray, Boolean, Future<String>> render) {
+        Promise<Void> promise = Promise.promise();
+        writeChunk(response, chunkSize, null, readChunk, render, promise);
+        return promise.future();
+    }
+
+    private static void writeChunk(HttpServerResponse response, int chunkSize, JsonObject last, Function<JsonObject, Future<JsonArray>> readChunk,
+                                   BiFunction<JsonArray, Boolean, Future<String>> render, Promise<Void> promise) {
+        if (response.closed()) {
+            // The client went away, there is no need to read the remaining tickets
+            promise.complete();
+            return;
+        }
+        readChunk.apply(last)
+                .onFailure(promise::fail)
+                .onSuccess(chunk -> {
+                    if (chunk.isEmpty()) {
+                        promise.complete();
+                        return;
+                    }
+                    // Read before rendering, which may enrich the tickets
+                    JsonObject lastTicket = chunk.getJsonObject(chunk.size() - 1).copy();
+                    render.apply(chunk, last == null)
+                            .onFailure(promise::fail)
+                            .onSuccess(text -> {
+                                response.write(text);
+                                if (chunk.size() < chunkSize) {
+                                    promise.complete();
+                                } else if (response.writeQueueFull()) {
+                                    // Wait for the client to read what was written before reading the next chunk
+                                    response.drainHandler(v -> {
+                                        response.drainHandler(null);
+                                        writeChunk(response, chunkSize, lastTicket, readChunk, render, promise);
+                                    });
+                                } else {
+                                    writeChunk(response, chunkSize, lastTicket, readChunk, render, promise);
+                                }
+                            });
+                });
+    }
+
+    /**
+     * @param tickets chunk of tickets
+     * @param first   true for the first chunk of the array
+     * @return {String} tickets as elements of a JSON array, preceded by a comma unless they are the first ones
+     */
+    public static String jsonElements(JsonArray tickets, boolean first) {
+        List<String> elements = EnrichmentHelper.jsonObjects(tickets).stream()
+                .map(JsonObject::encode)
+                .collect(Collectors.toList());
+        return (first ? "" : ",") + String.join(",", elements);
+    }
+}
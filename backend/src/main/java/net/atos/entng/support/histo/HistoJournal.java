@@ -0,0 +1,88 @@
+package net.atos.entng.support.histo;
+
+import io.vertx.core.Future;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.EventBus;
+import io.vertx.core.eventbus.ReplyException;
+import io.vertx.core.eventbus.ReplyFailure;
+import io.vertx.core.json.JsonObject;
+import net.atos.entng.support.constants.JiraTicket;
+import net.atos.entng.support.enums.TicketHisto;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Writes ticket history events through the {@link HistoJournalWorker}, which inserts them by batches.
+ * The event date is the date the event is appended, not the date of its batch.
+ */
+public class HistoJournal {
+
+    public static final String APPEND_ACTION = "append";
+    public static final String METRICS_ACTION = "metrics";
+    // Disabled until the module configures it, history events are then inserted one by one
+    private static EventBus eb = null;
+    // Events wait for the flushes of the events queued before them, the default 30 s would fail events committed later
+    private static DeliveryOptions appendOptions = new DeliveryOptions();
+
+    private HistoJournal() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Send the history events to the journal when "histo-journal-enabled" is true. It is off by default: the events
+     * of a ticket inserted directly when the journal is full or not deployed are not ordered with the journal ones.
+     * Callers wait "histo-journal-append-timeout" milliseconds for their event to be committed.
+     */
+    public static void init(EventBus eventBus, JsonObject config) {
+        eb = config.getBoolean("histo-journal-enabled", false) ? eventBus : null;
+        appendOptions = new DeliveryOptions().setSendTimeout(config.getLong("histo-journal-append-timeout", 120000L));
+    }
+
+    public static boolean isEnabled() {
+        return eb != null;
+    }
+
+    /**
+     * @param ticketId  id of the ticket, as parsed by Sql.parseId
+     * @param eventDate date of the event, now when null
+     * @param unique    true to skip the event if the history already holds the same event at the same date
+     * @return {Future<Void>} completed once the event is committed
+     */
+    public static Future<Void> append(Object ticketId, String event, String eventDate, int status, String userId,
+                                      TicketHisto histoType, boolean unique) {
+        JsonObject message = new JsonObject()
+                .put(JiraTicket.ACTION, APPEND_ACTION)
+                .put(HistoJournalWorker.TICKET_ID, ticketId)
+                .put(JiraTicket.EVENT, event)
+                .put(JiraTicket.EVENT_DATE, eventDate != null ? eventDate : LocalDateTime.now(ZoneOffset.UTC).toString())
+                .put(JiraTicket.STATUS, status)
+                .put(JiraTicket.USER_ID, userId)
+                .put(JiraTicket.EVENT_TYPE, histoType.eventType())
+                .put(HistoJournalWorker.UNIQUE, unique);
+        return eb.request(HistoJournalWorker.class.getName(), message, appendOptions).mapEmpty();
+    }
+
+    /**
+     * @return {boolean} true if the journal is not deployed or is full, the event has therefore not been written
+     */
+    public static boolean isNotDelivered(Throwable err) {
+        if (!(err instanceof ReplyException)) {
+            return false;
+        }
+        ReplyException reply = (ReplyException) err;
+        return reply.failureType() == ReplyFailure.NO_HANDLERS
+                || (reply.failureType() == ReplyFailure.RECIPIENT_FAILURE && reply.failureCode() == HistoJournalWorker.QUEUE_FULL);
+    }
+
+    /**
+     * @return {Future<JsonObject>} queue depth and flush latencies of the journal
+     */
+    public static Future<JsonObject> metrics() {
+        if (eb == null) {
+            return Future.failedFuture("History journal disabled");
+        }
+        return eb.request(HistoJournalWorker.class.getName(), new JsonObject().put(JiraTicket.ACTION, METRICS_ACTION))
+                .map(message -> (JsonObject) message.body());
+    }
+}
@@ -0,0 +1,192 @@
+package net.atos.entng.support.histo;
+
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import net.atos.entng.support.constants.JiraTicket;
+import net.atos.entng.support.helpers.PromiseHelper;
+import org.entcore.common.sql.Sql;
+import org.entcore.common.sql.SqlResult;
+import org.vertx.java.busmods.BusModBase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Buffers the ticket history events sent by {@link HistoJournal}, and inserts them with a single statement every
+ * "histo-journal-batch-size" events or "histo-journal-flush-interval" milliseconds. Each event is answered once its
+ * batch is committed. When a batch fails, its events are inserted one by one so that a bad event only fails its caller.
+ * At most "histo-journal-max-pending" events wait for a flush, the next ones are refused with {@link #QUEUE_FULL} so that
+ * their callers insert them directly.
+ * A "metrics" action answers the queue depth and the flush latencies.
+ */
+public class HistoJournalWorker extends BusModBase implements Handler<Message<JsonObject>> {
+
+    public static final String TICKET_ID = "ticket_id";
+    public static final String UNIQUE = "unique";
+    public static final int QUEUE_FULL = 503;
+    // Keeps a batch under the 65535 bind parameters of a statement
+    private static final int MAX_BATCH_SIZE = 5000;
+
+    protected final Logger log = LoggerFactory.getLogger(HistoJournalWorker.class);
+
+    private final List<Message<JsonObject>> pending = new ArrayList<>();
+    private int batchSize;
+    private int maxPending;
+    private boolean flushInProgress = false;
+    private int inFlight = 0;
+    private long flushes = 0;
+    private long failedFlushes = 0;
+    private long flushedEvents = 0;
+    private long lastFlushTime = 0;
+    private long maxFlushTime = 0;
+    private long totalFlushTime = 0;
+
+    @Override
+    public void start(Promise<Void> startPromise) {
+        super.start();
+        batchSize = Math.min(Math.max(1, config.getInteger("histo-journal-batch-size", 500)), MAX_BATCH_SIZE);
+        maxPending = Math.max(batchSize, config.getInteger("histo-journal-max-pending", 10000));
+        long interval = Math.max(1L, config.getLong("histo-journal-flush-interval", 200L));
+        vertx.setPeriodic(interval, timerId -> flush());
+
+        eb.consumer(this.getClass().getName(), this);
+        log.info(String.format("[Support@%s::start] Launching worker %s, deploy verticle %s",
+                this.getClass().getSimpleName(), this.getClass().getSimpleName(), vertx.getOrCreateContext().deploymentID()));
+        startPromise.complete();
+    }
+
+    @Override
+    public void handle(Message<JsonObject> message) {
+        if (HistoJournal.METRICS_ACTION.equals(message.body().getString(JiraTicket.ACTION))) {
+            message.reply(metrics());
+            return;
+        }
+        if (pending.size() >= maxPending) {
+            message.fail(QUEUE_FULL, "History journal full");
+            return;
+        }
+        pending.add(message);
+        if (pending.size() >= batchSize) {
+            flush();
+        }
+    }
+
+    private JsonObject metrics() {
+        return new JsonObject()
+                .put("queue_depth", pending.size())
+                .put("in_flight", inFlight)
+                .put("flushes", flushes)
+                .put("failed_flushes", failedFlushes)
+                .put("flushed_events", flushedEvents)
+                .put("last_flush_ms", lastFlushTime)
+                .put("max_flush_ms", maxFlushTime)
+                .put("avg_flush_ms", flushes == 0 ? 0 : totalFlushTime / flushes);
+    }
+
+    private void flush() {
+        if (flushInProgress || pending.isEmpty()) {
+            return;
+        }
+        flushInProgress = true;
+        List<Message<JsonObject>> batch = new ArrayList<>(pending.subList(0, Math.min(batchSize, pending.size())));
+        pending.subList(0, batch.size()).clear();
+        inFlight = batch.size();
+        long start = System.currentTimeMillis();
+
+        insert(batch).onComplete(ar -> {
+            long duration = System.currentTimeMillis() - start;
+            flushes++;
+            lastFlushTime = duration;
+            maxFlushTime = Math.max(maxFlushTime, duration);
+            totalFlushTime += duration;
+            if (ar.succeeded()) {
+                flushedEvents += batch.size();
+                batch.forEach(message -> message.reply(new JsonObject().put(JiraTicket.STATUS, JiraTicket.OK)));
+                endFlush();
+            } else {
+                failedFlushes++;
+                insertOneByOne(batch).onComplete(result -> endFlush());
+            }
+        });
+    }
+
+    private void endFlush() {
+        inFlight = 0;
+        flushInProgress = false;
+        if (pending.size() >= batchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Insert the events of a failed batch in order, each one answered or failed on its own
+     */
+    private Future<Void> insertOneByOne(List<Message<JsonObject>> batch) {
+        Future<Void> future = Future.succeededFuture();
+        for (Message<JsonObject> message : batch) {
+            future = future.compose(previous -> insert(Collections.singletonList(message))
+                    .map(result -> {
+                        flushedEvents++;
+                        message.reply(new JsonObject().put(JiraTicket.STATUS, JiraTicket.OK));
+                        return (Void) null;
+                    })
+                    .recover(err -> {
+                        message.fail(500, err.getMessage());
+                        return Future.succeededFuture();
+                    }));
+        }
+        return future;
+    }
+
+    private Future<JsonObject> insert(List<Message<JsonObject>> events) {
+        Promise<JsonObject> promise = Promise.promise();
+        JsonArray values = new JsonArray();
+        String query = insertQuery(events, values);
+        String errorMessage = String.format("[Support@%s::insert] Fail to insert %s history events",
+                this.getClass().getSimpleName(), events.size());
+        Sql.getInstance().prepared(query, values, SqlResult.validRowsResultHandler(PromiseHelper.handler(promise, errorMessage)));
+        return promise.future();
+    }
+
+    /**
+     * Unique events already in the history or earlier in the batch are skipped, the other events are inserted as the
+     * direct insert would: the event of a ticket deleted meanwhile is not dropped silently, it fails on ticket_fk and
+     * is reported to its caller by {@link #insertOneByOne}
+     */
+    private String insertQuery(List<Message<JsonObject>> batch, JsonArray values) {
+        StringBuilder query = new StringBuilder("INSERT INTO support.tickets_histo (ticket_id, event, event_date, status, user_id, event_type)")
+                .append(" SELECT v.ticket_id, v.event, v.event_date, v.status, v.user_id, v.event_type FROM (VALUES");
+        Set<String> uniqueEvents = new HashSet<>();
+        for (Message<JsonObject> message : batch) {
+            JsonObject event = message.body();
+            boolean unique = event.getBoolean(UNIQUE, false);
+            if (unique && !uniqueEvents.add(event.getValue(TICKET_ID) + "|" + event.getString(JiraTicket.EVENT) + "|"
+                    + event.getString(JiraTicket.EVENT_DATE) + "|" + event.getInteger(JiraTicket.EVENT_TYPE))) {
+                continue;
+            }
+            query.append(" (?::bigint, ?::text, ?::timestamp, ?::smallint, ?::varchar, ?::smallint, ?::boolean),");
+            values.add(event.getValue(TICKET_ID))
+                    .add(event.getString(JiraTicket.EVENT))
+                    .add(event.getString(JiraTicket.EVENT_DATE))
+                    .add(event.getInteger(JiraTicket.STATUS))
+                    .add(event.getString(JiraTicket.USER_ID))
+                    .add(event.getInteger(JiraTicket.EVENT_TYPE))
+                    .add(unique);
+        }
+        query.deleteCharAt(query.length() - 1);
+        query.append(") AS v (ticket_id, event, event_date, status, user_id, event_type, is_unique)")
+                .append(" WHERE NOT v.is_unique OR NOT EXISTS (SELECT 1 FROM support.tickets_histo AS h")
+                .append(" WHERE h.ticket_id = v.ticket_id AND h.event = v.event AND h.event_date = v.event_date")
+                .append(" AND h.event_type = v.event_type)");
+        return query.toString();
+    }
+}
@@ -0,0 +1,44 @@
+package net.atos.entng.support.services;
+
+import io.vertx.core.Future;
+
+public interface DirectorySyncService {
+    /**
+     * Rebuild support.structure_closure from the structure tree of the directory
+     *
+     * @return {Future<Integer>} number of (ancestor, descendant) pairs stored
+     **/
+    Future<Integer> syncStructureClosure();
+
+    /**
+     * Rebuild support.structures from the structures of the directory, with their position in the name order
+     *
+     * @return {Future<Integer>} number of structures stored
+     **/
+    Future<Integer> syncStructures();
+
+    /**
+     * Copy in support.users the profiles of the users from the directory
+     *
+     * @return {Future<Integer>} number of users read from the directory
+     **/
+    Future<Integer> syncUserProfiles();
+
+    /**
+     * Take the lease of the directory sync in support.job_leases, so that a single node syncs at a time
+     *
+     * @param owner     id of the worker taking the lease
+     * @param duration  seconds after which the lease expires if it has not been released
+     * @param freshness seconds after a successful sync during which the lease is not given again, 0 to sync anyway
+     * @return {Future<Boolean>} false when another worker holds the lease, or a sync has just finished
+     **/
+    Future<Boolean> lockSync(String owner, long duration, long freshness);
+
+    /**
+     * Release the lease taken by {@link #lockSync(String, long, long)}
+     *
+     * @param owner     id of the worker holding the lease
+     * @param succeeded true when the sync has succeeded, the lease then records its end
+     **/
+    Future<Void> unlockSync(String owner, boolean succeeded);
+}
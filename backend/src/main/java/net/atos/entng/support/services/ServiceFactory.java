@@ -8,6 +8,7 @@ import net.atos.entng.support.constants.JiraTicket;
 import net.atos.entng.support.enums.BugTracker;
 import net.atos.entng.support.services.impl.TicketServiceImpl;
 import net.atos.entng.support.services.impl.TicketServiceSqlImpl;
+import net.atos.entng.support.services.impl.TicketStatsServiceImpl;
 import net.atos.entng.support.services.impl.UserServiceDirectoryImpl;
 import org.entcore.common.neo4j.Neo4j;
 import org.entcore.common.sql.Sql;
@@ -23,6 +24,8 @@ public class ServiceFactory {
     private final MongoDb mongoDb;
     private final JsonObject config;
     private final BugTracker bugTrackerType;
+    private TicketService ticketService;
+    private TicketServiceSql ticketServiceSql;
 
     public ServiceFactory(Vertx vertx, Storage storage, Neo4j neo4j, Sql sql, MongoDb mongoDb, JsonObject config
             , BugTracker bugTrackerType) {
@@ -36,11 +39,22 @@ public class ServiceFactory {
     }
 
     public TicketService ticketService() {
-        return new TicketServiceImpl(this.ticketServiceSql());
+        if (ticketService == null) {
+            ticketService = new TicketServiceImpl(this.ticketServiceSql(), getEventBus(vertx), config);
+        }
+        return ticketService;
     }
 
+    // Shared so that the caches of the service are shared by all its users
     public TicketServiceSql ticketServiceSql() {
-        return new TicketServiceSqlImpl(bugTrackerType);
+        if (ticketServiceSql == null) {
+            ticketServiceSql = new TicketServiceSqlImpl(bugTrackerType, config);
+        }
+        return ticketServiceSql;
+    }
+
+    public TicketStatsService ticketStatsService() {
+        return new TicketStatsServiceImpl();
     }
 
     public UserService userService() {
@@ -29,31 +29,24 @@ public interface TicketService {
     Future<JsonObject> getSchoolWorkflowRightFromUserId(String userId, String workflowWanted, String structureId);
 
     /**
-     * Get "childrens" structures of a "parent" structure
+     * Get "childrens" structures of a "parent" structure.
+     * Results are cached until the TTL expires or a message is published on the structure cache invalidation address.
      *
      * @param structureIds {List<String>} List of structureIds from which we want to retrieve the children
      * @return {Future<JsonObject>} JsonObject containing structure "childrens" and the "parent" structure
      **/
     Future<JsonObject> listStructureChildren(List<String> structureIds);
 
-    /**
-     * Sort structures by name
-     *
-     * @param structureIds {List<String>} List of structureIds you want to sort
-     * @return {Future<JsonObject>} JsonObject containing structureIds sorted by name
-     **/
-    Future<JsonObject> sortSchoolByName(List<String> structureIds);
-
     CompositeFuture getSchoolAndProfileFromTicket(JsonArray tickets, I18nConfig i18nConfig);
 
 
     /**
-     * Fill tickets category_label if non-existing
+     * Start the backfill of tickets category_label if non-existing, run by the CategoryLabelBackfillWorker
      *
      * @param locale {String} locale language
      * @param moduleI18n {JsonObject} all the i18n from this module
      * @param portalI18n {JsonObject} all the i18n from Portal
-     * @return {Future<Long>} Number of updated tickets
+     * @return {Future<Boolean>} true if the backfill has been started, false if it was already running
      **/
-    Future<Integer> fillCategoryLabel(String locale, JsonObject moduleI18n, JsonObject portalI18n);
+    Future<Boolean> fillCategoryLabel(String locale, JsonObject moduleI18n, JsonObject portalI18n);
 }
@@ -36,14 +36,27 @@ import org.entcore.common.user.UserInfos;
 import org.entcore.common.utils.Id;
 
 import java.util.List;
-import java.util.Map;
 
 public interface TicketServiceSql extends CrudService {
 
-	public void createTicket(JsonObject ticket, JsonArray attachments, UserInfos user, String locale, Handler<Either<String, Ticket>> handler);
+	/**
+	 * Create a ticket and its creation history in a single transaction
+	 *
+	 * @param histoEvent label of the creation in the history
+	 */
+	public void createTicket(JsonObject ticket, JsonArray attachments, UserInfos user, String locale, String histoEvent,
+							 Handler<Either<String, Ticket>> handler);
 
 	public void updateTicket(String id, JsonObject data, UserInfos user, Handler<Either<String, Ticket>> handler);
 
+	/**
+	 * Update a ticket, increase its event_count and historize the update in a single transaction.
+	 * When a comment is added, only the opening of the ticket it triggers is historized.
+	 *
+	 * @param histoEvent label of the update in the history
+	 */
+	public void updateTicket(String id, JsonObject data, UserInfos user, String histoEvent, Handler<Either<String, Ticket>> handler);
+
 	/**
 	 * return list of tickets
 	 *
@@ -56,23 +69,96 @@ public interface TicketServiceSql extends CrudService {
 	 * @param sortBy column on which we want to sort
 	 * @param order [ASC/DESC]
 	 * @param nbTicketsPerPage max number of ticket per page
-	 * @param orderedIds list of ids order when we want to order by another table (neo4j)
 	 * @param structureChildren structure children
 	 * @return {Future<JsonArray>} list of tickets
 	 */
-	Future<JsonArray> listTickets(UserInfos user, Integer page, List<String> statuses, List<String> applicants,
-																String school_id, String sortBy, String order, Integer nbTicketsPerPage,
-																JsonArray orderedIds, JsonObject structureChildren);
 	Future<JsonArray> listTickets(UserInfos user, Integer page, List<String> statuses, List<String> applicants,
 																String school_id, String sortBy, String order, Integer nbTicketsPerPage,
 																JsonObject structureChildren);
-	Future<JsonArray> listTickets(UserInfos user, Integer page, List<String> statuses, List<String> applicants,
-																String school_id, String sortBy, String order, Integer nbTicketsPerPage,
-																JsonArray orderedStructures);
 
+	/**
+	 * List tickets matching the filters of the POST /tickets listing.
+	 * When sorting on a non nullable column, each ticket holds a "cursor" that can be sent back as "after"
+	 * to get the next page with a keyset predicate instead of an OFFSET.
+	 *
+	 * @param page page number, ignored when after is set
+	 * @param after cursor of the last ticket of the previous page, can be null
+	 * @param fields fields to return, all the list fields when null or empty. id and owner are always returned
+	 * @return {Future<JsonArray>} list of tickets, failed if the cursor does not match the requested sort
+	 */
 	Future<JsonArray> listFilteredTickets(UserInfos user, Integer page, List<String> statuses, List<String> applicants,
 	                                      List<String> schoolIds, boolean allSchools, String sortBy, String order,
-	                                      Integer nbTicketsPerPage, String search);
+	                                      Integer nbTicketsPerPage, String search, String after, List<String> fields);
+
+	/**
+	 * Count the tickets matching the filters of the POST /tickets listing.
+	 * The count is cached for a short time, and estimated by the planner for very large scopes.
+	 *
+	 * @return {Future<JsonObject>} {"count": Long, "estimated": Boolean}
+	 */
+	Future<JsonObject> countFilteredTickets(UserInfos user, List<String> statuses, List<String> applicants,
+	                                        List<String> schoolIds, boolean allSchools, String search);
+
+	/**
+	 * Count the tickets of the user's scope per status, per school and per category, in a single query.
+	 * The counters are cached for a short time per scope.
+	 *
+	 * @return {Future<JsonObject>} {"total": Long, "statuses": [{"status", "count"}], "schools": [{"school_id", "count"}],
+	 * "categories": [{"category", "count"}]}
+	 */
+	Future<JsonObject> facetTickets(UserInfos user, List<String> schoolIds, boolean allSchools);
+
+	/**
+	 * @param sortBy sort asked by the client
+	 * @return {boolean} true if the listing can be read by chunks in this order, false if it must be read at once
+	 */
+	boolean canListChunksSortedBy(String sortBy);
+
+	/**
+	 * Read a chunk of the tickets of the GET /tickets listing, to stream a large listing or export
+	 * without holding every ticket in memory. Tickets are those of {@link #listTickets}, each chunk is read with
+	 * a keyset predicate on the sort column and the id.
+	 *
+	 * @param schoolId          structure asked by the client, or "*"
+	 * @param structureChildren the structure and its children, unused for "*"
+	 * @param sortBy            sort column, tickets are read in id order when it cannot be read by chunks (see canListChunksSortedBy)
+	 * @param order             "ASC" or "DESC"
+	 * @param last              last ticket of the previous chunk, null for the first chunk
+	 * @param chunkSize         maximum number of tickets to read
+	 * @return {Future<JsonArray>} tickets of the chunk, empty once every ticket has been read. Sorted by profile,
+	 * tickets also hold the owner_profile_rank the next chunk is sought from, which is not meant for clients
+	 */
+	Future<JsonArray> listTicketsChunk(UserInfos user, List<String> statuses, List<String> applicants, String schoolId,
+	                                   JsonObject structureChildren, String sortBy, String order, JsonObject last, int chunkSize);
+
+	/**
+	 * Read a chunk of every ticket of some structures in id order, whatever the scope of the user, to export them
+	 *
+	 * @param schoolIds structures of the tickets
+	 * @param order     "ASC" or "DESC", order of the ids
+	 * @param last      last ticket of the previous chunk, null for the first chunk
+	 * @param chunkSize maximum number of tickets to read
+	 * @return {Future<JsonArray>} tickets of the chunk, empty once every ticket has been read
+	 */
+	Future<JsonArray> listStructureTicketsChunk(List<String> schoolIds, String order, JsonObject last, int chunkSize);
+
+	/**
+	 * Fingerprint of a scope of tickets, read from an index only. It changes whenever a ticket of the scope
+	 * is created, updated or deleted, so that a listing can be answered with 304 Not Modified.
+	 * It is cached per scope as long as the totals of the listings ("count-cache-ttl").
+	 *
+	 * @param schoolIds structures of the listing, every structure visible by the user when null
+	 * @return {Future<String>} fingerprint of the scope
+	 */
+	Future<String> fingerprintTickets(UserInfos user, List<String> schoolIds);
+
+	/**
+	 * Fingerprint of a ticket and of its bug tracker issue, changing whenever one of them is updated
+	 *
+	 * @param id ticket identifier
+	 * @return {Future<String>} fingerprint of the ticket, null if it does not exist
+	 */
+	Future<String> fingerprintTicket(Integer id);
 
 	public void listMyTickets(UserInfos user, Integer page, List<String> statuses, String school_id, String sortBy, String order, Integer nbTicketsPerPage, Handler<Either<String, JsonArray>> handler);
 
@@ -80,6 +166,14 @@ public interface TicketServiceSql extends CrudService {
 
 	public void getTicket(UserInfos user, Integer id, Handler<Either<String, JsonArray>> handler);
 
+	/**
+	 * Get a ticket with its comments, attachments, history and bug tracker issue in a single query,
+	 * checking in the same query that the user is its owner or an admin of its structure
+	 *
+	 * @param id ticket identifier
+	 * @return {Future<JsonObject>} ticket with "comments", "attachments", "events" and "issue", null if not found or not allowed
+	 */
+	Future<JsonObject> getFullTicket(UserInfos user, Integer id);
 
 	/**
 	 * If escalation status is "not_done" or "failed", and ticket status is new or opened,
@@ -136,7 +230,15 @@ public interface TicketServiceSql extends CrudService {
 
 	public void insertIssueAttachments(Id<Issue, ? extends Number> issueId, List<Attachment> attachments, Handler<Either<String, Void>> handler);
 
-    public void updateTicketStatus(Integer newStatus, List<Integer> ids, Handler<Either<String, JsonObject>> handler);
+    /**
+     * Update the status of several tickets and historize it, in a single statement
+     *
+     * @param histoEvent label of the update in the history
+     * @param userId     user updating the tickets
+     * @param handler    [{"id": Long}] of the updated tickets escalated to a bug tracker
+     */
+    public void updateTicketStatus(Integer newStatus, List<Integer> ids, String histoEvent, String userId,
+                                   Handler<Either<String, JsonArray>> handler);
 
     public void updateTicketIssueUpdateDateAndStatus(Long ticketId, String updateDate, Long status, Handler<Either<String, Void>> handler);
 
@@ -158,33 +260,68 @@ public interface TicketServiceSql extends CrudService {
     Future<List<TicketModel>> getUserTickets(UserInfos user);
 
     /**
-     * @param idList : list of structure ids from which you want to retrieve tickets
-     * @return {Future<JsonObject>} tickets of structures
+     * Get structures and all their descendants from support.structure_closure
+     *
+     * @param structureIds {List<String>} structures from which we want to retrieve the children
+     * @return {Future<JsonObject>} {"structureIds": [...]} with the structures and their descendants,
+     * or null if one of the structures has not been synced from the directory yet
      **/
-    Future<JsonArray> getTicketsFromStructureIds(JsonObject idList);
+    Future<JsonObject> listStructureDescendants(List<String> structureIds);
 
     /**
-     * get list of ticket owner ids in structures
+     * Get the names of structures from support.structures
      *
-     * @param structureIds list of structure ids to filter on
-     * @return {Future<List<String>>} list of ticket owner ids
-     */
-    Future<List<String>> listTicketsOwnerIds(List<String> structureIds);
+     * @param structureIds {List<String>} structures from which we want to retrieve the names
+     * @return {Future<JsonArray>} [{"id": String, "name": String}] for the structures synced from the directory
+     **/
+    Future<JsonArray> listStructureNames(List<String> structureIds);
+
+    /**
+     * @param idList : list of structure ids from which you want to retrieve tickets
+     * @return {Future<JsonObject>} tickets of structures
+     **/
+    Future<JsonArray> getTicketsFromStructureIds(JsonObject idList);
 
 	public Future<Long> getLastSynchroEpoch();
 	public Future<Void> setLastSynchroEpoch(Long epoch);
 
 	/**
-	 * List all tickets without category label
+	 * Fill short_desc for a batch of tickets created before the column existed
+	 *
+	 * @param batchSize maximum number of tickets to update
+	 * @return {Future<Integer>} number of tickets updated, lower than batchSize once every ticket is filled
+	 */
+	Future<Integer> backfillShortDescriptions(int batchSize);
+
+	/**
+	 * Start the category label backfill from the first ticket, unless it is already running
+	 *
+	 * @param categoryLabels label of each category, by category address
+	 * @return {Future<Boolean>} true if the backfill has been started, false if it was already running
+	 */
+	Future<Boolean> startCategoryLabelBackfill(JsonObject categoryLabels);
+
+	/**
+	 * Get the progress of the category label backfill
+	 *
+	 * @return {Future<JsonObject>} status, checkpoint and counts of the backfill, empty if it never ran
+	 */
+	Future<JsonObject> getCategoryLabelBackfill();
+
+	/**
+	 * Fill category_label for the next batch of tickets after the backfill checkpoint, and move the checkpoint
 	 *
-	 * @return {Future<JsonArray>} list of ticket without category labels
+	 * @param categoryLabels label of each category, by category address
+	 * @param batchSize      maximum number of tickets to scan
+	 * @return {Future<JsonObject>} tickets scanned, lower than batchSize once every ticket is scanned, new checkpoint
+	 * and number of tickets updated so far. Empty when the backfill is not running, or runs a batch on another node
 	 */
-	Future<JsonArray> listAllWithoutCategoryLabel();
+	Future<JsonObject> backfillCategoryLabels(JsonObject categoryLabels, int batchSize);
 
 	/**
-	 * Update category label for a list of tickets
+	 * End the running category label backfill
 	 *
-	 * @return {Future<Integer>} number of tickets modified
+	 * @param error cause of the failure, null if the backfill is done
 	 */
-	Future<Integer> updateAllTicketsWithoutCategoryLabel(Map<Integer, String> idCategoryLabelMap);
+	Future<Void> endCategoryLabelBackfill(String error);
 }
\ No newline at end of file
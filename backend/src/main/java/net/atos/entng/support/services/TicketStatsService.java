@@ -0,0 +1,25 @@
+package net.atos.entng.support.services;
+
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonArray;
+
+import java.util.List;
+
+public interface TicketStatsService {
+    /**
+     * Roll up into support.ticket_daily_stats a batch of the history events written since the last refresh
+     *
+     * @param batchSize maximum number of events to roll up
+     * @param timeZone  time zone of the days, e.g. "Europe/Paris"
+     * @return {Future<Long>} number of events rolled up, 0 once the rollup is up to date
+     **/
+    Future<Long> refreshDailyStats(int batchSize, String timeZone);
+
+    /**
+     * @param schoolIds structures to report on
+     * @param from      first day, yyyy-MM-dd
+     * @param to        last day, yyyy-MM-dd
+     * @return {Future<JsonArray>} tickets opened, resolved and closed per day, structure and category
+     **/
+    Future<JsonArray> listDailyStats(List<String> schoolIds, String from, String to);
+}
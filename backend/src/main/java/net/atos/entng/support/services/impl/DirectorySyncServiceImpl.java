@@ -0,0 +1,190 @@
+package net.atos.entng.support.services.impl;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import net.atos.entng.support.helpers.JobLeaseHelper;
+import net.atos.entng.support.helpers.PromiseHelper;
+import net.atos.entng.support.helpers.SqlHelper;
+import net.atos.entng.support.helpers.TransactionHelper;
+import net.atos.entng.support.model.TransactionElement;
+import net.atos.entng.support.services.DirectorySyncService;
+import org.entcore.common.sql.Sql;
+import org.entcore.common.sql.SqlResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class DirectorySyncServiceImpl implements DirectorySyncService {
+
+    private static final Logger log = LoggerFactory.getLogger(DirectorySyncServiceImpl.class);
+    private static final String INSERT_CLOSURE_QUERY = "INSERT INTO support.structure_closure (ancestor_id, descendant_id)" +
+            " SELECT * FROM unnest(?::varchar[], ?::varchar[]) ON CONFLICT DO NOTHING";
+    private static final String INSERT_STRUCTURES_QUERY = "INSERT INTO support.structures (id, name, sort_key)" +
+            " SELECT * FROM unnest(?::varchar[], ?::varchar[], ?::integer[]) ON CONFLICT DO NOTHING";
+    private static final String UPDATE_PROFILES_QUERY = "UPDATE support.users AS u SET profile = p.profile" +
+            " FROM unnest(?::varchar[], ?::varchar[]) AS p(id, profile)" +
+            " WHERE u.id = p.id AND u.profile IS DISTINCT FROM p.profile";
+    private static final String SYNC_LEASE = "directory_sync";
+    private final int chunkSize;
+
+    public DirectorySyncServiceImpl(JsonObject config) {
+        this.chunkSize = config.getInteger("directory-sync-chunk-size", 5000);
+    }
+
+    @Override
+    public Future<Boolean> lockSync(String owner, long duration, long freshness) {
+        return JobLeaseHelper.lock(SYNC_LEASE, owner, duration, freshness);
+    }
+
+    @Override
+    public Future<Void> unlockSync(String owner, boolean succeeded) {
+        return JobLeaseHelper.unlock(SYNC_LEASE, owner, succeeded);
+    }
+
+    @Override
+    public Future<Integer> syncStructureClosure() {
+        return TicketServiceNeo4jImpl.listStructureTree()
+                .compose(structures -> {
+                    List<String> ancestors = new ArrayList<>();
+                    List<String> descendants = new ArrayList<>();
+                    structures.stream()
+                            .filter(JsonObject.class::isInstance)
+                            .map(JsonObject.class::cast)
+                            .forEach(structure -> {
+                                String id = structure.getString("id");
+                                // Each structure is its own descendant, so a scope is resolved with a single lookup
+                                ancestors.add(id);
+                                descendants.add(id);
+                                structure.getJsonArray("children", new JsonArray()).stream()
+                                        .filter(String.class::isInstance)
+                                        .map(String.class::cast)
+                                        .forEach(child -> {
+                                            ancestors.add(id);
+                                            descendants.add(child);
+                                        });
+                            });
+                    return replaceStructureClosure(ancestors, descendants);
+                });
+    }
+
+    /**
+     * Replace the whole closure table in a single transaction, the table is locked so concurrent syncs run one after the other
+     */
+    private Future<Integer> replaceStructureClosure(List<String> ancestors, List<String> descendants) {
+        List<TransactionElement> statements = new ArrayList<>();
+        statements.add(new TransactionElement("LOCK TABLE support.structure_closure IN EXCLUSIVE MODE", new JsonArray()));
+        statements.add(new TransactionElement("DELETE FROM support.structure_closure", new JsonArray()));
+        for (int start = 0; start < ancestors.size(); start += chunkSize) {
+            int end = Math.min(start + chunkSize, ancestors.size());
+            JsonArray params = new JsonArray()
+                    .add(SqlHelper.arrayLiteral(ancestors.subList(start, end)))
+                    .add(SqlHelper.arrayLiteral(descendants.subList(start, end)));
+            statements.add(new TransactionElement(INSERT_CLOSURE_QUERY, params));
+        }
+
+        String errorMessage = String.format("[Support@%s::replaceStructureClosure] Fail to sync structure closure",
+                this.getClass().getSimpleName());
+        return TransactionHelper.executeTransaction(statements, errorMessage)
+                .map(result -> {
+                    log.info(String.format("[Support@%s::replaceStructureClosure] %d structure links synced",
+                            this.getClass().getSimpleName(), ancestors.size()));
+                    return ancestors.size();
+                });
+    }
+
+    @Override
+    public Future<Integer> syncStructures() {
+        return TicketServiceNeo4jImpl.listStructures()
+                .compose(structures -> {
+                    List<String> ids = new ArrayList<>();
+                    List<String> names = new ArrayList<>();
+                    structures.stream()
+                            .filter(JsonObject.class::isInstance)
+                            .map(JsonObject.class::cast)
+                            .forEach(structure -> {
+                                ids.add(structure.getString("id"));
+                                names.add(structure.getString("name", ""));
+                            });
+
+                    // Structures come sorted by name, their position is the sort key
+                    List<TransactionElement> statements = new ArrayList<>();
+                    statements.add(new TransactionElement("LOCK TABLE support.structures IN EXCLUSIVE MODE", new JsonArray()));
+                    statements.add(new TransactionElement("DELETE FROM support.structures", new JsonArray()));
+                    for (int start = 0; start < ids.size(); start += chunkSize) {
+                        int end = Math.min(start + chunkSize, ids.size());
+                        List<String> sortKeys = new ArrayList<>();
+                        for (int position = start; position < end; position++) {
+                            sortKeys.add(String.valueOf(position));
+                        }
+                        JsonArray params = new JsonArray()
+                                .add(SqlHelper.arrayLiteral(ids.subList(start, end)))
+                                .add(SqlHelper.arrayLiteral(names.subList(start, end)))
+                                .add(SqlHelper.arrayLiteral(sortKeys));
+                        statements.add(new TransactionElement(INSERT_STRUCTURES_QUERY, params));
+                    }
+
+                    String errorMessage = String.format("[Support@%s::syncStructures] Fail to sync structures",
+                            this.getClass().getSimpleName());
+                    return TransactionHelper.executeTransaction(statements, errorMessage)
+                            .map(result -> {
+                                log.info(String.format("[Support@%s::syncStructures] %d structures synced",
+                                        this.getClass().getSimpleName(), ids.size()));
+                                return ids.size();
+                            });
+                });
+    }
+
+    @Override
+    public Future<Integer> syncUserProfiles() {
+        Promise<JsonArray> promise = Promise.promise();
+        String errorMessage = String.format("[Support@%s::syncUserProfiles] Fail to list users", this.getClass().getSimpleName());
+        Sql.getInstance().raw("SELECT id FROM support.users", SqlResult.validResultHandler(PromiseHelper.handler(promise, errorMessage)));
+
+        return promise.future().compose(users -> {
+            List<String> userIds = users.stream()
+                    .filter(JsonObject.class::isInstance)
+                    .map(user -> ((JsonObject) user).getString("id"))
+                    .collect(Collectors.toList());
+            // Chunks are synced one after the other so that neither Neo4j nor Postgres get a burst of queries
+            Future<Integer> future = Future.succeededFuture(0);
+            for (int start = 0; start < userIds.size(); start += chunkSize) {
+                List<String> chunk = userIds.subList(start, Math.min(start + chunkSize, userIds.size()));
+                future = future.compose(synced -> syncUserProfiles(chunk).map(count -> synced + count));
+            }
+            return future;
+        }).onSuccess(synced -> log.info(String.format("[Support@%s::syncUserProfiles] %d user profiles synced",
+                this.getClass().getSimpleName(), synced)));
+    }
+
+    private Future<Integer> syncUserProfiles(List<String> userIds) {
+        Promise<JsonArray> neo4jPromise = Promise.promise();
+        TicketServiceNeo4jImpl.getUsersFromList(new JsonArray(userIds), PromiseHelper.handler(neo4jPromise));
+
+        return neo4jPromise.future().compose(users -> {
+            List<String> ids = new ArrayList<>();
+            List<String> profiles = new ArrayList<>();
+            users.stream()
+                    .filter(JsonObject.class::isInstance)
+                    .map(JsonObject.class::cast)
+                    .filter(user -> user.getJsonArray("n.profiles") != null && !user.getJsonArray("n.profiles").isEmpty())
+                    .forEach(user -> {
+                        ids.add(user.getString("n.id"));
+                        profiles.add(user.getJsonArray("n.profiles").getString(0));
+                    });
+            if (ids.isEmpty()) {
+                return Future.succeededFuture(0);
+            }
+
+            Promise<JsonObject> promise = Promise.promise();
+            JsonArray params = new JsonArray().add(SqlHelper.arrayLiteral(ids)).add(SqlHelper.arrayLiteral(profiles));
+            String errorMessage = String.format("[Support@%s::syncUserProfiles] Fail to update user profiles", this.getClass().getSimpleName());
+            Sql.getInstance().prepared(UPDATE_PROFILES_QUERY, params, SqlResult.validRowsResultHandler(PromiseHelper.handler(promise, errorMessage)));
+            return promise.future().map(result -> ids.size());
+        });
+    }
+}
@@ -4,93 +4,133 @@ import fr.wseduc.webutils.I18n;
 import io.vertx.core.CompositeFuture;
 import io.vertx.core.Future;
 import io.vertx.core.Promise;
+import io.vertx.core.eventbus.EventBus;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
+import net.atos.entng.support.cache.ExpiringCache;
 import net.atos.entng.support.constants.JiraTicket;
-import net.atos.entng.support.enums.Error;
 import net.atos.entng.support.enums.I18nKeys;
+import net.atos.entng.support.helpers.EnrichmentHelper;
 import net.atos.entng.support.helpers.I18nHelper;
 import net.atos.entng.support.model.I18nConfig;
 import net.atos.entng.support.services.TicketService;
 import net.atos.entng.support.services.TicketServiceSql;
 
 import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 public class TicketServiceImpl implements TicketService {
 
     protected static final Logger log = LoggerFactory.getLogger(TicketServiceImpl.class);
+    /**
+     * Any message published on this address clears the structure caches of every node
+     */
+    public static final String STRUCTURE_CACHE_INVALIDATION_ADDRESS = "support.structures.cache.invalidate";
     private final TicketServiceSql ticketServiceSql;
+    // Descendants of a list of structures, keyed by the sorted structure ids, cleared after each directory sync
+    private final ExpiringCache<String, JsonObject> structureChildrenCache;
+    // Translated profiles, keyed by domain, language and profile
+    private final ExpiringCache<String, String> translationCache;
 
     public TicketServiceImpl(TicketServiceSql ticketServiceSql) {
+        this(ticketServiceSql, null, new JsonObject());
+    }
+
+    public TicketServiceImpl(TicketServiceSql ticketServiceSql, EventBus eb, JsonObject config) {
         this.ticketServiceSql = ticketServiceSql;
+        this.structureChildrenCache = new ExpiringCache<>(config.getLong("structure-cache-ttl", 300L) * 1000L,
+                config.getInteger("structure-cache-max-size", 1000));
+        this.translationCache = new ExpiringCache<>(config.getLong("translation-cache-ttl", 3600L) * 1000L,
+                config.getInteger("translation-cache-max-size", 1000));
+        if (eb != null) {
+            eb.consumer(STRUCTURE_CACHE_INVALIDATION_ADDRESS, message -> {
+                log.info(String.format("[Support@%s::invalidateStructureCache] Structure cache cleared", this.getClass().getSimpleName()));
+                structureChildrenCache.invalidateAll();
+            });
+        }
     }
 
     public Future<JsonArray> getProfileFromTickets(JsonArray ticketsList, I18nConfig i18nConfig) {
         Promise<JsonArray> promise = Promise.promise();
         final JsonArray jsonListTickets = ticketsList;
-        final Set<String> listUserIds = jsonListTickets.stream()
-                .filter(JsonObject.class::isInstance)
-                .map(ticket -> ((JsonObject) ticket).getString(JiraTicket.OWNER))
-                .collect(Collectors.toSet());
+        List<JsonObject> tickets = EnrichmentHelper.jsonObjects(jsonListTickets);
 
-        // get profiles from neo4j
-        TicketServiceNeo4jImpl.getUsersFromList(new JsonArray(new ArrayList<>(listUserIds)), event1 -> {
+        // Profiles are stored in support.users by the user upsert and the directory sync, they only need to be translated
+        Map<String, String> profilesByOwner = EnrichmentHelper.index(jsonListTickets, JiraTicket.OWNER, JiraTicket.PROFILE);
+        List<String> missingUserIds = EnrichmentHelper.distinctValues(tickets, JiraTicket.OWNER).stream()
+                .filter(owner -> !profilesByOwner.containsKey(owner))
+                .collect(Collectors.toList());
+
+        if (missingUserIds.isEmpty()) {
+            promise.complete(setProfiles(jsonListTickets, tickets, profilesByOwner, i18nConfig));
+            return promise.future();
+        }
+
+        // get profiles not synced yet from neo4j
+        TicketServiceNeo4jImpl.getUsersFromList(new JsonArray(missingUserIds), event1 -> {
             if (event1.isRight()) {
-                JsonArray listUsers = event1.right().getValue();
-                // list of users got from neo4j
-                listUsers.stream()
+                event1.right().getValue().stream()
                         .filter(JsonObject.class::isInstance)
                         .map(JsonObject.class::cast)
-                        .forEach(jUser -> {
-                            // traduction profil
-                            String profil = jUser.getJsonArray("n.profiles").getString(0);
-                            profil = I18n.getInstance().translate(profil, i18nConfig.getDomain(), i18nConfig.getLang());
-                            // iterator on tickets, to see if the ids match
-                            String finalProfil = profil;
-                            jsonListTickets.stream()
-                                    .filter(JsonObject.class::isInstance)
-                                    .map(JsonObject.class::cast)
-                                    .filter(jTicket -> jTicket.getString(JiraTicket.OWNER).equals(jUser.getString("n.id")))
-                                    .forEach(jTicket -> jTicket.put(JiraTicket.PROFILE, finalProfil));
-                        });
+                        .filter(jUser -> jUser.getJsonArray("n.profiles") != null && !jUser.getJsonArray("n.profiles").isEmpty())
+                        .forEach(jUser -> profilesByOwner.put(jUser.getString("n.id"), jUser.getJsonArray("n.profiles").getString(0)));
             }
-            promise.complete(jsonListTickets);
+            promise.complete(setProfiles(jsonListTickets, tickets, profilesByOwner, i18nConfig));
         });
 
         return promise.future();
     }
 
+    private JsonArray setProfiles(JsonArray jsonListTickets, List<JsonObject> tickets, Map<String, String> profilesByOwner, I18nConfig i18nConfig) {
+        // traduction profil
+        EnrichmentHelper.enrich(tickets, JiraTicket.OWNER, JiraTicket.PROFILE, profilesByOwner,
+                profile -> translateProfile(profile, i18nConfig));
+        return jsonListTickets;
+    }
+
+    /**
+     * Translations of a profile only depend on the domain and the language, they are memoized across requests
+     */
+    private String translateProfile(String profile, I18nConfig i18nConfig) {
+        String key = String.join("|", i18nConfig.getDomain(), i18nConfig.getLang(), profile);
+        String translation = translationCache.get(key);
+        if (translation == null) {
+            translation = I18n.getInstance().translate(profile, i18nConfig.getDomain(), i18nConfig.getLang());
+            translationCache.put(key, translation);
+        }
+        return translation;
+    }
+
     public Future<JsonArray> getSchoolFromTickets(JsonArray ticketsList) {
-        Promise<JsonArray> promise = Promise.promise();
         final JsonArray jsonListTickets = ticketsList;
-        final List<String> listSchoolIds = jsonListTickets.stream()
-                .filter(JsonObject.class::isInstance)
-                .map(ticket -> ((JsonObject) ticket).getString(JiraTicket.SCHOOL_ID))
-                .collect(Collectors.toList());
-
-        // get school name from neo4j
-        TicketServiceNeo4jImpl.getSchoolFromList(new JsonArray(new ArrayList<>(listSchoolIds)))
-                .onSuccess(listSchools -> {
-                    listSchools.stream()
-                            .filter(JsonObject.class::isInstance)
-                            .map(JsonObject.class::cast)
-                            .forEach(jSchool -> {
-                                String schoolName = jSchool.getString("s.name");
-                                // iterator on tickets, to see if the ids match
-                                jsonListTickets.stream()
-                                        .filter(JsonObject.class::isInstance)
-                                        .map(JsonObject.class::cast)
-                                        .filter(jTicket -> jTicket.getString(JiraTicket.SCHOOL_ID).equals(jSchool.getString("s.id")))
-                                        .forEach(jTicket -> jTicket.put(JiraTicket.SCHOOL, schoolName));
-                            });
-                    promise.complete(jsonListTickets);
+        List<JsonObject> tickets = EnrichmentHelper.jsonObjects(jsonListTickets);
+        List<String> listSchoolIds = EnrichmentHelper.distinctValues(tickets, JiraTicket.SCHOOL_ID);
+        if (listSchoolIds.isEmpty()) {
+            return Future.succeededFuture(jsonListTickets);
+        }
+
+        // School names are synced from the directory in support.structures, Neo4j is only queried for structures not synced yet
+        Map<String, String> namesBySchool = new HashMap<>();
+        return ticketServiceSql.listStructureNames(listSchoolIds)
+                .recover(err -> Future.succeededFuture(new JsonArray()))
+                .compose(structures -> {
+                    namesBySchool.putAll(EnrichmentHelper.index(structures, JiraTicket.ID, "name"));
+                    List<String> missingSchoolIds = listSchoolIds.stream()
+                            .filter(schoolId -> !namesBySchool.containsKey(schoolId))
+                            .collect(Collectors.toList());
+                    if (missingSchoolIds.isEmpty()) {
+                        return Future.succeededFuture(new JsonArray());
+                    }
+                    return TicketServiceNeo4jImpl.getSchoolFromList(new JsonArray(missingSchoolIds));
                 })
-                .onFailure(promise::fail);
-
-        return promise.future();
+                .map(listSchools -> {
+                    namesBySchool.putAll(EnrichmentHelper.index(listSchools, "s.id", "s.name"));
+                    EnrichmentHelper.enrich(tickets, JiraTicket.SCHOOL_ID, JiraTicket.SCHOOL, namesBySchool, Function.identity());
+                    return jsonListTickets;
+                });
     }
 
     public Future<JsonObject> getSchoolWorkflowRightFromUserId(String userId, String workflowWanted, String structureId) {
@@ -102,20 +142,24 @@ public class TicketServiceImpl implements TicketService {
     }
 
     public Future<JsonObject> listStructureChildren(List<String> structureIds) {
-        Promise<JsonObject> promise = Promise.promise();
-        TicketServiceNeo4jImpl.listStructureChildren(structureIds)
-                .onSuccess(promise::complete)
-                .onFailure(promise::fail);
-        return promise.future();
-    }
+        String key = structureIds.stream().distinct().sorted().collect(Collectors.joining(","));
+        JsonObject cached = structureChildrenCache.get(key);
+        if (cached != null) {
+            return Future.succeededFuture(cached.copy());
+        }
 
-    public Future<JsonObject> sortSchoolByName(List<String> structureIds) {
         Promise<JsonObject> promise = Promise.promise();
-        if (structureIds != null && !structureIds.isEmpty()){
-            TicketServiceNeo4jImpl.sortSchoolByName(structureIds)
-                    .onSuccess(promise::complete)
-                    .onFailure(promise::fail);
-        } else promise.fail(Error.SORT_BY_STRUCTURE.getI18n());
+        // The closure table is synced from the directory, Neo4j is only queried for structures not synced yet
+        ticketServiceSql.listStructureDescendants(structureIds)
+                .recover(err -> Future.succeededFuture(null))
+                .compose(structureChildren -> structureChildren != null
+                        ? Future.succeededFuture(structureChildren)
+                        : TicketServiceNeo4jImpl.listStructureChildren(structureIds))
+                .onSuccess(structureChildren -> {
+                    structureChildrenCache.put(key, structureChildren.copy());
+                    promise.complete(structureChildren);
+                })
+                .onFailure(promise::fail);
         return promise.future();
     }
 
@@ -124,14 +168,14 @@ public class TicketServiceImpl implements TicketService {
         return CompositeFuture.all(getProfileFromTickets(tickets, i18nConfig), getSchoolFromTickets(tickets));
     }
 
-    public Future<Integer> fillCategoryLabel(String locale, JsonObject moduleI18n, JsonObject portalI18n) {
-        Promise<Integer> promise = Promise.promise();
+    public Future<Boolean> fillCategoryLabel(String locale, JsonObject moduleI18n, JsonObject portalI18n) {
+        Promise<Boolean> promise = Promise.promise();
 
-        Map<String, String> addressCategoryLabelMap = new HashMap<>();
+        JsonObject addressCategoryLabels = new JsonObject();
 
         TicketServiceNeo4jImpl.getAllApps()
             .compose(apps -> {
-                // Fill map between Address and CategoryLabel
+                // Fill map between Address and CategoryLabel, stored with the backfill so that it resumes with the same labels
                 apps.stream()
                     .filter(JsonObject.class::isInstance)
                     .map(JsonObject.class::cast)
@@ -142,30 +186,16 @@ public class TicketServiceImpl implements TicketService {
                             String categoryLabel = moduleI18n.getString(displayName, null);
                             if (categoryLabel == null) categoryLabel = portalI18n.getString(displayName, null);
                             if (categoryLabel == null) categoryLabel = displayName;
-                            addressCategoryLabelMap.put(address, categoryLabel);
+                            addressCategoryLabels.put(address, categoryLabel);
                         }
                     });
-                addressCategoryLabelMap.put("support.category.other", I18nHelper.getI18nValue(I18nKeys.OTHER, locale));
-
-                return ticketServiceSql.listAllWithoutCategoryLabel();
-            })
-            .compose(tickets -> {
-                // Store for each ticket id its category_label
-                Map<Integer, String> idCategoryLabelMap = new HashMap<>();
-                tickets.stream()
-                    .filter(JsonObject.class::isInstance)
-                    .map(JsonObject.class::cast)
-                    .forEach(ticket -> {
-                        String category = ticket.getString("category");
-                        idCategoryLabelMap.put(ticket.getInteger("id"), addressCategoryLabelMap.getOrDefault(category, null));
-                    });
+                addressCategoryLabels.put("support.category.other", I18nHelper.getI18nValue(I18nKeys.OTHER, locale));
 
-                // Update tickets
-                return ticketServiceSql.updateAllTicketsWithoutCategoryLabel(idCategoryLabelMap);
+                return ticketServiceSql.startCategoryLabelBackfill(addressCategoryLabels);
             })
             .onSuccess(promise::complete)
             .onFailure(err -> {
-                String errorMessage = "[Support@TicketServiceImpl::fillCategoryLabel] Failed to fill tickets without category label : ";
+                String errorMessage = "[Support@TicketServiceImpl::fillCategoryLabel] Failed to start category label backfill : ";
                 log.error(errorMessage + err.getMessage());
                 promise.fail(err.getMessage());
             });
@@ -88,13 +88,27 @@ public class TicketServiceNeo4jImpl {
         return promise.future();
     }
 
-    public static Future<JsonObject> sortSchoolByName(List<String> structureIds) {
-        Promise<JsonObject> promise = Promise.promise();
-        String query = "MATCH (s:Structure) "
-                + " WHERE s.id IN {structureIds} WITH s ORDER BY s.name RETURN COLLECT(s.id) AS structureIds";
-        Neo4j neo4j = Neo4j.getInstance();
-        JsonObject params = new JsonObject().put(JiraTicket.STRUCTUREIDS, structureIds);
-        neo4j.execute(query, params, validUniqueResultHandler(PromiseHelper.handler(promise)));
+    /**
+     * Get every structure with all its descendants
+     * @return {Future<JsonArray>} [{"id": String, "children": [String]}]
+     */
+    public static Future<JsonArray> listStructureTree() {
+        Promise<JsonArray> promise = Promise.promise();
+        String query = "MATCH (structure:Structure) " +
+                " OPTIONAL MATCH (structure)<-[:HAS_ATTACHMENT*1..]-(child:Structure) " +
+                "RETURN structure.id AS id, COLLECT(DISTINCT child.id) AS children";
+        Neo4j.getInstance().execute(query, new JsonObject(), validResultHandler(PromiseHelper.handler(promise)));
+        return promise.future();
+    }
+
+    /**
+     * Get every structure, sorted by name
+     * @return {Future<JsonArray>} [{"id": String, "name": String}]
+     */
+    public static Future<JsonArray> listStructures() {
+        Promise<JsonArray> promise = Promise.promise();
+        String query = "MATCH (s:Structure) RETURN s.id AS id, s.name AS name ORDER BY s.name, s.id";
+        Neo4j.getInstance().execute(query, new JsonObject(), validResultHandler(PromiseHelper.handler(promise)));
         return promise.future();
     }
 
@@ -21,6 +21,7 @@ package net.atos.entng.support.services.impl;
 
 import fr.wseduc.webutils.Either;
 import fr.wseduc.webutils.http.Renders;
+import io.vertx.core.CompositeFuture;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.Promise;
@@ -30,18 +31,25 @@ import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
 import net.atos.entng.support.*;
+import net.atos.entng.support.cache.ExpiringCache;
 import net.atos.entng.support.constants.JiraTicket;
+import net.atos.entng.support.enums.BackfillStatus;
 import net.atos.entng.support.enums.BugTracker;
 import net.atos.entng.support.enums.EscalationStatus;
+import net.atos.entng.support.enums.SearchMode;
 import net.atos.entng.support.enums.TicketHisto;
 import net.atos.entng.support.enums.TicketStatus;
+import net.atos.entng.support.helpers.CursorHelper;
 import net.atos.entng.support.helpers.DateHelper;
+import net.atos.entng.support.helpers.EnrichmentHelper;
 import net.atos.entng.support.helpers.IModelHelper;
+import net.atos.entng.support.helpers.PaginationHelper;
 import net.atos.entng.support.helpers.PromiseHelper;
-import net.atos.entng.support.helpers.TransactionHelper;
+import net.atos.entng.support.helpers.SqlHelper;
+import net.atos.entng.support.helpers.StringHelper;
+import net.atos.entng.support.histo.HistoJournal;
 import net.atos.entng.support.model.Event;
 import net.atos.entng.support.model.TicketModel;
-import net.atos.entng.support.model.TransactionElement;
 import net.atos.entng.support.services.TicketServiceSql;
 import net.atos.entng.support.zendesk.ZendeskComment;
 import org.entcore.common.service.impl.SqlCrudService;
@@ -68,57 +76,162 @@ import static org.entcore.common.sql.SqlResult.validUniqueResultHandler;
 public class TicketServiceSqlImpl extends SqlCrudService implements TicketServiceSql {
 
     protected static final Logger log = LoggerFactory.getLogger(Renders.class);
-    private final static String UPSERT_USER_QUERY = "SELECT support.merge_users(?,?)";
+    // Only writes, and locks, the row of a user whose name or profile changed
+    private final static String UPSERT_USER_QUERY = "INSERT INTO support.users AS u (id, username, profile) VALUES (?, ?, ?)" +
+            " ON CONFLICT (id) DO UPDATE SET username = EXCLUDED.username, profile = COALESCE(EXCLUDED.profile, u.profile)" +
+            " WHERE u.username IS DISTINCT FROM EXCLUDED.username" +
+            " OR (EXCLUDED.profile IS NOT NULL AND u.profile IS DISTINCT FROM EXCLUDED.profile)";
     private final List<String> ALLOWED_SORT_BY_COLUMN = new ArrayList<>(Arrays.asList(JiraTicket.ID, JiraTicket.MODIFICATION_DATE, JiraTicket.STATUS,
 			JiraTicket.CATEGORY, JiraTicket.CATEGORY_LABEL, JiraTicket.OWNER, JiraTicket.EVENT_COUNT, JiraTicket.SUBJECT, JiraTicket.SCHOOL_ID, JiraTicket.PROFILE, JiraTicket.ESCALATION_DATE));
+    // Sort columns that are never NULL, and can therefore be used for keyset pagination, with their bind placeholder
+    private static final Map<String, String> KEYSET_SORT_COLUMNS = new HashMap<>();
+    static {
+        KEYSET_SORT_COLUMNS.put(JiraTicket.ID, "?");
+        KEYSET_SORT_COLUMNS.put(JiraTicket.MODIFICATION_DATE, "?::timestamp");
+        KEYSET_SORT_COLUMNS.put(JiraTicket.STATUS, "?");
+        KEYSET_SORT_COLUMNS.put(JiraTicket.CATEGORY, "?");
+        KEYSET_SORT_COLUMNS.put(JiraTicket.OWNER, "?");
+        KEYSET_SORT_COLUMNS.put(JiraTicket.EVENT_COUNT, "?");
+        KEYSET_SORT_COLUMNS.put(JiraTicket.SUBJECT, "?");
+        KEYSET_SORT_COLUMNS.put(JiraTicket.SCHOOL_ID, "?");
+        KEYSET_SORT_COLUMNS.put(JiraTicket.PROFILE, "?");
+    }
+    // Columns of support.tickets sent to clients, search_vector is left out
+    private static final String TICKET_COLUMNS = "t.id, t.owner, t.subject, t.description, t.created, t.modified, t.category, t.status," +
+            " t.school_id, t.escalation_status, t.escalation_date, t.event_count, t.locale, t.issue_update_date, t.category_label";
+    // Tickets not backfilled yet have no short_desc, COALESCE only reads their description
+    private static final String SHORT_DESC_COLUMN = "COALESCE(t.short_desc, substring(t.description, 0, 101)) AS short_desc";
+    private static final String QUERY_PLAN = "QUERY PLAN";
+    private static final String SEARCH_QUERY = "websearch_to_tsquery('support.french_unaccent', ?)";
+    private static final String TRIGRAM_SIMILARITY = "word_similarity(support.immutable_unaccent(?), support.immutable_unaccent(%s))";
+    // Row of support.backfill_jobs holding the progress of the category label backfill
+    private static final String CATEGORY_LABEL_BACKFILL = "category_label";
     private final BugTracker bugTrackerType;
+    // Columns of the list projection by field name, descriptions are only read through short_desc
+    private final Map<String, String> listFields = new LinkedHashMap<>();
     private final Logger LOGGER = LoggerFactory.getLogger(TicketServiceSqlImpl.class);
+    // Totals of the listings, keyed by count query and its values so each user scope and filter has its own entry
+    private final ExpiringCache<String, JsonObject> countCache;
+    // Facet counters of the dashboard, keyed the same way
+    private final ExpiringCache<String, JsonObject> facetCache;
+    // Fingerprints of the listings, keyed the same way and kept as long as their totals
+    private final ExpiringCache<String, String> fingerprintCache;
+    // Name and profile of the users already stored in support.users, by user id
+    private final ExpiringCache<String, String> knownUsers;
+    private final long countEstimateThreshold;
+    private final SearchMode searchMode;
+    private final int searchTrigramMaxLength;
 
     public TicketServiceSqlImpl(BugTracker bugTracker) {
+        this(bugTracker, new JsonObject());
+    }
+
+    public TicketServiceSqlImpl(BugTracker bugTracker, JsonObject config) {
         super("support", "tickets");
         bugTrackerType = bugTracker;
+        countCache = new ExpiringCache<>(config.getLong("count-cache-ttl", 30L) * 1000L,
+                config.getInteger("count-cache-max-size", 1000));
+        facetCache = new ExpiringCache<>(config.getLong("facet-cache-ttl", 30L) * 1000L,
+                config.getInteger("facet-cache-max-size", 1000));
+        fingerprintCache = new ExpiringCache<>(config.getLong("count-cache-ttl", 30L) * 1000L,
+                config.getInteger("count-cache-max-size", 1000));
+        knownUsers = new ExpiringCache<>(config.getLong("known-user-cache-ttl", 3600L) * 1000L,
+                config.getInteger("known-user-cache-max-size", 10000));
+        countEstimateThreshold = config.getLong("count-estimate-threshold", 100000L);
+        searchMode = SearchMode.fromConfig(config.getString("search-mode"));
+        searchTrigramMaxLength = config.getInteger("search-trigram-max-length", 6);
+
+        for (String column : Arrays.asList(JiraTicket.ID, JiraTicket.OWNER, JiraTicket.SUBJECT, JiraTicket.CREATION_DATE,
+                JiraTicket.MODIFICATION_DATE, JiraTicket.CATEGORY, JiraTicket.CATEGORY_LABEL, JiraTicket.STATUS, JiraTicket.SCHOOL_ID,
+                JiraTicket.ESCALATION_STATUS, JiraTicket.ESCALATION_DATE, JiraTicket.EVENT_COUNT, JiraTicket.LOCALE,
+                JiraTicket.ISSUE_UPDATE_DATE)) {
+            listFields.put(column, "t." + column);
+        }
+        listFields.put(JiraTicket.OWNER_NAME, "u.username AS owner_name");
+        listFields.put(JiraTicket.PROFILE, "u.profile");
+        listFields.put(JiraTicket.SHORT_DESC, SHORT_DESC_COLUMN);
+        // Workers and tests build the service without bug tracker, they never list the issues
+        if (bugTracker != null) {
+            listFields.put(JiraTicket.LAST_ISSUE_UPDATE, "i.content" + bugTracker.getLastIssueUpdateFromPostgresqlJson() + " AS last_issue_update");
+        }
+    }
+
+    /**
+     * Columns to select in list pages
+     *
+     * @param fields    fields asked by the client, all the list fields when null or empty, unknown fields are ignored
+     * @param withIssue false when the query does not join support.bug_tracker_issues
+     * @param required  columns of support.tickets that are always selected, such as the column cursors are built from
+     */
+    private String listColumns(Collection<String> fields, boolean withIssue, String... required) {
+        Set<String> columns = new LinkedHashSet<>();
+        columns.add("t." + JiraTicket.ID);
+        columns.add("t." + JiraTicket.OWNER);
+        for (String column : required) {
+            columns.add("t." + column);
+        }
+        (fields == null || fields.isEmpty() ? listFields.keySet() : fields).stream()
+                .filter(listFields::containsKey)
+                .filter(field -> withIssue || !JiraTicket.LAST_ISSUE_UPDATE.equals(field))
+                .forEach(field -> columns.add(listFields.get(field)));
+        return String.join(", ", columns);
     }
 
 	@Override
-	public void createTicket(JsonObject ticket, JsonArray attachments, UserInfos user, String locale,
+	public void createTicket(JsonObject ticket, JsonArray attachments, UserInfos user, String locale, String histoEvent,
 			Handler<Either<String, Ticket>> handler) {
 
         SqlStatementsBuilder s = new SqlStatementsBuilder();
 
         // 1. Upsert user
-        s.prepared(UPSERT_USER_QUERY, new JsonArray().add(user.getUserId()).add(user.getUsername()));
+        boolean userUpserted = upsertUser(s, user);
+        int index = userUpserted ? 1 : 0;
 
         // 2. Create ticket
         ticket.put("owner", user.getUserId());
         ticket.put("locale", locale);
-		String returnedFields = "id, subject, school_id, status, created, modified, escalation_status, escalation_date, substring(description, 0, 101)  as short_desc";
+        ticket.put(JiraTicket.SHORT_DESC, Ticket.shortDescription(ticket.getString(JiraTicket.DESCRIPTION)));
+		String returnedFields = "id, subject, school_id, status, created, modified, escalation_status, escalation_date, short_desc";
 		s.insert(resourceTable, ticket, returnedFields);
 
+		// 3. Historize the creation
+		s.prepared("INSERT INTO support.tickets_histo (ticket_id, event, status, user_id, event_type)" +
+				" VALUES ((SELECT currval('support.tickets_id_seq')), ?, ?, ?, ?)",
+				new JsonArray().add(histoEvent).add(ticket.getInteger("status")).add(user.getUserId())
+						.add(TicketHisto.NEW.eventType()));
+
 		this.insertAttachments(attachments, user, s, null, false);
 
-		sql.transaction(s.build(), validUniqueResultHandler(1, toTicketHandler(handler)));
+		sql.transaction(s.build(), rememberUser(user, userUpserted, validUniqueResultHandler(index, toTicketHandler(handler))));
 	}
 
 	@Override
 	public void updateTicket(String ticketId, JsonObject data, UserInfos user, Handler<Either<String, Ticket>> handler) {
+		updateTicket(ticketId, data, user, null, handler);
+	}
+
+	@Override
+	public void updateTicket(String ticketId, JsonObject data, UserInfos user, String histoEvent,
+							 Handler<Either<String, Ticket>> handler) {
 
 		SqlStatementsBuilder s = new SqlStatementsBuilder();
 
 		// 1. Upsert user
-		s.prepared(UPSERT_USER_QUERY, new JsonArray().add(user.getUserId()).add(user.getUsername()));
+		boolean userUpserted = upsertUser(s, user);
 
 		// 2. Update ticket
 		StringBuilder sb = new StringBuilder();
 		JsonArray values = new JsonArray();
 		//numéro de la ligne contenant les informations du ticket
-		int index = 1;
+		int index = userUpserted ? 1 : 0;
 		for (String attr : data.fieldNames()) {
 			// COCO-4341 Update description iif ticket is not already escalated.
 			if("description".equals(attr)) {
 				s.prepared(
-					"UPDATE support.tickets SET description = ? WHERE id = ? AND escalation_status NOT IN (?, ?)",
+					"UPDATE support.tickets SET description = ?, short_desc = ? WHERE id = ? AND escalation_status NOT IN (?, ?)",
 					new JsonArray()
 					.add(data.getValue(attr))
+					.add(Ticket.shortDescription(data.getString(attr)))
 					.add(parseId(ticketId))
 					.add(EscalationStatus.IN_PROGRESS.status())
 					.add(EscalationStatus.SUCCESSFUL.status())
@@ -136,13 +249,30 @@ public class TicketServiceSqlImpl extends SqlCrudService implements TicketServic
 		}
 		values.add(parseId(ticketId));
 
+		if (histoEvent != null) {
+			sb.append("event_count = event_count + 1, ");
+		}
+
 		String updateTicketQuery = "UPDATE support.tickets" +
 				" SET " + sb.toString() + "modified = timezone('UTC', NOW()) " +
 				"WHERE id = ? RETURNING id, modified, subject, owner, school_id, status";
 		s.prepared(updateTicketQuery, values);
 
-		// 3. Insert comment(s)
+		// 3. Historize the update, in the same transaction
 		String comment = data.getString("newComment", null);
+		boolean hasComment = comment != null && !comment.trim().isEmpty();
+		String insertHistoQuery = "INSERT INTO support.tickets_histo (ticket_id, event, status, user_id, event_type)" +
+				" SELECT id, ?, %s, ?, ? FROM support.tickets WHERE id = ?";
+		if (histoEvent != null && !hasComment) {
+			// Without a comment, the update itself is historized with the status it left
+			s.prepared(String.format(insertHistoQuery, "status"), new JsonArray()
+					.add(histoEvent)
+					.add(user.getUserId())
+					.add(TicketHisto.UPDATED.eventType())
+					.add(parseId(ticketId)));
+		}
+
+		// 4. Insert comment(s)
 		JsonArray comments = data.getJsonArray("newComments", new JsonArray());
 		String insertCommentQuery = "INSERT INTO support.comments (ticket_id, owner, content) VALUES(?, ?, ?)";
 		String reopenTicketOnComment = "UPDATE support.tickets SET status = ?, modified = timezone('UTC', NOW()) WHERE id = ? AND status IN (?, ?)";
@@ -150,13 +280,28 @@ public class TicketServiceSqlImpl extends SqlCrudService implements TicketServic
 
 		JsonArray reopenTicketOnCommentValues = new JsonArray();
 
-		if(comment != null && !comment.trim().isEmpty()) {
+		if(hasComment) {
 			JsonArray commentValues = new JsonArray();
 			commentValues.add(parseId(ticketId))
 				.add(user.getUserId())
 				.add(comment);
 			s.prepared(insertCommentQuery, commentValues);
 
+			if (histoEvent != null) {
+				// The comment appears in the history, only the opening it triggers below is historized
+				s.prepared(String.format(insertHistoQuery, "?") + " AND (status IN (?, ?) OR (status = ? AND owner != ?))",
+						new JsonArray()
+								.add(histoEvent)
+								.add(TicketStatus.OPENED.status())
+								.add(user.getUserId())
+								.add(TicketHisto.UPDATED.eventType())
+								.add(parseId(ticketId))
+								.add(TicketStatus.RESOLVED.status())
+								.add(TicketStatus.CLOSED.status())
+								.add(TicketStatus.NEW.status())
+								.add(user.getUserId()));
+			}
+
 			reopenTicketOnCommentValues
 					.add(TicketStatus.OPENED.status())
 					.add(parseId(ticketId))
@@ -199,12 +344,45 @@ public class TicketServiceSqlImpl extends SqlCrudService implements TicketServic
 					.add(user.getUserId()));
 		}
 
-		// 4. Insert attachments
+		// 5. Insert attachments
 		JsonArray attachments = data.getJsonArray("attachments", null);
 		this.insertAttachments(attachments, user, s, ticketId, data.containsKey("newComment"));
 
 		// Send queries to event bus
-		sql.transaction(s.build(), validUniqueResultHandler(index, toTicketHandler(handler, attachments)));
+		sql.transaction(s.build(), rememberUser(user, userUpserted,
+				validUniqueResultHandler(index, toTicketHandler(handler, attachments))));
+	}
+
+	/**
+	 * Append to the statements the upsert of the user, unless the user is already stored with the same name and profile
+	 *
+	 * @return {boolean} true if the upsert has been appended
+	 */
+	private boolean upsertUser(SqlStatementsBuilder s, UserInfos user) {
+		if (userKey(user).equals(knownUsers.get(user.getUserId()))) {
+			return false;
+		}
+		s.prepared(UPSERT_USER_QUERY, new JsonArray().add(user.getUserId()).add(user.getUsername()).add(user.getType()));
+		return true;
+	}
+
+	/**
+	 * Remember the user as stored once the transaction upserting it has been committed
+	 */
+	private Handler<Message<JsonObject>> rememberUser(UserInfos user, boolean userUpserted, Handler<Message<JsonObject>> handler) {
+		if (!userUpserted) {
+			return handler;
+		}
+		return message -> {
+			if ("ok".equals(message.body().getString("status"))) {
+				knownUsers.put(user.getUserId(), userKey(user));
+			}
+			handler.handle(message);
+		};
+	}
+
+	private String userKey(UserInfos user) {
+		return user.getUsername() + "|" + user.getType();
 	}
 
 
@@ -254,35 +432,58 @@ public class TicketServiceSqlImpl extends SqlCrudService implements TicketServic
 
 	}
 
-	@Override
-	public Future<JsonArray> listTickets(UserInfos user, Integer page, List<String> statuses, List<String> applicants, String school_id,
-																			 String sortBy, String order, Integer nbTicketsPerPage, JsonArray orderedIds) {
-		return listTickets(user, page, statuses, applicants, school_id,
-											 sortBy, order, nbTicketsPerPage, orderedIds, null);
-	}
-
 	@Override
 	public Future<JsonArray> listTickets(UserInfos user, Integer page, List<String> statuses, List<String> applicants, String school_id,
 																			 String sortBy, String order, Integer nbTicketsPerPage, JsonObject structureChildren) {
-		return listTickets(user, page, statuses, applicants, school_id,
-											 sortBy, order, nbTicketsPerPage, null, structureChildren);
-	}
-
-	@Override
-	public Future<JsonArray> listTickets(UserInfos user, Integer page, List<String> statuses, List<String> applicants, String school_id,
-																			 String sortBy, String order, Integer nbTicketsPerPage, JsonArray orderedIds, JsonObject structureChildren) {
 		Promise<JsonArray> promise = Promise.promise();
 		StringBuilder query = new StringBuilder();
 		JsonArray values = new JsonArray();
-		query.append("SELECT t.*, u.username AS owner_name, ")
-						.append("i.content").append(bugTrackerType.getLastIssueUpdateFromPostgresqlJson()).append(" AS last_issue_update, ")
-						.append(" substring(t.description, 0, 101)  as short_desc,")
-						.append(" COUNT(*) OVER() AS total_results")
-						.append(" FROM support.tickets AS t")
+		query.append("SELECT ").append(listColumns(null, true));
+		int fromIndex = query.length();
+		query.append(" FROM support.tickets AS t")
 						.append(" INNER JOIN support.users AS u ON t.owner = u.id")
 						.append(" LEFT JOIN support.bug_tracker_issues AS i ON t.id=i.ticket_id");
-		joinIdsOrdered(sortBy, orderedIds, query, values);
+		if (JiraTicket.SCHOOL_ID.equals(sortBy)) {
+			query.append(" LEFT JOIN support.structures AS s ON s.id = t.school_id");
+		}
+
+		appendListTicketsConditions(query, values, user, statuses, applicants, school_id, structureChildren);
+
+		String countFromClause = query.substring(fromIndex).replaceFirst("AND", "WHERE");
+		JsonArray countValues = values.copy();
+
+		String direction = "";
+		if (order != null && (order.equals("ASC") || order.equals("DESC"))) {
+			direction = " " + order;
+		} else {
+			String message = String.format("[Support@%s::listTickets] this order is not valid"
+							, this.getClass().getSimpleName());
+			LOGGER.error(String.format(message));
+		}
+		orderBy(sortBy, direction, query);
 
+		if (page > 0) {
+			query.append(" LIMIT ?").append(" OFFSET ").append((page - 1) * nbTicketsPerPage);
+			values.add(nbTicketsPerPage);
+		}
+
+		sql.prepared(query.toString().replaceFirst("AND", "WHERE"), values, validResultHandler(PromiseHelper.handler(promise)));
+		if (page <= 0) {
+			return promise.future();
+		}
+		Future<JsonObject> countFuture = countTickets(countFromClause, countValues);
+		return CompositeFuture.all(promise.future(), countFuture)
+				.map(result -> PaginationHelper.addTotalResults(promise.future().result(), countFuture.result()));
+	}
+
+	/**
+	 * Append the scope and the filters of the GET /tickets listing, each condition starting with AND
+	 *
+	 * @param school_id         structure asked by the client, or "*"
+	 * @param structureChildren the structure and its children, unused for "*"
+	 */
+	private void appendListTicketsConditions(StringBuilder query, JsonArray values, UserInfos user, List<String> statuses,
+											 List<String> applicants, String school_id, JsonObject structureChildren) {
 		boolean oneApplicant = false;
 		String applicant;
 		boolean applicantIsMe = true;
@@ -298,17 +499,16 @@ public class TicketServiceSqlImpl extends SqlCrudService implements TicketServic
 			List<String> scopesList = superAdmin != null ? superAdmin.getScope() : adminLocal.getScope();
 
 			if (scopesList != null && !scopesList.isEmpty()) {
-				query.append(" AND t.school_id IN ");
 				if (school_id.equals("*")) {
-					query.append(Sql.listPrepared(scopesList));
-					values.addAll(new JsonArray(scopesList));
+					query.append(" AND t.school_id = ANY(?::varchar[])");
+					values.add(SqlHelper.arrayLiteral(scopesList));
 				} else if (scopesList.contains(school_id)) {
 					List<String> listIdStructure = structureChildren.getJsonArray(JiraTicket.STRUCTUREIDS).stream()
 									.filter(String.class::isInstance)
 									.map(Object::toString)
 									.collect(Collectors.toList());
-					query.append(Sql.listPrepared(listIdStructure));
-					values.addAll(new JsonArray(listIdStructure));
+					query.append(" AND t.school_id = ANY(?::varchar[])");
+					values.add(SqlHelper.arrayLiteral(listIdStructure));
 				}
 
 				if (oneApplicant) {
@@ -317,8 +517,8 @@ public class TicketServiceSqlImpl extends SqlCrudService implements TicketServic
 				}
 			}
 		} else if (school_id.equals("*")) {
-			query.append(" AND t.school_id IN ").append(Sql.listPrepared(user.getStructures()));
-			values.addAll(new JsonArray(user.getStructures()));
+			query.append(" AND t.school_id = ANY(?::varchar[])");
+			values.add(SqlHelper.arrayLiteral(user.getStructures()));
 			if (oneApplicant) {
 				query.append(" AND t.owner").append(applicantIsMe ? "=" : "!=").append("?");
 				values.add(user.getUserId());
@@ -337,73 +537,310 @@ public class TicketServiceSqlImpl extends SqlCrudService implements TicketServic
 		}
 
 		if (!school_id.equals("*")) {
-			query.append(" AND t.school_id IN ");
 			List<String> listIdStructure = structureChildren.getJsonArray(JiraTicket.STRUCTUREIDS).stream()
 							.filter(String.class::isInstance)
 							.map(Object::toString)
 							.collect(Collectors.toList());
-			query.append(Sql.listPrepared(listIdStructure));
-			values.addAll(new JsonArray(listIdStructure));
+			query.append(" AND t.school_id = ANY(?::varchar[])");
+			values.add(SqlHelper.arrayLiteral(listIdStructure));
 		}
-
-		orderByIds(sortBy, query);
-
-		if (order != null && (order.equals("ASC") || order.equals("DESC"))) {
-			query.append(" " + order);
-		} else {
-			String message = String.format("[Support@%s::listTickets] this order is not valid"
-							, this.getClass().getSimpleName());
-			LOGGER.error(String.format(message));
-		}
-
-		if (page > 0) {
-			query.append(" LIMIT ?").append(" OFFSET ").append((page - 1) * nbTicketsPerPage);
-			values.add(nbTicketsPerPage);
-		}
-
-		sql.prepared(query.toString().replaceFirst("AND", "WHERE"), values, validResultHandler(PromiseHelper.handler(promise)));
-		return promise.future();
-	}
-
-	private void joinIdsOrdered(String sortBy, JsonArray orderedIds, StringBuilder query, JsonArray params) {
-		if (ALLOWED_SORT_BY_COLUMN.contains(sortBy))
-			switch (sortBy) {
-				case JiraTicket.SCHOOL_ID:
-					query.append(" JOIN unnest " + Sql.arrayPrepared(orderedIds) + " WITH ORDINALITY arr(id,ord) ON t.school_id = arr.id ");
-					params.addAll(orderedIds);
-					break;
-				case JiraTicket.PROFILE:
-					query.append(" JOIN unnest " + Sql.arrayPrepared(orderedIds) + " WITH ORDINALITY arr(id,ord) ON t.owner = arr.id ");
-					params.addAll(orderedIds);
-					break;
-			}
 	}
 
-	private void orderByIds(String sortBy, StringBuilder query) {
+	private void orderBy(String sortBy, String direction, StringBuilder query) {
 		if (ALLOWED_SORT_BY_COLUMN.contains(sortBy)) {
-			if (Objects.equals(sortBy, JiraTicket.SCHOOL_ID) || Objects.equals(sortBy, JiraTicket.PROFILE))
-				query.append(" ORDER BY arr.ord ");
-			else query.append(String.format(" ORDER BY t.%s", sortBy));
+			if (Objects.equals(sortBy, JiraTicket.SCHOOL_ID))
+				// Structures are sorted by name through the sort key synced from the directory
+				query.append(String.format(" ORDER BY s.sort_key%s, t.id%s", direction, direction));
+			else query.append(String.format(" ORDER BY t.%s%s", sortColumnName(sortBy), direction));
 		}
 	}
 
+	/**
+	 * Column of support.tickets to sort on for a sort asked by the client
+	 */
+	private static String sortColumnName(String sortBy) {
+		// Profiles are sorted through the rank stored on each ticket, which is indexed
+		return JiraTicket.PROFILE.equals(sortBy) ? JiraTicket.OWNER_PROFILE_RANK : sortBy;
+	}
+
     @Override
-    public Future<JsonArray> listFilteredTickets(UserInfos user, Integer page, List<String> statuses, List<String> applicants, List<String> schoolIds, boolean allSchools, String sortBy, String order, Integer nbTicketsPerPage, String search) {
+    public Future<JsonArray> listFilteredTickets(UserInfos user, Integer page, List<String> statuses, List<String> applicants, List<String> schoolIds, boolean allSchools, String sortBy, String order, Integer nbTicketsPerPage, String search, String after, List<String> fields) {
         Promise<JsonArray> promise = Promise.promise();
+        String sortColumn = ALLOWED_SORT_BY_COLUMN.contains(sortBy) ? sortBy : JiraTicket.MODIFICATION_DATE;
+        String direction = "ASC".equals(order) ? "ASC" : "DESC";
+        // When searching, tickets are ranked by relevance unless another sort is asked
+        boolean byRelevance = !StringHelper.isNullOrEmpty(search) && (sortBy == null || JiraTicket.RELEVANCE.equals(sortBy));
+        boolean keyset = !byRelevance && KEYSET_SORT_COLUMNS.containsKey(sortColumn);
+        String orderColumn = sortColumnName(sortColumn);
+
+        JsonArray cursor = null;
+        if (after != null && !after.isEmpty()) {
+            cursor = keyset ? CursorHelper.decode(after, sortColumn, direction) : null;
+            if (cursor == null) {
+                String message = String.format("[Support@%s::listFilteredTickets] invalid cursor for sort %s %s",
+                        this.getClass().getSimpleName(), sortColumn, direction);
+                LOGGER.error(message);
+                return Future.failedFuture("support.error.invalid.cursor");
+            }
+        }
         StringBuilder query = new StringBuilder();
         JsonArray values = new JsonArray();
 
-        query.append("SELECT t.*, u.username AS owner_name, ")
-             .append("i.content")
-             .append(bugTrackerType.getLastIssueUpdateFromPostgresqlJson())
-             .append(" AS last_issue_update, ")
-             .append(" substring(t.description, 0, 101) as short_desc,")
-             .append(" COUNT(*) OVER() AS total_results")
+        query.append("SELECT ").append(listColumns(fields, true, orderColumn))
              .append(" FROM support.tickets AS t")
              .append(" INNER JOIN support.users AS u ON t.owner = u.id")
              .append(" LEFT JOIN support.bug_tracker_issues AS i ON t.id=i.ticket_id")
              .append(" WHERE 1=1");
+        appendFilteredTicketsConditions(query, values, user, statuses, applicants, schoolIds, allSchools, search);
+
+        // Keyset mode: seek directly after the last row of the previous page instead of skipping rows with OFFSET
+        if (cursor != null) {
+            String comparator = "ASC".equals(direction) ? ">" : "<";
+            if (JiraTicket.ID.equals(sortColumn)) {
+                query.append(" AND t.id ").append(comparator).append(" ?");
+                values.add(cursor.getLong(1));
+            } else {
+                query.append(String.format(" AND (t.%s, t.id) %s (%s, ?)", orderColumn, comparator, KEYSET_SORT_COLUMNS.get(sortColumn)));
+                values.add(cursor.getValue(0)).add(cursor.getLong(1));
+            }
+        }
+
+        if (byRelevance && useTrigramSearch(search)) {
+            query.append(" ORDER BY GREATEST(")
+                 .append(String.format(TRIGRAM_SIMILARITY, "t.subject")).append(", ")
+                 .append(String.format(TRIGRAM_SIMILARITY, "u.username")).append(") DESC, t.id DESC");
+            values.add(search).add(search);
+        } else if (byRelevance) {
+            query.append(" ORDER BY ts_rank(t.search_vector, ").append(SEARCH_QUERY).append(") DESC, t.id DESC");
+            values.add(search);
+        } else {
+            query.append(String.format(" ORDER BY t.%s %s", orderColumn, direction));
+            if (!JiraTicket.ID.equals(sortColumn)) {
+                // id is used as tie-breaker so that pages are stable
+                query.append(String.format(", t.id %s", direction));
+            }
+        }
+
+        if (cursor != null) {
+            query.append(" LIMIT ?");
+            values.add(nbTicketsPerPage);
+        } else if (page != null && page > 0) {
+            query.append(" LIMIT ?").append(" OFFSET ").append((page - 1) * nbTicketsPerPage);
+            values.add(nbTicketsPerPage);
+        }
+
+        sql.prepared(query.toString(), values, validResultHandler(PromiseHelper.handler(promise)));
+
+        return keyset ? promise.future().map(tickets -> addCursors(tickets, sortColumn, orderColumn, direction)) : promise.future();
+    }
+
+    @Override
+    public Future<JsonObject> countFilteredTickets(UserInfos user, List<String> statuses, List<String> applicants, List<String> schoolIds, boolean allSchools, String search) {
+        StringBuilder fromClause = new StringBuilder();
+        JsonArray values = new JsonArray();
+        fromClause.append(" FROM support.tickets AS t")
+                  .append(" WHERE 1=1");
+        appendFilteredTicketsConditions(fromClause, values, user, statuses, applicants, schoolIds, allSchools, search);
+        return countTickets(fromClause.toString(), values);
+    }
+
+    @Override
+    public Future<JsonObject> facetTickets(UserInfos user, List<String> schoolIds, boolean allSchools) {
+        StringBuilder query = new StringBuilder();
+        JsonArray values = new JsonArray();
+        // GROUPING() tells which grouping set a row belongs to: 3 per status, 5 per school, 6 per category, 7 for the total
+        query.append("SELECT t.status, t.school_id, t.category, GROUPING(t.status, t.school_id, t.category) AS grouping_set,")
+             .append(" COUNT(*) AS count")
+             .append(" FROM support.tickets AS t")
+             .append(" WHERE 1=1");
+        appendFilteredTicketsConditions(query, values, user, null, null, schoolIds, allSchools, null);
+        query.append(" GROUP BY GROUPING SETS ((t.status), (t.school_id), (t.category), ())");
+
+        String key = query.toString() + values.encode();
+        JsonObject cached = facetCache.get(key);
+        if (cached != null) {
+            return Future.succeededFuture(cached.copy());
+        }
+
+        Promise<JsonArray> promise = Promise.promise();
+        String errorMessage = String.format("[Support@%s::facetTickets] Failed to count tickets per facet", this.getClass().getSimpleName());
+        sql.prepared(query.toString(), values, validResultHandler(PromiseHelper.handler(promise, errorMessage)));
+        return promise.future()
+                .map(this::toFacets)
+                .onSuccess(facets -> facetCache.put(key, facets.copy()));
+    }
+
+    private JsonObject toFacets(JsonArray rows) {
+        JsonObject facets = new JsonObject()
+                .put(JiraTicket.TOTAL, 0L)
+                .put(JiraTicket.STATUSES, new JsonArray())
+                .put(JiraTicket.SCHOOLS, new JsonArray())
+                .put(JiraTicket.CATEGORIES, new JsonArray());
+        for (JsonObject row : EnrichmentHelper.jsonObjects(rows)) {
+            Long count = row.getLong(JiraTicket.COUNT, 0L);
+            switch (row.getInteger("grouping_set", -1)) {
+                case 3:
+                    facets.getJsonArray(JiraTicket.STATUSES).add(new JsonObject()
+                            .put(JiraTicket.STATUS, row.getInteger(JiraTicket.STATUS)).put(JiraTicket.COUNT, count));
+                    break;
+                case 5:
+                    facets.getJsonArray(JiraTicket.SCHOOLS).add(new JsonObject()
+                            .put(JiraTicket.SCHOOL_ID, row.getString(JiraTicket.SCHOOL_ID)).put(JiraTicket.COUNT, count));
+                    break;
+                case 6:
+                    facets.getJsonArray(JiraTicket.CATEGORIES).add(new JsonObject()
+                            .put(JiraTicket.CATEGORY, row.getString(JiraTicket.CATEGORY)).put(JiraTicket.COUNT, count));
+                    break;
+                case 7:
+                    facets.put(JiraTicket.TOTAL, count);
+                    break;
+                default:
+                    break;
+            }
+        }
+        return facets;
+    }
+
+    @Override
+    public boolean canListChunksSortedBy(String sortBy) {
+        // Structures are sorted by name, which is not a ticket column and cannot be used for keyset pagination
+        return !ALLOWED_SORT_BY_COLUMN.contains(sortBy)
+                || (KEYSET_SORT_COLUMNS.containsKey(sortBy) && !JiraTicket.SCHOOL_ID.equals(sortBy));
+    }
+
+    @Override
+    public Future<JsonArray> listTicketsChunk(UserInfos user, List<String> statuses, List<String> applicants, String schoolId,
+                                              JsonObject structureChildren, String sortBy, String order, JsonObject last, int chunkSize) {
+        String sortColumn = canListChunksSortedBy(sortBy) && KEYSET_SORT_COLUMNS.containsKey(sortBy) ? sortBy : JiraTicket.ID;
+        StringBuilder query = new StringBuilder();
+        JsonArray values = new JsonArray();
+
+        query.append("SELECT ").append(listColumns(null, true, sortColumnName(sortColumn)))
+             .append(" FROM support.tickets AS t")
+             .append(" INNER JOIN support.users AS u ON t.owner = u.id")
+             .append(" LEFT JOIN support.bug_tracker_issues AS i ON t.id=i.ticket_id");
+        // Same scope and filters as the pages of listTickets, so that streaming does not change the listed tickets
+        StringBuilder conditions = new StringBuilder();
+        appendListTicketsConditions(conditions, values, user, statuses, applicants, schoolId, structureChildren);
+        query.append(conditions.length() > 0 ? conditions.toString().replaceFirst("AND", "WHERE") : " WHERE 1=1");
+        return listChunk("listTicketsChunk", query, values, sortColumn, order, last, chunkSize);
+    }
+
+    @Override
+    public Future<JsonArray> listStructureTicketsChunk(List<String> schoolIds, String order, JsonObject last, int chunkSize) {
+        StringBuilder query = new StringBuilder();
+        JsonArray values = new JsonArray();
+
+        query.append("SELECT ").append(listColumns(null, true))
+             .append(" FROM support.tickets AS t")
+             .append(" INNER JOIN support.users AS u ON t.owner = u.id")
+             .append(" LEFT JOIN support.bug_tracker_issues AS i ON t.id=i.ticket_id")
+             .append(" WHERE t.school_id = ANY(?::varchar[])");
+        values.add(SqlHelper.arrayLiteral(schoolIds));
+        return listChunk("listStructureTicketsChunk", query, values, JiraTicket.ID, order, last, chunkSize);
+    }
+
+    /**
+     * Append to a query ending with its WHERE clause the keyset predicate, the order and the limit of a chunk, and run it
+     *
+     * @param sortColumn sort asked by the client, one of KEYSET_SORT_COLUMNS
+     * @param last       last ticket of the previous chunk, null for the first chunk
+     */
+    private Future<JsonArray> listChunk(String method, StringBuilder query, JsonArray values, String sortColumn, String order,
+                                        JsonObject last, int chunkSize) {
+        Promise<JsonArray> promise = Promise.promise();
+        String direction = "ASC".equals(order) ? "ASC" : "DESC";
+        String comparator = "ASC".equals(direction) ? ">" : "<";
+        String orderColumn = sortColumnName(sortColumn);
+
+        // The event bus gives no server-side cursor, each chunk seeks after the last ticket of the previous one
+        if (last != null) {
+            if (JiraTicket.ID.equals(sortColumn)) {
+                query.append(" AND t.id ").append(comparator).append(" ?");
+                values.add(last.getLong(JiraTicket.ID));
+            } else {
+                query.append(String.format(" AND (t.%s, t.id) %s (%s, ?)", orderColumn, comparator, KEYSET_SORT_COLUMNS.get(sortColumn)));
+                values.add(last.getValue(orderColumn)).add(last.getLong(JiraTicket.ID));
+            }
+        }
+        query.append(String.format(" ORDER BY t.%s %s", orderColumn, direction));
+        if (!JiraTicket.ID.equals(sortColumn)) {
+            query.append(String.format(", t.id %s", direction));
+        }
+        query.append(" LIMIT ?");
+        values.add(chunkSize);
+
+        String errorMessage = String.format("[Support@%s::%s] Fail to read tickets after %s",
+                this.getClass().getSimpleName(), method, last != null ? last.getValue(JiraTicket.ID) : null);
+        sql.prepared(query.toString(), values, validResultHandler(PromiseHelper.handler(promise, errorMessage)));
+        return promise.future();
+    }
+
+    @Override
+    public Future<String> fingerprintTickets(UserInfos user, List<String> schoolIds) {
+        Promise<JsonObject> promise = Promise.promise();
+        StringBuilder query = new StringBuilder();
+        JsonArray values = new JsonArray();
+        // row_version is taken from a sequence on every write of the ticket or of its bug tracker issue
+        // (see 036-add-tickets-row-version.sql and 040-add-issues-row-version-trigger.sql)
+        query.append("SELECT count(*) || ':' || COALESCE(max(t.row_version), 0) AS fingerprint")
+             .append(" FROM support.tickets AS t");
+        List<String> scope = schoolIds != null ? schoolIds : visibleSchoolIds(user);
+        if (scope != null) {
+            query.append(" WHERE t.school_id = ANY(?::varchar[])");
+            values.add(SqlHelper.arrayLiteral(scope));
+        }
+        // Polling clients would aggregate their whole scope on every request, the fingerprint is cached like the totals
+        String key = query.toString() + values.encode();
+        String cached = fingerprintCache.get(key);
+        if (cached != null) {
+            return Future.succeededFuture(cached);
+        }
+
+        String errorMessage = String.format("[Support@%s::fingerprintTickets] Fail to fingerprint tickets",
+                this.getClass().getSimpleName());
+        sql.prepared(query.toString(), values, validUniqueResultHandler(PromiseHelper.handler(promise, errorMessage)));
+        return promise.future()
+                .map(result -> result.getString("fingerprint"))
+                .onSuccess(fingerprint -> fingerprintCache.put(key, fingerprint));
+    }
+
+    /**
+     * @return {List<String>} structures whose tickets the user may see, null when the user may see every ticket
+     */
+    private List<String> visibleSchoolIds(UserInfos user) {
+        Function superAdmin = user.getFunctions().get(DefaultFunctions.SUPER_ADMIN);
+        Function adminLocal = user.getFunctions().get(DefaultFunctions.ADMIN_LOCAL);
+        if (superAdmin == null && adminLocal == null) {
+            return user.getStructures();
+        }
+        List<String> scopesList = superAdmin != null ? superAdmin.getScope() : adminLocal.getScope();
+        if (scopesList == null || scopesList.isEmpty()) {
+            return null;
+        }
+        List<String> schoolIds = new ArrayList<>(scopesList);
+        user.getStructures().stream()
+            .filter(s -> !scopesList.contains(s))
+            .forEach(schoolIds::add);
+        return schoolIds;
+    }
+
+    @Override
+    public Future<String> fingerprintTicket(Integer id) {
+        Promise<JsonObject> promise = Promise.promise();
+        String query = "SELECT t.row_version || ':' || COALESCE((SELECT max(i.modified) FROM support.bug_tracker_issues AS i" +
+                " WHERE i.ticket_id = t.id)::text, '') AS fingerprint FROM support.tickets AS t WHERE t.id = ?";
+        String errorMessage = String.format("[Support@%s::fingerprintTicket] Fail to fingerprint ticket %s",
+                this.getClass().getSimpleName(), id);
+        sql.prepared(query, new JsonArray().add(id), validUniqueResultHandler(PromiseHelper.handler(promise, errorMessage)));
+        return promise.future().map(result -> result.getString("fingerprint"));
+    }
 
+    /**
+     * Append to a query ending with a WHERE clause the conditions of the POST /tickets listing
+     */
+    private void appendFilteredTicketsConditions(StringBuilder query, JsonArray values, UserInfos user, List<String> statuses,
+                                                 List<String> applicants, List<String> schoolIds, boolean allSchools, String search) {
         boolean oneApplicant = false;
         boolean applicantIsMe = true;
         if (applicants != null && applicants.size() == 1) {
@@ -422,8 +859,8 @@ public class TicketServiceSqlImpl extends SqlCrudService implements TicketServic
             if (!hasScope) {
                 // If the user is super admin we simply list all tickets
                 if (!allSchools && schoolIds != null && !schoolIds.isEmpty()) {
-                    query.append(" AND t.school_id IN ").append(Sql.listPrepared(schoolIds));
-                    values.addAll(new JsonArray(schoolIds));
+                    query.append(" AND t.school_id = ANY(?::varchar[])");
+                    values.add(SqlHelper.arrayLiteral(schoolIds));
                 }
             } else {
                 // The user may be admin in one school but regular user in another
@@ -447,20 +884,17 @@ public class TicketServiceSqlImpl extends SqlCrudService implements TicketServic
                                                              .collect(Collectors.toList());
 
                 if (!adminSchoolIds.isEmpty() && !regularSchoolIds.isEmpty()) { // The user is admin in some schools and regular user in others
-                    query.append(" AND (t.school_id IN ")
-                         .append(Sql.listPrepared(adminSchoolIds))
-                         .append(" OR (t.school_id IN ")
-                         .append(Sql.listPrepared(regularSchoolIds))
-                         .append(" AND t.owner = ?))");
-                    values.addAll(new JsonArray(adminSchoolIds));
-                    values.addAll(new JsonArray(regularSchoolIds));
+                    query.append(" AND (t.school_id = ANY(?::varchar[])")
+                         .append(" OR (t.school_id = ANY(?::varchar[]) AND t.owner = ?))");
+                    values.add(SqlHelper.arrayLiteral(adminSchoolIds));
+                    values.add(SqlHelper.arrayLiteral(regularSchoolIds));
                     values.add(user.getUserId());
                 } else if (!adminSchoolIds.isEmpty()) { // The user is only admin in some schools
-                    query.append(" AND t.school_id IN ").append(Sql.listPrepared(adminSchoolIds));
-                    values.addAll(new JsonArray(adminSchoolIds));
+                    query.append(" AND t.school_id = ANY(?::varchar[])");
+                    values.add(SqlHelper.arrayLiteral(adminSchoolIds));
                 } else if (!regularSchoolIds.isEmpty()) { // The user is only regular user in some schools
-                    query.append(" AND t.school_id IN ").append(Sql.listPrepared(regularSchoolIds));
-                    values.addAll(new JsonArray(regularSchoolIds));
+                    query.append(" AND t.school_id = ANY(?::varchar[])");
+                    values.add(SqlHelper.arrayLiteral(regularSchoolIds));
                     query.append(" AND t.owner = ?");
                     values.add(user.getUserId());
                 }
@@ -474,11 +908,11 @@ public class TicketServiceSqlImpl extends SqlCrudService implements TicketServic
             query.append(" AND t.owner = ?");
             values.add(user.getUserId());
             if (allSchools) {
-                query.append(" AND t.school_id IN ").append(Sql.listPrepared(user.getStructures()));
-                values.addAll(new JsonArray(user.getStructures()));
+                query.append(" AND t.school_id = ANY(?::varchar[])");
+                values.add(SqlHelper.arrayLiteral(user.getStructures()));
             } else if (schoolIds != null && !schoolIds.isEmpty()) {
-                query.append(" AND t.school_id IN ").append(Sql.listPrepared(schoolIds));
-                values.addAll(new JsonArray(schoolIds));
+                query.append(" AND t.school_id = ANY(?::varchar[])");
+                values.add(SqlHelper.arrayLiteral(schoolIds));
             }
         }
 
@@ -487,41 +921,114 @@ public class TicketServiceSqlImpl extends SqlCrudService implements TicketServic
             values.addAll(new JsonArray(statuses));
         }
 
-        if (search != null && !search.isEmpty()) {
-            query.append(
-                    " AND (unaccent(t.subject) ILIKE unaccent(?) OR unaccent(t.description) ILIKE unaccent(?) OR CAST(t.id AS TEXT) = ? OR unaccent(u.username) ILIKE unaccent(?))");
-            values.add("%" + search + "%").add("%" + search + "%").add(search).add("%" + search + "%");
+        if (search != null && !search.isEmpty() && useTrigramSearch(search)) {
+            // Partial words and typos on the subject and the owner name, served by the trigram indexes (see 029-add-trigram-search-indexes.sql)
+            String pattern = "%" + escapeLikePattern(search.trim()) + "%";
+            query.append(" AND (support.immutable_unaccent(t.subject) ILIKE support.immutable_unaccent(?)")
+                 .append(" OR support.immutable_unaccent(?) <% support.immutable_unaccent(t.subject)")
+                 .append(" OR t.owner = ANY(ARRAY(SELECT id FROM support.users")
+                 .append(" WHERE support.immutable_unaccent(username) ILIKE support.immutable_unaccent(?)")
+                 .append(" OR support.immutable_unaccent(?) <% support.immutable_unaccent(username)))")
+                 .append(" OR CAST(t.id AS TEXT) = ?)");
+            values.add(pattern).add(search).add(pattern).add(search).add(search);
+        } else if (search != null && !search.isEmpty()) {
+            // search_vector holds the subject, the description and the owner name (see 028-add-tickets-search-vector.sql)
+            query.append(" AND (t.search_vector @@ ").append(SEARCH_QUERY).append(" OR CAST(t.id AS TEXT) = ?)");
+            values.add(search).add(search);
         }
+    }
 
-        if (ALLOWED_SORT_BY_COLUMN.contains(sortBy)) {
-            query.append(String.format(" ORDER BY t.%s", sortBy));
-        } else {
-            query.append(" ORDER BY t.modified");
-        }
+    /**
+     * @param search search of the user
+     * @return {boolean} true if the search must be run on the trigram indexes rather than on the full-text one
+     */
+    private boolean useTrigramSearch(String search) {
+        return searchMode.useTrigram(search, searchTrigramMaxLength);
+    }
 
-        if (order != null && (order.equals("ASC") || order.equals("DESC"))) {
-            query.append(" ").append(order);
-        } else {
-            query.append(" DESC");
-        }
+    private String escapeLikePattern(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
 
-        if (page != null && page > 0) {
-            query.append(" LIMIT ?").append(" OFFSET ").append((page - 1) * nbTicketsPerPage);
-            values.add(nbTicketsPerPage);
+    /**
+     * Count the tickets of a listing. The result is cached for a short time so that browsing the pages of the same listing
+     * only counts once. When the planner expects more rows than the configured threshold, its estimate is returned instead
+     * of scanning the whole scope.
+     *
+     * @param fromClause FROM and WHERE clauses of the listing
+     * @param values     values of the clauses
+     * @return {Future<JsonObject>} {"count": Long, "estimated": Boolean}
+     */
+    private Future<JsonObject> countTickets(String fromClause, JsonArray values) {
+        String key = fromClause + values.encode();
+        JsonObject cached = countCache.get(key);
+        if (cached != null) {
+            return Future.succeededFuture(cached.copy());
         }
 
-        sql.prepared(query.toString(), values, validResultHandler(PromiseHelper.handler(promise)));
+        Future<JsonObject> count = countEstimateThreshold > 0
+                ? estimateTickets(fromClause, values).compose(
+                        estimate -> estimate > countEstimateThreshold
+                                ? Future.succeededFuture(new JsonObject().put(JiraTicket.COUNT, estimate).put(JiraTicket.ESTIMATED, true))
+                                : exactCountTickets(fromClause, values),
+                        err -> exactCountTickets(fromClause, values))
+                : exactCountTickets(fromClause, values);
 
-        return promise.future();
+        return count.onSuccess(result -> countCache.put(key, result.copy()));
+    }
+
+    private Future<JsonObject> exactCountTickets(String fromClause, JsonArray values) {
+        Promise<JsonObject> promise = Promise.promise();
+        String errorMessage = String.format("[Support@%s::exactCountTickets] Failed to count tickets", this.getClass().getSimpleName());
+        sql.prepared("SELECT COUNT(*) AS count" + fromClause, values, validUniqueResultHandler(PromiseHelper.handler(promise, errorMessage)));
+        return promise.future().map(result -> new JsonObject()
+                .put(JiraTicket.COUNT, result.getLong(JiraTicket.COUNT, 0L))
+                .put(JiraTicket.ESTIMATED, false));
+    }
+
+    /**
+     * @return {Future<Long>} number of rows expected by the planner for the listing
+     */
+    private Future<Long> estimateTickets(String fromClause, JsonArray values) {
+        Promise<JsonObject> promise = Promise.promise();
+        String errorMessage = String.format("[Support@%s::estimateTickets] Failed to estimate tickets", this.getClass().getSimpleName());
+        sql.prepared("EXPLAIN (FORMAT JSON) SELECT 1" + fromClause, values, validUniqueResultHandler(PromiseHelper.handler(promise, errorMessage)));
+        return promise.future().compose(result -> {
+            try {
+                Object plan = result.getValue(QUERY_PLAN);
+                JsonArray plans = plan instanceof JsonArray ? (JsonArray) plan : new JsonArray(String.valueOf(plan));
+                Number rows = (Number) plans.getJsonObject(0).getJsonObject("Plan").getValue("Plan Rows");
+                return Future.succeededFuture(rows.longValue());
+            } catch (RuntimeException e) {
+                LOGGER.error(String.format("[Support@%s::estimateTickets] Unexpected query plan: %s",
+                        this.getClass().getSimpleName(), e.getMessage()));
+                return Future.failedFuture(e);
+            }
+        });
+    }
+
+    /**
+     * Add to each ticket the cursor to send back in "after" to get the tickets following it.
+     * The profile rank is only selected for the cursor, it is not sent to clients.
+     */
+    private JsonArray addCursors(JsonArray tickets, String sortColumn, String orderColumn, String direction) {
+        tickets.stream()
+               .filter(JsonObject.class::isInstance)
+               .map(JsonObject.class::cast)
+               .forEach(ticket -> {
+                   ticket.put(JiraTicket.CURSOR, CursorHelper.encode(sortColumn, direction,
+                           ticket.getValue(orderColumn), ticket.getLong(JiraTicket.ID)));
+                   ticket.remove(JiraTicket.OWNER_PROFILE_RANK);
+               });
+        return tickets;
     }
 
 	@Override
 	public void getTicket(UserInfos user, Integer id, Handler<Either<String, JsonArray>> handler) {
 		StringBuilder query = new StringBuilder();
-		query.append("SELECT t.*, u.username AS owner_name, ")
+		query.append("SELECT " + TICKET_COLUMNS + ", u.username AS owner_name, u.profile, ")
 				.append("i.content").append(bugTrackerType.getLastIssueUpdateFromPostgresqlJson()).append(" AS last_issue_update, ")
-				.append(" substring(t.description, 0, 101)  as short_desc,")
-				.append(" COUNT(*) OVER() AS total_results")
+				.append(" ").append(SHORT_DESC_COLUMN)
 				.append(" FROM support.tickets AS t")
 				.append(" INNER JOIN support.users AS u ON t.owner = u.id")
 				.append(" LEFT JOIN support.bug_tracker_issues AS i ON t.id=i.ticket_id");
@@ -532,8 +1039,8 @@ public class TicketServiceSqlImpl extends SqlCrudService implements TicketServic
 		List<String> scopesList = superAdmin != null ? superAdmin.getScope() : (adminLocal != null ? adminLocal.getScope() : null);
 
 		if (scopesList != null && !scopesList.isEmpty()) {
-            query.append(" WHERE (t.school_id IN ").append(Sql.listPrepared(scopesList));
-            values.addAll(new JsonArray(scopesList));
+            query.append(" WHERE (t.school_id = ANY(?::varchar[])");
+            values.add(SqlHelper.arrayLiteral(scopesList));
             query.append(" OR t.owner = ?");
             values.add(user.getUserId());
             query.append(") AND t.id = ?");
@@ -549,9 +1056,9 @@ public class TicketServiceSqlImpl extends SqlCrudService implements TicketServic
 	public void listMyTickets(UserInfos user, Integer page, List<String> statuses, String school_id, String sortBy,
 							  String order, Integer nbTicketsPerPage, Handler<Either<String, JsonArray>> handler) {
 		StringBuilder query = new StringBuilder();
-		query.append("SELECT t.*, u.username AS owner_name, substring(t.description, 0, 100) AS short_desc")
-				.append(", COUNT(*) OVER() AS total_results")
-				.append(" FROM support.tickets AS t")
+		query.append("SELECT ").append(listColumns(null, false));
+		int fromIndex = query.length();
+		query.append(" FROM support.tickets AS t")
 				.append(" INNER JOIN support.users AS u ON t.owner = u.id")
 				.append(" WHERE t.owner = ?");
 		JsonArray values = new JsonArray().add(user.getUserId());
@@ -571,9 +1078,11 @@ public class TicketServiceSqlImpl extends SqlCrudService implements TicketServic
 			values.add(school_id);
 		}
 
+		Future<JsonObject> countFuture = countTickets(query.substring(fromIndex), values.copy());
+
 		if(ALLOWED_SORT_BY_COLUMN.contains(sortBy)){
 			query.append(" ORDER BY t.");
-			query.append(sortBy);
+			query.append(sortColumnName(sortBy));
 		}
 
 		if(order != null && (order.equals("ASC") || order.equals("DESC"))){
@@ -589,14 +1098,17 @@ public class TicketServiceSqlImpl extends SqlCrudService implements TicketServic
 
 		values.add(nbTicketsPerPage);
 
-		sql.prepared(query.toString(), values, validResultHandler(handler));
+		Promise<JsonArray> promise = Promise.promise();
+		sql.prepared(query.toString(), values, validResultHandler(PromiseHelper.handler(promise)));
+		CompositeFuture.all(promise.future(), countFuture)
+				.onSuccess(result -> handler.handle(new Either.Right<>(PaginationHelper.addTotalResults(promise.future().result(), countFuture.result()))))
+				.onFailure(err -> handler.handle(new Either.Left<>(err.getMessage())));
 	}
 
 	@Override
 	public void getMyTicket(UserInfos user, Integer id, Handler<Either<String, JsonArray>> handler) {
 		StringBuilder query = new StringBuilder();
-		query.append("SELECT t.*, u.username AS owner_name, substring(t.description, 0, 100) AS short_desc")
-				.append(", COUNT(*) OVER() AS total_results")
+		query.append("SELECT " + TICKET_COLUMNS + ", u.username AS owner_name, u.profile, " + SHORT_DESC_COLUMN)
 				.append(" FROM support.tickets AS t")
 				.append(" INNER JOIN support.users AS u ON t.owner = u.id")
 				.append(" WHERE t.owner = ?");
@@ -608,6 +1120,68 @@ public class TicketServiceSqlImpl extends SqlCrudService implements TicketServic
 		sql.prepared(query.toString(), values, validResultHandler(handler));
 	}
 
+	/**
+	 * Comments, attachments and history keep the fields of their own endpoints, the issue has the fields of
+	 * {@link Issue#toJsonObject()}. The access check of {@link net.atos.entng.support.filters.OwnerOrLocalAdmin}
+	 * is part of the WHERE clause.
+	 */
+	@Override
+	public Future<JsonObject> getFullTicket(UserInfos user, Integer id) {
+		StringBuilder query = new StringBuilder();
+		query.append("SELECT " + TICKET_COLUMNS + ", u.username AS owner_name, u.profile, ")
+				.append("i.content").append(bugTrackerType.getLastIssueUpdateFromPostgresqlJson()).append(" AS last_issue_update, ")
+				.append(SHORT_DESC_COLUMN).append(",")
+				.append(" COALESCE((SELECT json_agg(tc ORDER BY tc.modified) FROM (SELECT c.*, v.username AS owner_name")
+				.append(" FROM support.comments AS c INNER JOIN support.users AS v ON c.owner = v.id")
+				.append(" WHERE c.ticket_id = t.id) AS tc), '[]'::json) AS comments,")
+				.append(" COALESCE((SELECT json_agg(ta ORDER BY ta.created) FROM (SELECT a.*, v.username AS owner_name")
+				.append(" FROM support.attachments AS a INNER JOIN support.users AS v ON a.owner = v.id")
+				.append(" WHERE a.ticket_id = t.id) AS ta), '[]'::json) AS attachments,")
+				.append(" COALESCE((SELECT json_agg(te ORDER BY te.event_date) FROM (SELECT v.username, th.event, th.status,")
+				.append(" th.event_date, th.user_id, th.event_type, t.school_id")
+				.append(" FROM support.tickets_histo AS th LEFT JOIN support.users AS v ON v.id = th.user_id")
+				.append(" WHERE th.ticket_id = t.id) AS te), '[]'::json) AS events,")
+				.append(" CASE WHEN i.id IS NULL THEN NULL")
+				.append(" ELSE json_build_object('id', i.id, 'content', i.content, 'attachments', COALESCE((SELECT json_agg(")
+				.append("json_build_object('id', ba.id, 'filename', ba.name, 'content_type', NULL, 'size', ba.size,")
+				.append(" 'created_on', ba.created, 'document_id', ba.document_id, 'gridfs_id', ba.gridfs_id) ORDER BY ba.id)")
+				.append(" FROM support.bug_tracker_attachments AS ba WHERE ba.issue_id = i.id AND ba.bugtracker = i.bugtracker), '[]'::json))")
+				.append(" END AS issue")
+				.append(" FROM support.tickets AS t")
+				.append(" INNER JOIN support.users AS u ON t.owner = u.id")
+				.append(" LEFT JOIN support.bug_tracker_issues AS i ON t.id = i.ticket_id")
+				.append(" WHERE t.id = ?");
+		JsonArray values = new JsonArray().add(id);
+
+		// super admins see every ticket, local admins the tickets of their scope, other users their own tickets
+		Function superAdmin = user.getFunctions().get(DefaultFunctions.SUPER_ADMIN);
+		Function adminLocal = user.getFunctions().get(DefaultFunctions.ADMIN_LOCAL);
+		if (superAdmin == null) {
+			query.append(" AND (t.owner = ?");
+			values.add(user.getUserId());
+			if (adminLocal != null && adminLocal.getScope() != null && !adminLocal.getScope().isEmpty()) {
+				query.append(" OR t.school_id = ANY(?::varchar[])");
+				values.add(SqlHelper.arrayLiteral(adminLocal.getScope()));
+			}
+			query.append(")");
+		}
+
+		Promise<JsonObject> promise = Promise.promise();
+		String errorMessage = String.format("[Support@%s::getFullTicket] Fail to get ticket %s",
+				this.getClass().getSimpleName(), id);
+		sql.prepared(query.toString(), values, validUniqueResultHandler(PromiseHelper.handler(promise, errorMessage)));
+		return promise.future().map(ticket -> {
+			if (ticket == null || ticket.getValue(JiraTicket.ID) == null) {
+				return null;
+			}
+			String issue = ticket.getString(JiraTicket.ISSUE);
+			return ticket.put(JiraTicket.COMMENTS, new JsonArray(ticket.getString(JiraTicket.COMMENTS, "[]")))
+					.put(JiraTicket.ATTACHMENTS, new JsonArray(ticket.getString(JiraTicket.ATTACHMENTS, "[]")))
+					.put(JiraTicket.EVENTS, new JsonArray(ticket.getString(JiraTicket.EVENTS, "[]")))
+					.put(JiraTicket.ISSUE, issue == null ? null : new JsonObject(issue));
+		});
+	}
+
 	@Override
 	public void getTicketIdAndSchoolId(final Number issueId, final Handler<Either<String, Ticket>> handler) {
 		String query = "SELECT t.id, t.school_id, t.owner, t.locale, t.status FROM support.tickets AS t"
@@ -709,6 +1283,7 @@ public class TicketServiceSqlImpl extends SqlCrudService implements TicketServic
 				ticket.status = TicketStatus.fromStatus(sqlTicket.getInteger("status"));
 				ticket.subject = sqlTicket.getString("subject");
 				ticket.description = sqlTicket.getString("description");
+				ticket.shortDescription = sqlTicket.getString("short_desc");
 				ticket.category = sqlTicket.getString("category");
 				ticket.schoolId = sqlTicket.getString("school_id");
 				ticket.ownerId = sqlTicket.getString("owner_id", sqlTicket.getString("owner"));
@@ -788,14 +1363,14 @@ public class TicketServiceSqlImpl extends SqlCrudService implements TicketServic
 			statements.prepared(query, values);
 
 			// 2. Upsert user
-			statements.prepared(UPSERT_USER_QUERY, new JsonArray().add(user.getUserId()).add(user.getUsername()));
+			boolean userUpserted = upsertUser(statements, user);
 
 			// 3. Insert bug tracker issue in ENT, so that local administrators can see it
 			String insertQuery = "INSERT INTO support.bug_tracker_issues(id, ticket_id, content, bugtracker, owner)"
 					+ " VALUES(?, ?, ?::JSON, ?, ?)"
 					+ " ON CONFLICT ON CONSTRAINT bug_tracker_issues_pkey"
 					+ " DO UPDATE"
-					+ " SET content = excluded.content";
+					+ " SET content = excluded.content, modified = timezone('UTC', NOW())";
 
 			JsonArray insertValues = new JsonArray().add(issueId)
 					.add(parseId(ticketId))
@@ -810,7 +1385,7 @@ public class TicketServiceSqlImpl extends SqlCrudService implements TicketServic
 				this.insertIssueAttachments(new Id<Issue, Number>(issueId), issue.attachments, statements);
 			}
 
-			sql.transaction(statements.build(), validUniqueResultHandler(1, handler));
+			sql.transaction(statements.build(), rememberUser(user, userUpserted, validUniqueResultHandler(0, handler)));
 		}
 
 	}
@@ -1194,25 +1769,34 @@ public class TicketServiceSqlImpl extends SqlCrudService implements TicketServic
      *
      * @param newStatus : new status of tickets
      * @param idList    : list of the ids that will be modified
-     * @param handler
+     * @param handler   : ids of the updated tickets escalated to a bug tracker
      */
-    public void updateTicketStatus(Integer newStatus, List<Integer> idList, Handler<Either<String, JsonObject>> handler) {
+    public void updateTicketStatus(Integer newStatus, List<Integer> idList, String histoEvent, String userId,
+                                   Handler<Either<String, JsonArray>> handler) {
+        // The history rows are inserted from the RETURNING of the update, in the same statement
         StringBuilder query = new StringBuilder();
-        query.append("UPDATE support.tickets");
+        query.append("WITH updated_tickets AS (");
+        query.append(" UPDATE support.tickets");
         query.append(" SET status = ?, event_count = event_count + 1 ");
-        query.append(" WHERE id in ( ");
+        // The ids are bound as a single array, so that the statement is the same whatever the number of tickets
+        query.append(" WHERE id = ANY(?::int[]) RETURNING id),");
 
         JsonArray values = new JsonArray();
-        values.add(newStatus);
+        values.add(newStatus)
+              .add(SqlHelper.arrayLiteral(idList.stream().map(String::valueOf).collect(Collectors.toList())));
 
-        for (Integer id : idList) {
-            query.append("?,");
-            values.add(id);
-        }
-        query.deleteCharAt(query.length() - 1);
-        query.append(")");
+        query.append(" histo AS (INSERT INTO support.tickets_histo (ticket_id, event, status, user_id, event_type)")
+             .append(" SELECT id, ?, ?, ?, ? FROM updated_tickets)");
+        values.add(histoEvent)
+              .add(newStatus)
+              .add(userId)
+              .add(TicketHisto.UPDATED.eventType());
+
+        query.append(" SELECT u.id FROM updated_tickets AS u")
+             .append(" WHERE EXISTS (SELECT 1 FROM support.bug_tracker_issues AS i WHERE i.ticket_id = u.id)")
+             .append(" ORDER BY u.id");
 
-        sql.prepared(query.toString(), values, validUniqueResultHandler(handler));
+        sql.prepared(query.toString(), values, validResultHandler(handler));
     }
 
 
@@ -1300,6 +1884,15 @@ public class TicketServiceSqlImpl extends SqlCrudService implements TicketServic
 	 * @param handler
 	 */
     public void createTicketHisto(String ticketId, String event, int status, String userid, TicketHisto histoType, Handler<Either<String, Void>> handler) {
+        if (HistoJournal.isEnabled()) {
+            appendToJournal(HistoJournal.append(parseId(ticketId), event, null, status, userid, histoType, false),
+                    () -> insertTicketHisto(ticketId, event, status, userid, histoType, handler), handler);
+        } else {
+            insertTicketHisto(ticketId, event, status, userid, histoType, handler);
+        }
+    }
+
+    private void insertTicketHisto(String ticketId, String event, int status, String userid, TicketHisto histoType, Handler<Either<String, Void>> handler) {
         String query = "INSERT INTO support.tickets_histo( ticket_id, event, status, user_id, event_type) "
                 + " values( ?, ?, ?, ?, ? )";
 
@@ -1337,6 +1930,30 @@ public class TicketServiceSqlImpl extends SqlCrudService implements TicketServic
 	 * @param handler
 	 */
 	public void createTicketHistoZendesk(String ticketId, ZendeskComment comment, int status, String userId, TicketHisto histoType, Handler<Either<String, Void>> handler) {
+		if (HistoJournal.isEnabled()) {
+			// The journal skips the comment itself if it is already in the history
+			appendToJournal(HistoJournal.append(parseId(ticketId), comment.content, comment.created, status, userId, histoType, true),
+					() -> insertTicketHistoZendesk(ticketId, comment, status, userId, histoType, handler), handler);
+		} else {
+			insertTicketHistoZendesk(ticketId, comment, status, userId, histoType, handler);
+		}
+	}
+
+	/**
+	 * Answer once the journal has committed the event, or insert the event directly if the journal is not deployed yet or full
+	 */
+	private void appendToJournal(Future<Void> append, Runnable insert, Handler<Either<String, Void>> handler) {
+		append.onSuccess(result -> handler.handle(new Either.Right<>(null)))
+				.onFailure(err -> {
+					if (HistoJournal.isNotDelivered(err)) {
+						insert.run();
+					} else {
+						handler.handle(new Either.Left<>(err.getMessage()));
+					}
+				});
+	}
+
+	private void insertTicketHistoZendesk(String ticketId, ZendeskComment comment, int status, String userId, TicketHisto histoType, Handler<Either<String, Void>> handler) {
 		// First we are checking if there is already a similar entry in the tickets_histo table
 		// If there is, it means that the comment has already been added (this is done to avoid duplicates)
 		// Duplicates can happen if the comment as already been added using manual refresh and when the synchronisation runs afterward
@@ -1453,21 +2070,20 @@ public class TicketServiceSqlImpl extends SqlCrudService implements TicketServic
         Promise<JsonObject> promise = Promise.promise();
 
         StringBuilder query = new StringBuilder();
-        query.append("SELECT COUNT(*) FROM support.tickets WHERE school_id IN ");
+        // Counters per structure and status are maintained by triggers (see 037-add-ticket-counters-table.sql)
+        query.append("SELECT COALESCE(SUM(count), 0)::bigint AS count FROM support.ticket_counters WHERE school_id = ANY(?::varchar[])");
         JsonArray values = new JsonArray();
 
         JsonArray structureIds = schoolId.getJsonArray(JiraTicket.STRUCTUREIDS);
 
         if (structureIds == null) {
-            query.append(Sql.listPrepared(user.getStructures()));
-            values.addAll(new JsonArray(user.getStructures()));
+            values.add(SqlHelper.arrayLiteral(user.getStructures()));
         } else {
             List<String> listIdStructure = structureIds.stream()
                     .filter(String.class::isInstance)
                     .map(Object::toString)
                     .collect(Collectors.toList());
-            query.append(Sql.listPrepared(listIdStructure));
-            values.addAll(new JsonArray(listIdStructure));
+            values.add(SqlHelper.arrayLiteral(listIdStructure));
         }
 
         sql.prepared(query.toString(), values, validUniqueResultHandler(PromiseHelper.handler(promise)));
@@ -1503,6 +2119,42 @@ public class TicketServiceSqlImpl extends SqlCrudService implements TicketServic
         return promise.future();
     }
 
+    @Override
+    public Future<JsonObject> listStructureDescendants(List<String> structureIds) {
+        Promise<JsonArray> promise = Promise.promise();
+        String query = "SELECT ancestor_id, descendant_id FROM support.structure_closure WHERE ancestor_id = ANY(?::varchar[])";
+        JsonArray values = new JsonArray().add(SqlHelper.arrayLiteral(structureIds));
+        String errorMessage = String.format("[Support@%s::listStructureDescendants] Fail to get structure descendants",
+                this.getClass().getSimpleName());
+        sql.prepared(query, values, validResultHandler(PromiseHelper.handler(promise, errorMessage)));
+
+        return promise.future().map(links -> {
+            Set<String> ancestors = new HashSet<>();
+            Set<String> descendants = new LinkedHashSet<>();
+            links.stream()
+                    .filter(JsonObject.class::isInstance)
+                    .map(JsonObject.class::cast)
+                    .forEach(link -> {
+                        ancestors.add(link.getString("ancestor_id"));
+                        descendants.add(link.getString("descendant_id"));
+                    });
+            return ancestors.containsAll(structureIds)
+                    ? new JsonObject().put(JiraTicket.STRUCTUREIDS, new JsonArray(new ArrayList<>(descendants)))
+                    : null;
+        });
+    }
+
+    @Override
+    public Future<JsonArray> listStructureNames(List<String> structureIds) {
+        Promise<JsonArray> promise = Promise.promise();
+        String query = "SELECT id, name FROM support.structures WHERE id = ANY(?::varchar[])";
+        JsonArray values = new JsonArray().add(SqlHelper.arrayLiteral(structureIds));
+        String errorMessage = String.format("[Support@%s::listStructureNames] Fail to get structure names",
+                this.getClass().getSimpleName());
+        sql.prepared(query, values, validResultHandler(PromiseHelper.handler(promise, errorMessage)));
+        return promise.future();
+    }
+
     /**
      * @param idList : list of structure ids I want to retrieve
      * @return {@link Future} of {@link JsonArray}
@@ -1517,73 +2169,104 @@ public class TicketServiceSqlImpl extends SqlCrudService implements TicketServic
                 .map(Object::toString)
                 .collect(Collectors.toList());
         if (listIdStructure != null && !listIdStructure.isEmpty()) {
-            query.append("SELECT * FROM support.tickets WHERE school_id IN " + Sql.listPrepared(listIdStructure)
-                    + " ORDER BY tickets.id");
+            query.append("SELECT * FROM support.tickets WHERE school_id = ANY(?::varchar[]) ORDER BY tickets.id");
         }
-        JsonArray values = idList.getJsonArray(JiraTicket.STRUCTUREIDS);
+        JsonArray values = new JsonArray().add(SqlHelper.arrayLiteral(listIdStructure));
         sql.prepared(query.toString(), values, validResultHandler(PromiseHelper.handler(promise)));
         return promise.future();
     }
 
-    @Override
-    public Future<List<String>> listTicketsOwnerIds(List<String> structureIds) {
-        Promise<JsonArray> promiseRequest = Promise.promise();
-        Promise<List<String>> promise = Promise.promise();
-        StringBuilder query = new StringBuilder();
-        if (structureIds != null && !structureIds.isEmpty())
-            query.append("SELECT DISTINCT owner FROM support.tickets WHERE school_id IN ")
-                    .append(Sql.listPrepared(structureIds));
-
-        JsonArray params = structureIds != null ? new JsonArray(structureIds) : new JsonArray();
-
-        sql.prepared(query.toString(), params, validResultHandler(PromiseHelper.handler(promiseRequest,
-                "Fail to get owners from tickets")));
-
-        promiseRequest.future()
-                .onFailure(promise::fail)
-                .onSuccess(tickets ->
-                        promise.complete(
-                                tickets.stream()
-                                        .filter(JsonObject.class::isInstance)
-                                        .map(JsonObject.class::cast)
-                                        .map(ticket -> ticket.getString(JiraTicket.OWNER))
-                                        .collect(Collectors.toList())
-                        )
-                );
-
-        return promise.future();
-    }
-
 	@Override
-	public Future<JsonArray> listAllWithoutCategoryLabel() {
-		Promise<JsonArray> promise = Promise.promise();
-
-		String query = "SELECT * FROM support.tickets WHERE category_label IS NULL;";
-
-		String errorMessage = "[Support@TicketServiceSqlImpl::listAllWithoutCategoryLabel] Fail list tickets without category_label : ";
-		sql.prepared(query, new JsonArray(), validResultHandler(PromiseHelper.handler(promise, errorMessage)));
-
-		return promise.future();
+	public Future<Integer> backfillShortDescriptions(int batchSize) {
+		Promise<JsonObject> promise = Promise.promise();
+		// The batch is read from the partial index of the tickets left to fill
+		String query = "UPDATE support.tickets AS t SET short_desc = substring(t.description, 0, 101)" +
+				" FROM (SELECT id FROM support.tickets WHERE short_desc IS NULL AND description IS NOT NULL ORDER BY id LIMIT ?) AS batch" +
+				" WHERE t.id = batch.id";
+		String errorMessage = String.format("[Support@%s::backfillShortDescriptions] Fail to fill short descriptions",
+				this.getClass().getSimpleName());
+		sql.prepared(query, new JsonArray().add(batchSize), SqlResult.validRowsResultHandler(PromiseHelper.handler(promise, errorMessage)));
+		return promise.future().map(result -> result.getInteger("rows", 0));
 	}
 
 	@Override
-	public Future<Integer> updateAllTicketsWithoutCategoryLabel(Map<Integer, String> idCategoryLabelMap) {
-		Promise<Integer> promise = Promise.promise();
-
-		List<TransactionElement> transactionElements = new ArrayList<>();
-
-		String query = "UPDATE support.tickets SET category_label = ? WHERE id = ?;";
+	public Future<Boolean> startCategoryLabelBackfill(JsonObject categoryLabels) {
+		Promise<JsonObject> promise = Promise.promise();
+		// A running backfill is left untouched, a done or failed one starts over from the first ticket
+		String query = "INSERT INTO support.backfill_jobs AS j (name, status, params, last_id, processed, total, error, started, updated, finished)" +
+				" VALUES (?, ?, ?::jsonb, 0, 0, (SELECT count(*) FROM support.tickets WHERE category_label IS NULL), NULL," +
+				" timezone('UTC', NOW()), timezone('UTC', NOW()), NULL)" +
+				" ON CONFLICT (name) DO UPDATE SET status = EXCLUDED.status, params = EXCLUDED.params, last_id = 0, processed = 0," +
+				" total = EXCLUDED.total, error = NULL, started = EXCLUDED.started, updated = EXCLUDED.updated, finished = NULL" +
+				" WHERE j.status <> EXCLUDED.status";
+		JsonArray values = new JsonArray()
+				.add(CATEGORY_LABEL_BACKFILL)
+				.add(BackfillStatus.RUNNING.status())
+				.add(categoryLabels.encode());
+		String errorMessage = String.format("[Support@%s::startCategoryLabelBackfill] Fail to start category label backfill",
+				this.getClass().getSimpleName());
+		sql.prepared(query, values, SqlResult.validRowsResultHandler(PromiseHelper.handler(promise, errorMessage)));
+		return promise.future().map(result -> result.getInteger("rows", 0) > 0);
+	}
 
-		idCategoryLabelMap.forEach((id, categoryLabel) -> {
-			JsonArray params = new JsonArray().add(categoryLabel).add(id);
-			transactionElements.add(new TransactionElement(query, params));
+	@Override
+	public Future<JsonObject> getCategoryLabelBackfill() {
+		Promise<JsonObject> promise = Promise.promise();
+		String query = "SELECT name, status, params, last_id, processed, total, error, started, updated, finished" +
+				" FROM support.backfill_jobs WHERE name = ?";
+		String errorMessage = String.format("[Support@%s::getCategoryLabelBackfill] Fail to get category label backfill",
+				this.getClass().getSimpleName());
+		sql.prepared(query, new JsonArray().add(CATEGORY_LABEL_BACKFILL), validUniqueResultHandler(PromiseHelper.handler(promise, errorMessage)));
+		return promise.future().map(job -> {
+			// JSONB columns are sent back as strings
+			if (job.getValue("params") instanceof String) {
+				job.put("params", new JsonObject(job.getString("params")));
+			}
+			return job;
 		});
+	}
 
-		String errorMessage = "[Support@TicketServiceSqlImpl::updateAllTicketsWithoutCategoryLabel] Fail to update tickets without category_label : ";
-		TransactionHelper.executeTransactionAndGetJsonObjectResults(transactionElements, errorMessage)
-			.onSuccess(result -> promise.complete(transactionElements.size()))
-			.onFailure(err -> promise.fail(err.getMessage()));
-
+	@Override
+	public Future<JsonObject> backfillCategoryLabels(JsonObject categoryLabels, int batchSize) {
+		Promise<JsonObject> promise = Promise.promise();
+		JsonArray values = new JsonArray().add(CATEGORY_LABEL_BACKFILL).add(BackfillStatus.RUNNING.status()).add(batchSize);
+		// The batch starts after the checkpoint of the job, which moves forward in the same statement as the tickets.
+		// The job row is locked so that a single node runs a batch at a time, the others get no row back
+		StringBuilder query = new StringBuilder("WITH job AS (SELECT name, last_id FROM support.backfill_jobs")
+				.append(" WHERE name = ? AND status = ? FOR UPDATE SKIP LOCKED),")
+				.append(" batch AS (SELECT t.id, t.category FROM support.tickets AS t, job")
+				.append(" WHERE t.id > job.last_id AND t.category_label IS NULL ORDER BY t.id LIMIT ?),")
+				.append(" updated_tickets AS (UPDATE support.tickets AS t SET category_label = l.label FROM batch AS b")
+				.append(" JOIN (VALUES");
+		categoryLabels.forEach(entry -> {
+			query.append(" (?, ?),");
+			values.add(entry.getKey()).add(entry.getValue());
+		});
+		query.deleteCharAt(query.length() - 1)
+				.append(") AS l (category, label) ON l.category = b.category WHERE t.id = b.id RETURNING t.id),")
+				.append(" progress AS (UPDATE support.backfill_jobs AS j SET last_id = COALESCE((SELECT max(id) FROM batch), j.last_id),")
+				.append(" processed = j.processed + (SELECT count(*) FROM updated_tickets), updated = timezone('UTC', NOW())")
+				.append(" FROM job WHERE j.name = job.name RETURNING j.last_id, j.processed)")
+				.append(" SELECT (SELECT count(*) FROM batch) AS scanned, p.last_id, p.processed FROM progress AS p");
+		String errorMessage = String.format("[Support@%s::backfillCategoryLabels] Fail to fill category labels",
+				this.getClass().getSimpleName());
+		sql.prepared(query.toString(), values, validUniqueResultHandler(PromiseHelper.handler(promise, errorMessage)));
 		return promise.future();
 	}
+
+	@Override
+	public Future<Void> endCategoryLabelBackfill(String error) {
+		Promise<JsonObject> promise = Promise.promise();
+		String query = "UPDATE support.backfill_jobs SET status = ?, error = ?, updated = timezone('UTC', NOW())," +
+				" finished = timezone('UTC', NOW()) WHERE name = ? AND status = ?";
+		JsonArray values = new JsonArray()
+				.add(error == null ? BackfillStatus.DONE.status() : BackfillStatus.FAILED.status())
+				.add(error)
+				.add(CATEGORY_LABEL_BACKFILL)
+				.add(BackfillStatus.RUNNING.status());
+		String errorMessage = String.format("[Support@%s::endCategoryLabelBackfill] Fail to end category label backfill",
+				this.getClass().getSimpleName());
+		sql.prepared(query, values, SqlResult.validRowsResultHandler(PromiseHelper.handler(promise, errorMessage)));
+		return promise.future().mapEmpty();
+	}
 }
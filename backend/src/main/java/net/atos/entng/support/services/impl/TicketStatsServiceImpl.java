@@ -0,0 +1,41 @@
+package net.atos.entng.support.services.impl;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import net.atos.entng.support.helpers.PromiseHelper;
+import net.atos.entng.support.helpers.SqlHelper;
+import net.atos.entng.support.services.TicketStatsService;
+import org.entcore.common.sql.Sql;
+import org.entcore.common.sql.SqlResult;
+
+import java.util.List;
+
+public class TicketStatsServiceImpl implements TicketStatsService {
+
+    @Override
+    public Future<Long> refreshDailyStats(int batchSize, String timeZone) {
+        Promise<JsonObject> promise = Promise.promise();
+        // The rollup and its watermark are updated in the same function (see 038-add-ticket-daily-stats.sql)
+        String query = "SELECT support.refresh_ticket_daily_stats(?, ?) AS moved";
+        JsonArray values = new JsonArray().add(batchSize).add(timeZone);
+        String errorMessage = String.format("[Support@%s::refreshDailyStats] Fail to refresh daily stats",
+                this.getClass().getSimpleName());
+        Sql.getInstance().prepared(query, values, SqlResult.validUniqueResultHandler(PromiseHelper.handler(promise, errorMessage)));
+        return promise.future().map(result -> result.getLong("moved", 0L));
+    }
+
+    @Override
+    public Future<JsonArray> listDailyStats(List<String> schoolIds, String from, String to) {
+        Promise<JsonArray> promise = Promise.promise();
+        String query = "SELECT day, school_id, category, opened, resolved, closed FROM support.ticket_daily_stats" +
+                " WHERE school_id = ANY(?::varchar[]) AND day BETWEEN ?::date AND ?::date" +
+                " ORDER BY day, school_id, category";
+        JsonArray values = new JsonArray().add(SqlHelper.arrayLiteral(schoolIds)).add(from).add(to);
+        String errorMessage = String.format("[Support@%s::listDailyStats] Fail to list daily stats",
+                this.getClass().getSimpleName());
+        Sql.getInstance().prepared(query, values, SqlResult.validResultHandler(PromiseHelper.handler(promise, errorMessage)));
+        return promise.future();
+    }
+}
@@ -20,10 +20,6 @@
 package net.atos.entng.support.services.impl;
 
 import io.vertx.core.AsyncResult;
-import io.vertx.core.Future;
-import io.vertx.core.Promise;
-import net.atos.entng.support.constants.JiraTicket;
-import net.atos.entng.support.helpers.PromiseHelper;
 import net.atos.entng.support.services.UserService;
 
 import io.vertx.core.Handler;
@@ -32,9 +28,6 @@ import io.vertx.core.eventbus.Message;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import org.entcore.common.neo4j.Neo4j;
-import org.entcore.common.neo4j.Neo4jResult;
-
-import java.util.List;
 
 public class UserServiceDirectoryImpl implements UserService {
 
@@ -56,21 +49,4 @@ public class UserServiceDirectoryImpl implements UserService {
 		eb.request(DIRECTORY_ADDRESS, action, (Handler<AsyncResult<Message<JsonArray>>>) res -> handler.handle(res.result().body()));
 	}
 
-	@Override
-	public Future<JsonArray> getUserIdsProfileOrdered(List<String> ownerIds) {
-		Promise<JsonArray> promise = Promise.promise();
-
-		String query = " MATCH (u:User)-[:IN]->(pg:ProfileGroup)-[:HAS_PROFILE]->(profile:Profile) " +
-				" WHERE u.id IN {ownerIds} " +
-				" WITH profile, u " +
-				" ORDER BY profile.name " +
-				" RETURN distinct u.id as id ";
-		JsonObject params = new JsonObject().put(JiraTicket.OWNERIDS, ownerIds);
-		neo4j.execute(query, params, Neo4jResult.validResultHandler(PromiseHelper.handler(promise,
-				String.format("[Minibadge@%s::getUsersRequest] Fail to create badge assigned",
-						this.getClass().getSimpleName()))));
-
-		return promise.future();
-	}
-
 }
\ No newline at end of file
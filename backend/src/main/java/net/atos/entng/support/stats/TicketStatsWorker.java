@@ -0,0 +1,76 @@
+package net.atos.entng.support.stats;
+
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import net.atos.entng.support.constants.JiraTicket;
+import net.atos.entng.support.services.TicketStatsService;
+import net.atos.entng.support.services.impl.TicketStatsServiceImpl;
+import org.vertx.java.busmods.BusModBase;
+
+/**
+ * Keeps support.ticket_daily_stats up to date with the ticket history.
+ * Runs every "stats-refresh-period" minutes, and on any message sent to its class name. Each run rolls up the new
+ * history events by batches of "stats-refresh-batch-size" until it catches up, into days of "stats-time-zone".
+ */
+public class TicketStatsWorker extends BusModBase implements Handler<Message<JsonObject>> {
+
+    protected final Logger log = LoggerFactory.getLogger(TicketStatsWorker.class);
+
+    private TicketStatsService ticketStatsService;
+    private int batchSize;
+    private String timeZone;
+    private boolean refreshInProgress = false;
+
+    @Override
+    public void start(Promise<Void> startPromise) {
+        super.start();
+        ticketStatsService = new TicketStatsServiceImpl();
+        batchSize = config.getInteger("stats-refresh-batch-size", 10000);
+        timeZone = config.getString("stats-time-zone", JiraTicket.PARIS_TIMEZONE);
+
+        long period = config.getLong("stats-refresh-period", 15L) * 60 * 1000;
+        vertx.setPeriodic(period, timerId -> refresh());
+
+        eb.consumer(this.getClass().getName(), this);
+        log.info(String.format("[Support@%s::start] Launching worker %s, deploy verticle %s",
+                this.getClass().getSimpleName(), this.getClass().getSimpleName(), vertx.getOrCreateContext().deploymentID()));
+        startPromise.complete();
+    }
+
+    @Override
+    public void handle(Message<JsonObject> event) {
+        refresh()
+                .onSuccess(result -> event.reply(new JsonObject().put(JiraTicket.STATUS, JiraTicket.OK)))
+                .onFailure(err -> event.reply(new JsonObject().put(JiraTicket.STATUS, JiraTicket.ERROR).put(JiraTicket.MESSAGE, err.getMessage())));
+    }
+
+    private Future<Void> refresh() {
+        if (refreshInProgress) {
+            return Future.succeededFuture();
+        }
+        refreshInProgress = true;
+        Promise<Void> promise = Promise.promise();
+        refreshBatch(promise);
+        return promise.future()
+                .onFailure(err -> log.error(String.format("[Support@%s::refresh] Fail to refresh daily stats: %s",
+                        this.getClass().getSimpleName(), err.getMessage())))
+                .onComplete(result -> refreshInProgress = false);
+    }
+
+    private void refreshBatch(Promise<Void> promise) {
+        ticketStatsService.refreshDailyStats(batchSize, timeZone)
+                .onFailure(promise::fail)
+                .onSuccess(moved -> {
+                    if (moved > 0) {
+                        refreshBatch(promise);
+                    } else {
+                        promise.complete();
+                    }
+                });
+    }
+}
@@ -0,0 +1,50 @@
+CREATE TEXT SEARCH CONFIGURATION support.french_unaccent (COPY = pg_catalog.french);
+
+ALTER TEXT SEARCH CONFIGURATION support.french_unaccent
+    ALTER MAPPING FOR hword, hword_part, word WITH unaccent, french_stem;
+
+CREATE OR REPLACE FUNCTION support.ticket_search_vector(subject TEXT, description TEXT, username TEXT) RETURNS tsvector AS $$
+    SELECT setweight(to_tsvector('support.french_unaccent', coalesce(subject, '')), 'A') ||
+           setweight(to_tsvector('support.french_unaccent', coalesce(username, '')), 'B') ||
+           setweight(to_tsvector('support.french_unaccent', coalesce(description, '')), 'C');
+$$ LANGUAGE sql IMMUTABLE;
+
+-- The owner name lives in support.users, so the column is maintained by triggers rather than generated
+ALTER TABLE support.tickets
+    ADD COLUMN search_vector tsvector;
+
+UPDATE support.tickets AS t
+SET search_vector = support.ticket_search_vector(t.subject, t.description, u.username)
+FROM support.users AS u
+WHERE u.id = t.owner;
+
+CREATE INDEX idx_tickets_search_vector ON support.tickets USING GIN (search_vector);
+
+CREATE OR REPLACE FUNCTION support.tickets_search_vector() RETURNS TRIGGER AS $$
+    BEGIN
+        NEW.search_vector := support.ticket_search_vector(NEW.subject, NEW.description,
+            (SELECT username FROM support.users WHERE id = NEW.owner));
+        RETURN NEW;
+    END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER tickets_search_vector_trigger
+BEFORE INSERT OR UPDATE OF subject, description, owner ON support.tickets
+    FOR EACH ROW EXECUTE PROCEDURE support.tickets_search_vector();
+
+CREATE OR REPLACE FUNCTION support.users_search_vector() RETURNS TRIGGER AS $$
+    BEGIN
+        IF NEW.username IS DISTINCT FROM OLD.username THEN
+            UPDATE support.tickets
+            SET search_vector = support.ticket_search_vector(subject, description, NEW.username)
+            WHERE owner = NEW.id;
+        END IF;
+        RETURN NULL;
+    END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER users_search_vector_trigger
+AFTER UPDATE OF username ON support.users
+    FOR EACH ROW EXECUTE PROCEDURE support.users_search_vector();
+
+GRANT EXECUTE ON FUNCTION support.ticket_search_vector(TEXT, TEXT, TEXT) TO "apps";
@@ -0,0 +1,12 @@
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+-- unaccent() is only STABLE, an IMMUTABLE wrapper with an explicit dictionary is needed to index it
+CREATE OR REPLACE FUNCTION support.immutable_unaccent(value TEXT) RETURNS TEXT AS $$
+    SELECT public.unaccent('public.unaccent'::regdictionary, value);
+$$ LANGUAGE sql IMMUTABLE PARALLEL SAFE STRICT;
+
+CREATE INDEX idx_tickets_subject_trgm ON support.tickets USING GIN (support.immutable_unaccent(subject) gin_trgm_ops);
+
+CREATE INDEX idx_users_username_trgm ON support.users USING GIN (support.immutable_unaccent(username) gin_trgm_ops);
+
+GRANT EXECUTE ON FUNCTION support.immutable_unaccent(TEXT) TO "apps";
@@ -0,0 +1,15 @@
+-- Listings filtered on structures and statuses, sorted by modification date
+CREATE INDEX IF NOT EXISTS idx_tickets_school_status_modified ON support.tickets (school_id, status, modified);
+
+-- Listings of the tickets of a user
+CREATE INDEX IF NOT EXISTS idx_tickets_owner_modified ON support.tickets (owner, modified);
+
+-- History, comments, attachments and issues of a ticket. The history is also read in id order, for the previous
+-- event of a ticket in 038-add-ticket-daily-stats.sql
+CREATE INDEX IF NOT EXISTS idx_tickets_histo_ticket_id ON support.tickets_histo (ticket_id, id);
+
+CREATE INDEX IF NOT EXISTS idx_comments_ticket_modified ON support.comments (ticket_id, modified);
+
+CREATE INDEX IF NOT EXISTS idx_attachments_ticket_id ON support.attachments (ticket_id);
+
+CREATE INDEX IF NOT EXISTS idx_bug_tracker_issues_ticket_id ON support.bug_tracker_issues (ticket_id);
@@ -0,0 +1,11 @@
+-- Every (ancestor, descendant) pair of the structure tree, each structure being its own descendant.
+-- Synced from the directory by DirectorySyncWorker.
+CREATE TABLE support.structure_closure (
+    ancestor_id VARCHAR(36) NOT NULL,
+    descendant_id VARCHAR(36) NOT NULL,
+    CONSTRAINT structure_closure_pk PRIMARY KEY (ancestor_id, descendant_id)
+);
+
+CREATE INDEX idx_structure_closure_descendant_id ON support.structure_closure (descendant_id);
+
+GRANT SELECT, INSERT, UPDATE, DELETE ON TABLE support.structure_closure TO apps;
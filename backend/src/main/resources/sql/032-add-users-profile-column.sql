@@ -0,0 +1,23 @@
+-- Profile of the user in the directory (Teacher, Student, Relative, Personnel, Guest), so listings do not query Neo4j
+ALTER TABLE support.users
+    ADD COLUMN profile VARCHAR(32);
+
+CREATE OR REPLACE FUNCTION support.merge_users(key VARCHAR, data VARCHAR, user_profile VARCHAR) RETURNS VOID AS
+$$
+BEGIN
+    LOOP
+        UPDATE support.users SET username = data, profile = COALESCE(user_profile, profile) WHERE id = key;
+        IF found THEN
+            RETURN;
+        END IF;
+        BEGIN
+            INSERT INTO support.users(id, username, profile) VALUES (key, data, user_profile);
+            RETURN;
+        EXCEPTION WHEN unique_violation THEN
+        END;
+    END LOOP;
+END;
+$$
+LANGUAGE plpgsql;
+
+GRANT EXECUTE ON FUNCTION support.merge_users(VARCHAR, VARCHAR, VARCHAR) TO "apps";
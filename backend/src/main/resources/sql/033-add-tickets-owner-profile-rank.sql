@@ -0,0 +1,53 @@
+-- Position of a profile when tickets are sorted by profile, in the alphabetical order of the directory profile names.
+-- Owners whose profile is not known yet come last.
+CREATE OR REPLACE FUNCTION support.profile_rank(profile VARCHAR) RETURNS SMALLINT AS $$
+    SELECT CAST(CASE profile
+        WHEN 'Guest' THEN 1
+        WHEN 'Personnel' THEN 2
+        WHEN 'Relative' THEN 3
+        WHEN 'Student' THEN 4
+        WHEN 'Teacher' THEN 5
+        ELSE 6
+    END AS SMALLINT);
+$$ LANGUAGE sql IMMUTABLE;
+
+-- The owner profile lives in support.users, so the column is maintained by triggers rather than generated
+ALTER TABLE support.tickets
+    ADD COLUMN owner_profile_rank SMALLINT NOT NULL DEFAULT 6;
+
+UPDATE support.tickets AS t
+SET owner_profile_rank = support.profile_rank(u.profile)
+FROM support.users AS u
+WHERE u.id = t.owner AND u.profile IS NOT NULL;
+
+CREATE INDEX idx_tickets_school_profile_rank ON support.tickets (school_id, owner_profile_rank, id);
+
+CREATE INDEX idx_tickets_profile_rank ON support.tickets (owner_profile_rank, id);
+
+CREATE OR REPLACE FUNCTION support.tickets_owner_profile_rank() RETURNS TRIGGER AS $$
+    BEGIN
+        NEW.owner_profile_rank := support.profile_rank((SELECT profile FROM support.users WHERE id = NEW.owner));
+        RETURN NEW;
+    END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER tickets_owner_profile_rank_trigger
+BEFORE INSERT OR UPDATE OF owner ON support.tickets
+    FOR EACH ROW EXECUTE PROCEDURE support.tickets_owner_profile_rank();
+
+CREATE OR REPLACE FUNCTION support.users_profile_rank() RETURNS TRIGGER AS $$
+    BEGIN
+        IF NEW.profile IS DISTINCT FROM OLD.profile THEN
+            UPDATE support.tickets
+            SET owner_profile_rank = support.profile_rank(NEW.profile)
+            WHERE owner = NEW.id;
+        END IF;
+        RETURN NULL;
+    END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER users_profile_rank_trigger
+AFTER UPDATE OF profile ON support.users
+    FOR EACH ROW EXECUTE PROCEDURE support.users_profile_rank();
+
+GRANT EXECUTE ON FUNCTION support.profile_rank(VARCHAR) TO "apps";
@@ -0,0 +1,15 @@
+-- Structures of the directory, synced by DirectorySyncWorker.
+-- sort_key is the position of the structure in the alphabetical order of the names, so tickets are sorted by school with an index.
+CREATE TABLE support.structures (
+    id VARCHAR(36) NOT NULL,
+    name VARCHAR(255),
+    sort_key INTEGER NOT NULL,
+    CONSTRAINT structures_pk PRIMARY KEY (id)
+);
+
+CREATE INDEX idx_structures_sort_key ON support.structures (sort_key);
+
+-- Tickets of a structure in id order, to merge the structures walked in sort_key order
+CREATE INDEX IF NOT EXISTS idx_tickets_school_id ON support.tickets (school_id, id);
+
+GRANT SELECT, INSERT, UPDATE, DELETE ON TABLE support.structures TO apps;
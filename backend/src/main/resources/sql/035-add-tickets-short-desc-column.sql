@@ -0,0 +1,7 @@
+-- First 100 characters of the description, written with the description so that listings do not read it.
+-- Existing tickets are backfilled in batches by ShortDescBackfillWorker.
+ALTER TABLE support.tickets
+    ADD COLUMN short_desc VARCHAR(100);
+
+-- Tickets left to backfill, the index is empty once the backfill is done
+CREATE INDEX idx_tickets_short_desc_missing ON support.tickets (id) WHERE short_desc IS NULL AND description IS NOT NULL;
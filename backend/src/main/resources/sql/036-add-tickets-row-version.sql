@@ -0,0 +1,22 @@
+-- Version of each ticket, taken from a sequence on every insert and update.
+-- count(*) and max(row_version) over a scope change whenever one of its tickets is created, updated or deleted,
+-- which gives a cheap fingerprint to answer conditional requests (ETag / If-None-Match).
+CREATE SEQUENCE support.tickets_row_version_seq;
+
+ALTER TABLE support.tickets
+    ADD COLUMN row_version BIGINT NOT NULL DEFAULT nextval('support.tickets_row_version_seq');
+
+CREATE INDEX idx_tickets_school_row_version ON support.tickets (school_id, row_version);
+
+CREATE OR REPLACE FUNCTION support.tickets_row_version() RETURNS TRIGGER AS $$
+    BEGIN
+        NEW.row_version := nextval('support.tickets_row_version_seq');
+        RETURN NEW;
+    END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER tickets_row_version_trigger
+BEFORE UPDATE ON support.tickets
+    FOR EACH ROW EXECUTE PROCEDURE support.tickets_row_version();
+
+GRANT USAGE, SELECT ON SEQUENCE support.tickets_row_version_seq TO "apps";
@@ -0,0 +1,42 @@
+-- Number of tickets per structure and status, maintained by triggers on support.tickets,
+-- so that counting the tickets of a structure tree sums a few rows instead of scanning its tickets.
+CREATE TABLE support.ticket_counters (
+    school_id VARCHAR(36) NOT NULL,
+    status SMALLINT NOT NULL,
+    count BIGINT NOT NULL DEFAULT 0,
+    CONSTRAINT ticket_counters_pk PRIMARY KEY (school_id, status)
+);
+
+-- Tickets written between the count and the creation of the triggers would be missed by the counters
+LOCK TABLE support.tickets IN SHARE ROW EXCLUSIVE MODE;
+
+INSERT INTO support.ticket_counters (school_id, status, count)
+SELECT school_id, status, COUNT(*) FROM support.tickets GROUP BY school_id, status;
+
+CREATE OR REPLACE FUNCTION support.tickets_counters() RETURNS TRIGGER AS $$
+    BEGIN
+        IF TG_OP IN ('UPDATE', 'DELETE') THEN
+            UPDATE support.ticket_counters
+            SET count = count - 1
+            WHERE school_id = OLD.school_id AND status = OLD.status;
+        END IF;
+        IF TG_OP IN ('INSERT', 'UPDATE') THEN
+            INSERT INTO support.ticket_counters (school_id, status, count)
+            VALUES (NEW.school_id, NEW.status, 1)
+            ON CONFLICT (school_id, status) DO UPDATE SET count = support.ticket_counters.count + 1;
+        END IF;
+        RETURN NULL;
+    END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER tickets_counters_trigger
+AFTER INSERT OR DELETE ON support.tickets
+    FOR EACH ROW EXECUTE PROCEDURE support.tickets_counters();
+
+CREATE TRIGGER tickets_counters_update_trigger
+AFTER UPDATE OF school_id, status ON support.tickets
+    FOR EACH ROW
+    WHEN (OLD.school_id IS DISTINCT FROM NEW.school_id OR OLD.status IS DISTINCT FROM NEW.status)
+    EXECUTE PROCEDURE support.tickets_counters();
+
+GRANT SELECT, INSERT, UPDATE, DELETE ON TABLE support.ticket_counters TO apps;
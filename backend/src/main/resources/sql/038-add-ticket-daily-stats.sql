@@ -0,0 +1,114 @@
+-- Tickets opened, resolved and closed per day, structure and category.
+-- Rolled up from support.tickets_histo by support.refresh_ticket_daily_stats, so that reporting never reads support.tickets.
+CREATE TABLE support.ticket_daily_stats (
+    day DATE NOT NULL,
+    school_id VARCHAR(36) NOT NULL,
+    category VARCHAR(255) NOT NULL,
+    opened INTEGER NOT NULL DEFAULT 0,
+    resolved INTEGER NOT NULL DEFAULT 0,
+    closed INTEGER NOT NULL DEFAULT 0,
+    CONSTRAINT ticket_daily_stats_pk PRIMARY KEY (day, school_id, category)
+);
+
+CREATE INDEX idx_ticket_daily_stats_school_day ON support.ticket_daily_stats (school_id, day);
+
+-- Transaction that wrote each history event. Events are rolled up in (xact_id, id) order, and only once their
+-- transaction has ended, so that an event committed late is never passed by the watermark.
+-- Events written before this column have no transaction, they are rolled up first.
+ALTER TABLE support.tickets_histo ADD COLUMN xact_id BIGINT;
+ALTER TABLE support.tickets_histo ALTER COLUMN xact_id SET DEFAULT txid_current();
+CREATE INDEX idx_tickets_histo_xact_id_id ON support.tickets_histo ((COALESCE(xact_id, 0)), id);
+
+-- Last history event rolled up by each refresh
+CREATE TABLE support.stats_watermarks (
+    name VARCHAR(64) PRIMARY KEY,
+    last_xact_id BIGINT NOT NULL DEFAULT 0,
+    last_id BIGINT NOT NULL DEFAULT 0,
+    refreshed TIMESTAMP
+);
+
+INSERT INTO support.stats_watermarks (name) VALUES ('ticket_daily_stats');
+
+-- Structure and category of the ticket when each event was written, so that the statistics of a day do not move
+-- with the ticket, and outlive it. Events written before these columns fall back to the current ticket.
+ALTER TABLE support.tickets_histo ADD COLUMN school_id VARCHAR(36);
+ALTER TABLE support.tickets_histo ADD COLUMN category VARCHAR(255);
+
+CREATE OR REPLACE FUNCTION support.tickets_histo_ticket_scope() RETURNS TRIGGER AS $$
+    BEGIN
+        SELECT school_id, category INTO NEW.school_id, NEW.category FROM support.tickets WHERE id = NEW.ticket_id;
+        RETURN NEW;
+    END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER tickets_histo_ticket_scope_trigger
+BEFORE INSERT ON support.tickets_histo
+    FOR EACH ROW EXECUTE PROCEDURE support.tickets_histo_ticket_scope();
+
+-- Roll up the events written since the watermark, at most batch_size events at a time, into days of time_zone.
+-- Transactions older than the oldest one still running have all ended: their events are all visible, and no event
+-- can be added before them. Only their events are rolled up. Returns the number of events rolled up, 0 once the
+-- rollup is up to date.
+CREATE OR REPLACE FUNCTION support.refresh_ticket_daily_stats(batch_size BIGINT, time_zone TEXT) RETURNS BIGINT AS $$
+    DECLARE
+        from_xact_id BIGINT;
+        from_id BIGINT;
+        to_xact_id BIGINT;
+        to_id BIGINT;
+        moved BIGINT;
+        ended_xact_id BIGINT := txid_snapshot_xmin(txid_current_snapshot());
+    BEGIN
+        -- The watermark row is locked, so that concurrent refreshes never count an event twice
+        SELECT last_xact_id, last_id INTO from_xact_id, from_id
+        FROM support.stats_watermarks WHERE name = 'ticket_daily_stats' FOR UPDATE;
+
+        SELECT COUNT(*) INTO moved FROM (
+            SELECT 1 FROM support.tickets_histo
+            WHERE (COALESCE(xact_id, 0), id) > (from_xact_id, from_id) AND COALESCE(xact_id, 0) < ended_xact_id
+            ORDER BY COALESCE(xact_id, 0), id
+            LIMIT batch_size
+        ) AS batch;
+
+        IF moved = 0 THEN
+            RETURN 0;
+        END IF;
+
+        SELECT COALESCE(xact_id, 0), id INTO to_xact_id, to_id FROM support.tickets_histo
+        WHERE (COALESCE(xact_id, 0), id) > (from_xact_id, from_id) AND COALESCE(xact_id, 0) < ended_xact_id
+        ORDER BY COALESCE(xact_id, 0), id
+        OFFSET moved - 1 LIMIT 1;
+
+        INSERT INTO support.ticket_daily_stats AS s (day, school_id, category, opened, resolved, closed)
+        SELECT (h.event_date AT TIME ZONE 'UTC' AT TIME ZONE time_zone)::date,
+               COALESCE(h.school_id, t.school_id), COALESCE(h.category, t.category),
+               COUNT(*) FILTER (WHERE h.event_type = 1),
+               COUNT(*) FILTER (WHERE h.event_type <> 1 AND h.status = 3 AND h.previous_status IS DISTINCT FROM 3),
+               COUNT(*) FILTER (WHERE h.event_type <> 1 AND h.status = 4 AND h.previous_status IS DISTINCT FROM 4)
+        FROM (
+            SELECT e.ticket_id, e.school_id, e.category, e.event_date, e.event_type, e.status,
+                   (SELECT p.status FROM support.tickets_histo AS p
+                    WHERE p.ticket_id = e.ticket_id AND p.id < e.id
+                    ORDER BY p.id DESC LIMIT 1) AS previous_status
+            FROM support.tickets_histo AS e
+            WHERE (COALESCE(e.xact_id, 0), e.id) > (from_xact_id, from_id)
+              AND (COALESCE(e.xact_id, 0), e.id) <= (to_xact_id, to_id)
+        ) AS h
+        LEFT JOIN support.tickets AS t ON t.id = h.ticket_id
+        WHERE COALESCE(h.school_id, t.school_id) IS NOT NULL AND COALESCE(h.category, t.category) IS NOT NULL
+        GROUP BY 1, 2, 3
+        ON CONFLICT (day, school_id, category) DO UPDATE
+        SET opened = s.opened + EXCLUDED.opened,
+            resolved = s.resolved + EXCLUDED.resolved,
+            closed = s.closed + EXCLUDED.closed;
+
+        UPDATE support.stats_watermarks
+        SET last_xact_id = to_xact_id, last_id = to_id, refreshed = timezone('UTC', NOW())
+        WHERE name = 'ticket_daily_stats';
+
+        RETURN moved;
+    END;
+$$ LANGUAGE plpgsql;
+
+GRANT SELECT, INSERT, UPDATE, DELETE ON TABLE support.ticket_daily_stats TO apps;
+GRANT SELECT, INSERT, UPDATE, DELETE ON TABLE support.stats_watermarks TO apps;
+GRANT EXECUTE ON FUNCTION support.refresh_ticket_daily_stats(BIGINT, TEXT) TO "apps";
@@ -0,0 +1,16 @@
+-- Progress of the background data backfills, so that a backfill resumes where it stopped after a restart.
+-- last_id is the last ticket scanned, params holds what the backfill needs to resume (e.g. the category labels).
+CREATE TABLE support.backfill_jobs (
+    name VARCHAR(64) PRIMARY KEY,
+    status VARCHAR(16) NOT NULL,
+    params JSONB,
+    last_id BIGINT NOT NULL DEFAULT 0,
+    processed BIGINT NOT NULL DEFAULT 0,
+    total BIGINT,
+    error TEXT,
+    started TIMESTAMP,
+    updated TIMESTAMP,
+    finished TIMESTAMP
+);
+
+GRANT SELECT, INSERT, UPDATE, DELETE ON TABLE support.backfill_jobs TO apps;
@@ -0,0 +1,13 @@
+-- The ticket listings show the last update of the bug tracker issue, which is written to support.bug_tracker_issues
+-- without touching the ticket. Bumping the row_version of the ticket keeps the list fingerprints of
+-- 036-add-tickets-row-version.sql in step with the issues.
+CREATE OR REPLACE FUNCTION support.bug_tracker_issues_row_version() RETURNS TRIGGER AS $$
+    BEGIN
+        UPDATE support.tickets SET row_version = nextval('support.tickets_row_version_seq') WHERE id = NEW.ticket_id;
+        RETURN NULL;
+    END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER bug_tracker_issues_row_version_trigger
+AFTER INSERT OR UPDATE ON support.bug_tracker_issues
+    FOR EACH ROW EXECUTE PROCEDURE support.bug_tracker_issues_row_version();
@@ -0,0 +1,11 @@
+-- Leases of the jobs that every node schedules but only one node at a time must run, such as the directory sync.
+-- A node runs the job while it holds the lease, the lease of a node stopped during the job expires at locked_until.
+-- finished is the end of the last successful run, so that the other nodes do not run the job again right after it.
+CREATE TABLE support.job_leases (
+    name VARCHAR(64) PRIMARY KEY,
+    owner VARCHAR(64),
+    locked_until TIMESTAMP,
+    finished TIMESTAMP
+);
+
+GRANT SELECT, INSERT, UPDATE, DELETE ON TABLE support.job_leases TO apps;
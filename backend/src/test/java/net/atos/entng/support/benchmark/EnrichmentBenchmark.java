@@ -0,0 +1,89 @@
+package net.atos.entng.support.benchmark;
+
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import net.atos.entng.support.model.I18nConfig;
+import net.atos.entng.support.services.TicketService;
+import net.atos.entng.support.services.TicketServiceSql;
+import net.atos.entng.support.services.impl.TicketServiceImpl;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Enrichment of an export with the profiles of the owners and the names of the schools, as run by
+ * {@link TicketServiceImpl#getSchoolAndProfileFromTicket}. Tickets are listed with the profile of their owner from
+ * support.users, and the school names are read from support.structures, mocked here so that only the enrichment is timed.
+ * The time per ticket should stay flat when the number of tickets grows.
+ * <p>
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=net.atos.entng.support.benchmark.EnrichmentBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EnrichmentBenchmark {
+
+    private static final String[] PROFILES = {"Teacher", "Student", "Relative", "Personnel", "Guest"};
+
+    @Param({"1000", "10000", "50000"})
+    public int tickets;
+
+    private JsonArray listing;
+    private JsonArray page;
+    private TicketService ticketService;
+    private final I18nConfig i18nConfig = new I18nConfig("localhost", "fr");
+
+    @Setup(Level.Trial)
+    public void setup() {
+        int owners = Math.max(1, tickets / 10);
+        int structures = Math.max(1, tickets / 100);
+        listing = new JsonArray();
+        for (int i = 0; i < tickets; i++) {
+            int owner = i % owners;
+            listing.add(new JsonObject().put("id", i).put("owner", "user-" + owner)
+                    .put("profile", PROFILES[owner % PROFILES.length]).put("school_id", "school-" + (i % structures)));
+        }
+        JsonArray schools = new JsonArray();
+        for (int i = 0; i < structures; i++) {
+            schools.add(new JsonObject().put("id", "school-" + i).put("name", "Ecole " + i));
+        }
+        TicketServiceSql ticketServiceSql = Mockito.mock(TicketServiceSql.class);
+        Mockito.when(ticketServiceSql.listStructureNames(Mockito.anyList())).thenAnswer(invocation -> Future.succeededFuture(schools));
+        ticketService = new TicketServiceImpl(ticketServiceSql);
+    }
+
+    // Profiles are replaced by their translation, each run enriches a fresh listing
+    @Setup(Level.Invocation)
+    public void copyListing() {
+        page = listing.copy();
+    }
+
+    @Benchmark
+    public JsonArray enrich() {
+        ticketService.getSchoolAndProfileFromTicket(page, i18nConfig);
+        return page;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(EnrichmentBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,57 @@
+package net.atos.entng.support.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ExpiringCacheTest {
+
+    @Test
+    public void testEntryExpiresAfterTtl() throws InterruptedException {
+        ExpiringCache<String, String> cache = new ExpiringCache<>(100, 10);
+        cache.put("a", "value");
+        Assert.assertEquals("value", cache.get("a"));
+
+        Thread.sleep(200);
+
+        Assert.assertNull(cache.get("a"));
+    }
+
+    @Test
+    public void testNoTtlDisablesCache() {
+        ExpiringCache<String, String> disabled = new ExpiringCache<>(0, 10);
+        disabled.put("a", "value");
+        Assert.assertNull(disabled.get("a"));
+
+        ExpiringCache<String, String> negative = new ExpiringCache<>(-1, 10);
+        negative.put("a", "value");
+        Assert.assertNull(negative.get("a"));
+    }
+
+    @Test
+    public void testFullCachePurgesExpiredEntries() throws InterruptedException {
+        ExpiringCache<String, String> cache = new ExpiringCache<>(500, 2);
+        cache.put("expired", "value");
+        Thread.sleep(600);
+        cache.put("alive", "value");
+
+        // The cache is full: the expired entry makes room, the live one is kept
+        cache.put("new", "value");
+
+        Assert.assertEquals("value", cache.get("alive"));
+        Assert.assertEquals("value", cache.get("new"));
+        Assert.assertNull(cache.get("expired"));
+    }
+
+    @Test
+    public void testFullCacheOfLiveEntriesIsCleared() {
+        ExpiringCache<String, String> cache = new ExpiringCache<>(60000, 2);
+        cache.put("a", "value");
+        cache.put("b", "value");
+
+        cache.put("c", "value");
+
+        Assert.assertNull(cache.get("a"));
+        Assert.assertNull(cache.get("b"));
+        Assert.assertEquals("value", cache.get("c"));
+    }
+}
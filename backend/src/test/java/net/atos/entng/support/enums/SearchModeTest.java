@@ -0,0 +1,29 @@
+package net.atos.entng.support.enums;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SearchModeTest {
+
+    @Test
+    public void testFullTextIsTheDefault() {
+        Assert.assertEquals(SearchMode.FULLTEXT, SearchMode.fromConfig(null));
+        Assert.assertEquals(SearchMode.FULLTEXT, SearchMode.fromConfig("unknown"));
+        Assert.assertEquals(SearchMode.AUTO, SearchMode.fromConfig("auto"));
+        Assert.assertEquals(SearchMode.TRIGRAM, SearchMode.fromConfig("TRIGRAM"));
+    }
+
+    @Test
+    public void testAutoOnlyUsesTrigramsForShortSingleWords() {
+        Assert.assertTrue(SearchMode.AUTO.useTrigram(" ref12 ", 6));
+        Assert.assertTrue(SearchMode.AUTO.useTrigram("ref123", 6));
+        Assert.assertFalse(SearchMode.AUTO.useTrigram("ref1234", 6));
+        Assert.assertFalse(SearchMode.AUTO.useTrigram("a b", 6));
+    }
+
+    @Test
+    public void testFixedModesIgnoreTheSearch() {
+        Assert.assertFalse(SearchMode.FULLTEXT.useTrigram("ref12", 6));
+        Assert.assertTrue(SearchMode.TRIGRAM.useTrigram("imprimante en panne", 6));
+    }
+}
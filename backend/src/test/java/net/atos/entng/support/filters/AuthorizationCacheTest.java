@@ -0,0 +1,69 @@
+package net.atos.entng.support.filters;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.EventBus;
+import io.vertx.core.json.JsonObject;
+import org.entcore.common.user.DefaultFunctions;
+import org.entcore.common.user.UserInfos;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class AuthorizationCacheTest {
+
+    @Before
+    public void setup() {
+        AuthorizationCache.init(Mockito.mock(EventBus.class), new JsonObject());
+    }
+
+    @Test
+    public void testGrantIsKeptPerUserScopeAndResource() {
+        UserInfos admin = admin(Arrays.asList("school-2", "school-1"));
+        String key = AuthorizationCache.key("Admin", admin, "getTicket", "42");
+        Assert.assertFalse(AuthorizationCache.isGranted(key));
+
+        AuthorizationCache.grant(key);
+
+        Assert.assertTrue(AuthorizationCache.isGranted(AuthorizationCache.key("Admin", admin(Arrays.asList("school-1", "school-2")), "getTicket", "42")));
+        Assert.assertFalse(AuthorizationCache.isGranted(AuthorizationCache.key("Admin", admin, "getTicket", "43")));
+        Assert.assertFalse(AuthorizationCache.isGranted(AuthorizationCache.key("Admin", admin(Arrays.asList("school-1")), "getTicket", "42")));
+        Assert.assertFalse(AuthorizationCache.isGranted(AuthorizationCache.key("OwnerOrLocalAdmin", admin, "getTicket", "42")));
+    }
+
+    @Test
+    public void testInvalidationDropsGrantsOfEveryInstance() throws InterruptedException {
+        Vertx vertx = Vertx.vertx();
+        try {
+            AuthorizationCache.init(vertx.eventBus(), new JsonObject());
+            String key = AuthorizationCache.key("Admin", admin(Arrays.asList("school-1")), "getTicket", "42");
+            AuthorizationCache.grant(key);
+
+            AuthorizationCache.invalidate(vertx.eventBus());
+            // The invalidation is handled on an event loop
+            long deadline = System.currentTimeMillis() + 10000;
+            while (AuthorizationCache.isGranted(key) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Assert.assertFalse(AuthorizationCache.isGranted(key));
+        } finally {
+            vertx.close();
+        }
+    }
+
+    private UserInfos admin(List<String> scope) {
+        UserInfos user = new UserInfos();
+        user.setUserId("user-1");
+        UserInfos.Function function = new UserInfos.Function();
+        function.setScope(scope);
+        Map<String, UserInfos.Function> functions = new HashMap<>();
+        functions.put(DefaultFunctions.ADMIN_LOCAL, function);
+        user.setFunctions(functions);
+        return user;
+    }
+}
@@ -0,0 +1,30 @@
+package net.atos.entng.support.helpers;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ETagHelperTest {
+
+    @Test
+    public void testETagDependsOnEveryPart() {
+        String etag = ETagHelper.etag("userId", "/support/tickets?page=1", "12:345");
+
+        Assert.assertTrue(etag.matches("W/\"[0-9a-f]{40}\""));
+        Assert.assertEquals(etag, ETagHelper.etag("userId", "/support/tickets?page=1", "12:345"));
+        Assert.assertNotEquals(etag, ETagHelper.etag("userId", "/support/tickets?page=1", "12:346"));
+        Assert.assertNotEquals(etag, ETagHelper.etag("otherId", "/support/tickets?page=1", "12:345"));
+    }
+
+    @Test
+    public void testMatches() {
+        String etag = ETagHelper.etag("userId", "12:345");
+
+        Assert.assertFalse(ETagHelper.matches(null, etag));
+        Assert.assertFalse(ETagHelper.matches("W/\"other\"", etag));
+        Assert.assertTrue(ETagHelper.matches(etag, etag));
+        Assert.assertTrue(ETagHelper.matches("W/\"other\", " + etag, etag));
+        // Strong and weak forms of a tag match with the weak comparison of If-None-Match
+        Assert.assertTrue(ETagHelper.matches(etag.substring(2), etag));
+        Assert.assertTrue(ETagHelper.matches("*", etag));
+    }
+}
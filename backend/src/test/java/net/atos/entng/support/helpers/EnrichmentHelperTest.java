@@ -0,0 +1,51 @@
+package net.atos.entng.support.helpers;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class EnrichmentHelperTest {
+
+    @Test
+    public void testDistinctValues() {
+        List<JsonObject> tickets = Arrays.asList(
+                new JsonObject().put("school_id", "a"),
+                new JsonObject().put("school_id", "b"),
+                new JsonObject(),
+                new JsonObject().put("school_id", "a"));
+
+        Assert.assertEquals(Arrays.asList("a", "b"), EnrichmentHelper.distinctValues(tickets, "school_id"));
+    }
+
+    @Test
+    public void testEnrichMapsEachDistinctValueOnce() {
+        JsonArray profiles = new JsonArray()
+                .add(new JsonObject().put("n.id", "user-1").put("n.profiles", "Teacher"))
+                .add(new JsonObject().put("n.id", "user-2").put("n.profiles", "Teacher"))
+                .add(new JsonObject().put("n.id", "user-3"));
+        Map<String, String> profilesByOwner = EnrichmentHelper.index(profiles, "n.id", "n.profiles");
+        List<JsonObject> tickets = EnrichmentHelper.jsonObjects(new JsonArray()
+                .add(new JsonObject().put("owner", "user-1"))
+                .add(new JsonObject().put("owner", "user-2"))
+                .add(new JsonObject().put("owner", "user-3"))
+                .add("not a ticket"));
+        AtomicInteger translations = new AtomicInteger();
+
+        EnrichmentHelper.enrich(tickets, "owner", "profile", profilesByOwner, profile -> {
+            translations.incrementAndGet();
+            return "Enseignant";
+        });
+
+        Assert.assertEquals(3, tickets.size());
+        Assert.assertEquals("Enseignant", tickets.get(0).getString("profile"));
+        Assert.assertEquals("Enseignant", tickets.get(1).getString("profile"));
+        Assert.assertFalse(tickets.get(2).containsKey("profile"));
+        Assert.assertEquals(1, translations.get());
+    }
+}
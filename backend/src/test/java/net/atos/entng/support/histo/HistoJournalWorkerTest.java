@@ -0,0 +1,180 @@
+package net.atos.entng.support.histo;
+
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import net.atos.entng.support.enums.TicketHisto;
+import org.entcore.common.sql.Sql;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.powermock.modules.junit4.PowerMockRunnerDelegate;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+@RunWith(PowerMockRunner.class)
+@PowerMockRunnerDelegate(VertxUnitRunner.class)
+@PrepareForTest({Sql.class})
+public class HistoJournalWorkerTest {
+
+    // Bind values of one event in the flush statement
+    private static final int VALUES_PER_EVENT = 7;
+
+    private Vertx vertx;
+    private final List<JsonArray> flushes = new CopyOnWriteArrayList<>();
+    private volatile String flushStatus = "ok";
+    private volatile boolean holdFlushes = false;
+    // Ticket whose events make any statement holding them fail
+    private volatile Long badTicket = null;
+
+    @Before
+    public void setup() {
+        vertx = Vertx.vertx();
+        Sql sql = Mockito.mock(Sql.class);
+        PowerMockito.spy(Sql.class);
+        PowerMockito.when(Sql.getInstance()).thenReturn(sql);
+        Mockito.doAnswer(invocation -> {
+            JsonArray values = invocation.getArgument(1);
+            flushes.add(values);
+            if (holdFlushes) {
+                return null;
+            }
+            Handler<Message<JsonObject>> handler = invocation.getArgument(2);
+            Message<JsonObject> message = Mockito.mock(Message.class);
+            String status = badTicket != null && values.contains(badTicket) ? "error" : flushStatus;
+            Mockito.when(message.body()).thenReturn(new JsonObject().put("status", status)
+                    .put("rows", values.size() / VALUES_PER_EVENT).put("message", "flush failed"));
+            handler.handle(message);
+            return null;
+        }).when(sql).prepared(Mockito.anyString(), Mockito.any(JsonArray.class), Mockito.any(Handler.class));
+    }
+
+    @After
+    public void tearDown(TestContext ctx) {
+        HistoJournal.init(vertx.eventBus(), new JsonObject().put("histo-journal-enabled", false));
+        vertx.close(ctx.asyncAssertSuccess());
+    }
+
+    @Test
+    public void testFlushOnBatchSize(TestContext ctx) {
+        deploy(ctx, new JsonObject().put("histo-journal-batch-size", 2).put("histo-journal-flush-interval", 60000));
+        Async async = ctx.async();
+
+        CompositeFuture.all(append(1, "created", false), append(2, "created", false))
+                .onComplete(ctx.asyncAssertSuccess(result -> {
+                    ctx.assertEquals(1, flushes.size());
+                    ctx.assertEquals(2 * VALUES_PER_EVENT, flushes.get(0).size());
+                    async.complete();
+                }));
+        async.awaitSuccess(10000);
+    }
+
+    @Test
+    public void testFlushOnInterval(TestContext ctx) {
+        deploy(ctx, new JsonObject().put("histo-journal-batch-size", 500).put("histo-journal-flush-interval", 50));
+        Async async = ctx.async();
+
+        append(1, "created", false).onComplete(ctx.asyncAssertSuccess(result -> {
+            ctx.assertEquals(1, flushes.size());
+            ctx.assertEquals(VALUES_PER_EVENT, flushes.get(0).size());
+            async.complete();
+        }));
+        async.awaitSuccess(10000);
+    }
+
+    @Test
+    public void testUniqueEventsAreDeduplicatedInBatch(TestContext ctx) {
+        deploy(ctx, new JsonObject().put("histo-journal-batch-size", 3).put("histo-journal-flush-interval", 60000));
+        Async async = ctx.async();
+
+        CompositeFuture.all(append(1, "comment", true), append(1, "comment", true), append(1, "comment", false))
+                .onComplete(ctx.asyncAssertSuccess(result -> {
+                    // Every event is answered, the repeated unique event is only inserted once
+                    ctx.assertEquals(1, flushes.size());
+                    ctx.assertEquals(2 * VALUES_PER_EVENT, flushes.get(0).size());
+                    ctx.assertEquals(true, flushes.get(0).getValue(6));
+                    ctx.assertEquals(false, flushes.get(0).getValue(13));
+                    async.complete();
+                }));
+        async.awaitSuccess(10000);
+    }
+
+    @Test
+    public void testEventsFailWithTheirBatch(TestContext ctx) {
+        flushStatus = "error";
+        deploy(ctx, new JsonObject().put("histo-journal-batch-size", 2).put("histo-journal-flush-interval", 60000));
+        Async async = ctx.async(2);
+
+        // The journal took the events, they must not be inserted again by their callers
+        append(1, "created", false).onComplete(ctx.asyncAssertFailure(err -> {
+            ctx.assertFalse(HistoJournal.isNotDelivered(err));
+            async.countDown();
+        }));
+        append(2, "created", false).onComplete(ctx.asyncAssertFailure(err -> {
+            ctx.assertFalse(HistoJournal.isNotDelivered(err));
+            async.countDown();
+        }));
+        async.awaitSuccess(10000);
+        // The batch, then each event on its own
+        ctx.assertEquals(3, flushes.size());
+    }
+
+    @Test
+    public void testBadEventOnlyFailsItsCaller(TestContext ctx) {
+        badTicket = 2L;
+        deploy(ctx, new JsonObject().put("histo-journal-batch-size", 3).put("histo-journal-flush-interval", 60000));
+        Async async = ctx.async(3);
+
+        append(1, "created", false).onComplete(ctx.asyncAssertSuccess(result -> async.countDown()));
+        append(2, "created", false).onComplete(ctx.asyncAssertFailure(err -> async.countDown()));
+        append(3, "created", false).onComplete(ctx.asyncAssertSuccess(result -> async.countDown()));
+        async.awaitSuccess(10000);
+        ctx.assertEquals(3 * VALUES_PER_EVENT, flushes.get(0).size());
+        ctx.assertEquals(4, flushes.size());
+    }
+
+    @Test
+    public void testFullJournalRefusesEvents(TestContext ctx) {
+        holdFlushes = true;
+        deploy(ctx, new JsonObject().put("histo-journal-batch-size", 1).put("histo-journal-max-pending", 1)
+                .put("histo-journal-flush-interval", 60000));
+        Async async = ctx.async();
+
+        // The first event is being flushed, the second one waits for the next flush, the third one finds the queue full
+        append(1, "created", false);
+        append(2, "created", false);
+        append(3, "created", false).onComplete(ctx.asyncAssertFailure(err -> {
+            ctx.assertTrue(HistoJournal.isNotDelivered(err));
+            ctx.assertEquals(1, flushes.size());
+            async.complete();
+        }));
+        async.awaitSuccess(10000);
+    }
+
+    private void deploy(TestContext ctx, JsonObject config) {
+        Async deployed = ctx.async();
+        config.put("histo-journal-enabled", true);
+        HistoJournal.init(vertx.eventBus(), config);
+        vertx.deployVerticle(new HistoJournalWorker(), new DeploymentOptions().setConfig(config),
+                ctx.asyncAssertSuccess(id -> deployed.complete()));
+        deployed.awaitSuccess(10000);
+    }
+
+    private Future<Void> append(long ticketId, String event, boolean unique) {
+        return HistoJournal.append(ticketId, event, unique ? "2024-01-01T10:00:00" : null, 1, "user-1", TicketHisto.NEW, unique);
+    }
+}
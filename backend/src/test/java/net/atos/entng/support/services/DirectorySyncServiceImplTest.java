@@ -0,0 +1,151 @@
+package net.atos.entng.support.services;
+
+import io.vertx.core.Handler;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import net.atos.entng.support.services.impl.DirectorySyncServiceImpl;
+import org.entcore.common.neo4j.Neo4j;
+import org.entcore.common.sql.Sql;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.powermock.modules.junit4.PowerMockRunnerDelegate;
+
+@RunWith(PowerMockRunner.class)
+@PowerMockRunnerDelegate(VertxUnitRunner.class)
+@PrepareForTest({Sql.class, Neo4j.class})
+public class DirectorySyncServiceImplTest {
+
+    private Sql sql;
+    private Neo4j neo4j;
+    private DirectorySyncService directorySyncService;
+
+    @Before
+    public void setup() {
+        sql = Mockito.mock(Sql.class);
+        PowerMockito.spy(Sql.class);
+        PowerMockito.when(Sql.getInstance()).thenReturn(sql);
+        neo4j = Mockito.mock(Neo4j.class);
+        PowerMockito.spy(Neo4j.class);
+        PowerMockito.when(Neo4j.getInstance()).thenReturn(neo4j);
+        directorySyncService = new DirectorySyncServiceImpl(new JsonObject());
+    }
+
+    @Test
+    public void testLockSyncTakesFreeLease(TestContext ctx) {
+        Async async = ctx.async();
+        Mockito.doAnswer(invocation -> {
+            String query = invocation.getArgument(0);
+            ctx.assertTrue(query.startsWith("INSERT INTO support.job_leases AS l (name, owner, locked_until)"));
+            ctx.assertEquals(new JsonArray().add("directory_sync").add("deployment-1").add(3600L).add(1800L), invocation.getArgument(1));
+            reply(invocation.getArgument(2), new JsonArray().add(new JsonArray().add("deployment-1")));
+            return null;
+        }).when(sql).prepared(Mockito.anyString(), Mockito.any(JsonArray.class), Mockito.any(Handler.class));
+
+        directorySyncService.lockSync("deployment-1", 3600L, 1800L).onComplete(ctx.asyncAssertSuccess(locked -> {
+            ctx.assertTrue(locked);
+            async.complete();
+        }));
+        async.awaitSuccess(10000);
+    }
+
+    @Test
+    public void testLockSyncIsRefusedWhileLeaseIsHeld(TestContext ctx) {
+        Async async = ctx.async();
+        Mockito.doAnswer(invocation -> {
+            // The conflicting row is not updated, no row is returned
+            reply(invocation.getArgument(2), new JsonArray());
+            return null;
+        }).when(sql).prepared(Mockito.anyString(), Mockito.any(JsonArray.class), Mockito.any(Handler.class));
+
+        directorySyncService.lockSync("deployment-2", 3600L, 0L).onComplete(ctx.asyncAssertSuccess(locked -> {
+            ctx.assertFalse(locked);
+            async.complete();
+        }));
+        async.awaitSuccess(10000);
+    }
+
+    @Test
+    public void testSyncUserProfilesStoresDirectoryProfiles(TestContext ctx) {
+        Async async = ctx.async();
+        Mockito.doAnswer(invocation -> {
+            ctx.assertEquals("SELECT id FROM support.users", invocation.getArgument(0));
+            reply(invocation.getArgument(1), new JsonArray().add("id"),
+                    new JsonArray().add(new JsonArray().add("user-1")).add(new JsonArray().add("user-2")));
+            return null;
+        }).when(sql).raw(Mockito.anyString(), Mockito.any(Handler.class));
+        Mockito.doAnswer(invocation -> {
+            ctx.assertEquals(new JsonArray().add("user-1").add("user-2"),
+                    ((JsonObject) invocation.getArgument(1)).getJsonArray("ids"));
+            // user-2 has no profile in the directory, its stored profile is left as is
+            replyNeo4j(invocation.getArgument(2), new JsonArray()
+                    .add(new JsonObject().put("n.id", "user-1").put("n.profiles", new JsonArray().add("Teacher")))
+                    .add(new JsonObject().put("n.id", "user-2").put("n.profiles", new JsonArray())));
+            return null;
+        }).when(neo4j).execute(Mockito.anyString(), Mockito.any(JsonObject.class), Mockito.any(Handler.class));
+        Mockito.doAnswer(invocation -> {
+            ctx.assertEquals("UPDATE support.users AS u SET profile = p.profile" +
+                    " FROM unnest(?::varchar[], ?::varchar[]) AS p(id, profile)" +
+                    " WHERE u.id = p.id AND u.profile IS DISTINCT FROM p.profile", invocation.getArgument(0));
+            ctx.assertEquals(new JsonArray().add("{\"user-1\"}").add("{\"Teacher\"}"), invocation.getArgument(1));
+            Handler<Message<JsonObject>> handler = invocation.getArgument(2);
+            Message<JsonObject> message = Mockito.mock(Message.class);
+            Mockito.when(message.body()).thenReturn(new JsonObject().put("status", "ok").put("rows", 1));
+            handler.handle(message);
+            return null;
+        }).when(sql).prepared(Mockito.anyString(), Mockito.any(JsonArray.class), Mockito.any(Handler.class));
+
+        directorySyncService.syncUserProfiles().onComplete(ctx.asyncAssertSuccess(synced -> {
+            ctx.assertEquals(1, synced);
+            async.complete();
+        }));
+        async.awaitSuccess(10000);
+    }
+
+    @Test
+    public void testSyncUserProfilesSkipsUsersUnknownToTheDirectory(TestContext ctx) {
+        Async async = ctx.async();
+        Mockito.doAnswer(invocation -> {
+            reply(invocation.getArgument(1), new JsonArray().add("id"), new JsonArray().add(new JsonArray().add("user-1")));
+            return null;
+        }).when(sql).raw(Mockito.anyString(), Mockito.any(Handler.class));
+        Mockito.doAnswer(invocation -> {
+            replyNeo4j(invocation.getArgument(2), new JsonArray());
+            return null;
+        }).when(neo4j).execute(Mockito.anyString(), Mockito.any(JsonObject.class), Mockito.any(Handler.class));
+
+        directorySyncService.syncUserProfiles().onComplete(ctx.asyncAssertSuccess(synced -> {
+            ctx.assertEquals(0, synced);
+            Mockito.verify(sql, Mockito.never()).prepared(Mockito.anyString(), Mockito.any(JsonArray.class), Mockito.any(Handler.class));
+            async.complete();
+        }));
+        async.awaitSuccess(10000);
+    }
+
+    private void reply(Handler<Message<JsonObject>> handler, JsonArray results) {
+        reply(handler, new JsonArray().add("owner"), results);
+    }
+
+    private void reply(Handler<Message<JsonObject>> handler, JsonArray fields, JsonArray results) {
+        Message<JsonObject> message = Mockito.mock(Message.class);
+        Mockito.when(message.body()).thenReturn(new JsonObject()
+                .put("status", "ok")
+                .put("fields", fields)
+                .put("results", results));
+        handler.handle(message);
+    }
+
+    private void replyNeo4j(Handler<Message<JsonObject>> handler, JsonArray result) {
+        Message<JsonObject> message = Mockito.mock(Message.class);
+        Mockito.when(message.body()).thenReturn(new JsonObject().put("status", "ok").put("result", result));
+        handler.handle(message);
+    }
+}
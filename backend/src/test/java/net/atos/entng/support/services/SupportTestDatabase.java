@@ -0,0 +1,99 @@
+package net.atos.entng.support.services;
+
+import org.junit.Assume;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Seeded Postgres database of the tests run against the support schema.
+ * <p>
+ * The database is given by the system properties support.test.postgres.url, support.test.postgres.user and
+ * support.test.postgres.password, which the db-tests profile sets to the postgres-test compose service
+ * ({@code ./build.sh testDb}). Its support schema is dropped and rebuilt from the migrations, so a database whose name
+ * does not end with {@value #TEST_DATABASE_SUFFIX} is refused. The calling suite is skipped when no database is given.
+ */
+final class SupportTestDatabase {
+
+    private static final String URL_PROPERTY = "support.test.postgres.url";
+    private static final String TEST_DATABASE_SUFFIX = "_test";
+    private static final Path MIGRATIONS = Paths.get("src", "main", "resources", "sql");
+
+    private SupportTestDatabase() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    static Connection open() throws SQLException, IOException {
+        String url = System.getProperty(URL_PROPERTY);
+        Assume.assumeTrue(URL_PROPERTY + " is not set, the database is not checked", url != null && !url.isEmpty());
+
+        Properties properties = new Properties();
+        properties.setProperty("user", System.getProperty("support.test.postgres.user", "postgres"));
+        properties.setProperty("password", System.getProperty("support.test.postgres.password", ""));
+        // Values are bound as the event bus persistor does, without type
+        properties.setProperty("stringtype", "unspecified");
+        Connection connection = DriverManager.getConnection(url, properties);
+
+        try (Statement statement = connection.createStatement()) {
+            String database;
+            try (ResultSet result = statement.executeQuery("SELECT current_database()")) {
+                result.next();
+                database = result.getString(1);
+            }
+            if (!database.endsWith(TEST_DATABASE_SUFFIX)) {
+                connection.close();
+                throw new IllegalStateException("Refusing to drop the support schema of " + database +
+                        ", the test database name must end with " + TEST_DATABASE_SUFFIX);
+            }
+            statement.execute("DROP SCHEMA IF EXISTS support CASCADE");
+            statement.execute("DO $$ BEGIN IF NOT EXISTS (SELECT 1 FROM pg_roles WHERE rolname = 'apps') THEN CREATE ROLE apps; END IF; END $$");
+            List<Path> migrations;
+            try (Stream<Path> files = Files.list(MIGRATIONS)) {
+                migrations = files.filter(file -> file.toString().endsWith(".sql")).sorted().collect(Collectors.toList());
+            }
+            for (Path migration : migrations) {
+                statement.execute(new String(Files.readAllBytes(migration), StandardCharsets.UTF_8));
+            }
+            seed(statement);
+        }
+        return connection;
+    }
+
+    /**
+     * 200 000 tickets spread over 500 structures and 5 000 owners, with their history, comments, attachments and issues
+     */
+    private static void seed(Statement statement) throws SQLException {
+        statement.execute("INSERT INTO support.users (id, username)" +
+                " SELECT 'user-' || i, 'Utilisateur ' || i FROM generate_series(1, 5000) AS i");
+        statement.execute("INSERT INTO support.structures (id, name, sort_key)" +
+                " SELECT 'school-' || i, 'Ecole ' || i, i FROM generate_series(0, 499) AS i");
+        statement.execute("INSERT INTO support.tickets (owner, subject, description, category, status, school_id, event_count, modified)" +
+                " SELECT 'user-' || (1 + i % 5000), 'Sujet ref' || i, 'Description du ticket ' || i, 'category-' || (i % 20)," +
+                " 1 + i % 5, 'school-' || (i % 500), i % 10, timezone('UTC', NOW()) - (i || ' minutes')::interval" +
+                " FROM generate_series(1, 200000) AS i");
+        statement.execute("INSERT INTO support.tickets_histo (ticket_id, event, status, user_id, event_type)" +
+                " SELECT 1 + i % 200000, 'event ' || i, 1 + i % 5, 'user-' || (1 + i % 5000), 1 + i % 6" +
+                " FROM generate_series(1, 400000) AS i");
+        statement.execute("INSERT INTO support.comments (ticket_id, owner, content)" +
+                " SELECT 1 + i % 200000, 'user-' || (1 + i % 5000), 'Commentaire ' || i FROM generate_series(1, 200000) AS i");
+        statement.execute("INSERT INTO support.attachments (document_id, ticket_id, name, size, owner)" +
+                " SELECT 'document-' || i, 1 + i % 200000, 'file-' || i, 1024, 'user-' || (1 + i % 5000)" +
+                " FROM generate_series(1, 50000) AS i");
+        statement.execute("INSERT INTO support.bug_tracker_issues (id, ticket_id, content, owner, bugtracker)" +
+                " SELECT i, 1 + (i * 7) % 200000, '{}'::json, 'user-' || (1 + i % 5000), 'ZENDESK'" +
+                " FROM generate_series(1, 20000) AS i");
+        statement.execute("ANALYZE");
+    }
+}
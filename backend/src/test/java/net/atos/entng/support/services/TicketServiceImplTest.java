@@ -0,0 +1,90 @@
+package net.atos.entng.support.services;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import net.atos.entng.support.services.impl.TicketServiceImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+@RunWith(VertxUnitRunner.class)
+public class TicketServiceImplTest {
+
+    private Vertx vertx;
+    private TicketServiceSql ticketServiceSql;
+
+    @Before
+    public void setup() {
+        vertx = Vertx.vertx();
+        ticketServiceSql = Mockito.mock(TicketServiceSql.class);
+        Mockito.when(ticketServiceSql.listStructureDescendants(Mockito.anyList())).thenAnswer(invocation ->
+                Future.succeededFuture(new JsonObject().put("structureIds", new JsonArray(invocation.getArgument(0)))));
+    }
+
+    @After
+    public void tearDown(TestContext ctx) {
+        vertx.close(ctx.asyncAssertSuccess());
+    }
+
+    @Test
+    public void testStructureChildrenAreCachedPerStructureSet(TestContext ctx) {
+        TicketServiceImpl service = new TicketServiceImpl(ticketServiceSql, vertx.eventBus(), new JsonObject());
+        Async async = ctx.async();
+
+        service.listStructureChildren(Arrays.asList("school-2", "school-1", "school-1"))
+                .compose(first -> service.listStructureChildren(Arrays.asList("school-1", "school-2")))
+                .compose(second -> service.listStructureChildren(Collections.singletonList("school-1")))
+                .onComplete(ctx.asyncAssertSuccess(third -> {
+                    // The same structures in any order share an entry, another set has its own
+                    Mockito.verify(ticketServiceSql, Mockito.times(2)).listStructureDescendants(Mockito.anyList());
+                    async.complete();
+                }));
+        async.awaitSuccess(10000);
+    }
+
+    @Test
+    public void testStructureChildrenExpire(TestContext ctx) {
+        TicketServiceImpl service = new TicketServiceImpl(ticketServiceSql, vertx.eventBus(),
+                new JsonObject().put("structure-cache-ttl", 1));
+        Async async = ctx.async();
+
+        service.listStructureChildren(Collections.singletonList("school-1"))
+                .compose(first -> service.listStructureChildren(Collections.singletonList("school-1")))
+                .onComplete(ctx.asyncAssertSuccess(second -> {
+                    Mockito.verify(ticketServiceSql, Mockito.times(1)).listStructureDescendants(Mockito.anyList());
+                    vertx.setTimer(1100, timerId -> service.listStructureChildren(Collections.singletonList("school-1"))
+                            .onComplete(ctx.asyncAssertSuccess(expired -> {
+                                Mockito.verify(ticketServiceSql, Mockito.times(2)).listStructureDescendants(Mockito.anyList());
+                                async.complete();
+                            })));
+                }));
+        async.awaitSuccess(10000);
+    }
+
+    @Test
+    public void testStructureChildrenAreClearedOnInvalidation(TestContext ctx) {
+        TicketServiceImpl service = new TicketServiceImpl(ticketServiceSql, vertx.eventBus(), new JsonObject());
+        Async async = ctx.async();
+
+        service.listStructureChildren(Collections.singletonList("school-1"))
+                .onComplete(ctx.asyncAssertSuccess(first -> {
+                    vertx.eventBus().publish(TicketServiceImpl.STRUCTURE_CACHE_INVALIDATION_ADDRESS, new JsonObject());
+                    vertx.setTimer(100, timerId -> service.listStructureChildren(Collections.singletonList("school-1"))
+                            .onComplete(ctx.asyncAssertSuccess(invalidated -> {
+                                Mockito.verify(ticketServiceSql, Mockito.times(2)).listStructureDescendants(Mockito.anyList());
+                                async.complete();
+                            })));
+                }));
+        async.awaitSuccess(10000);
+    }
+}
@@ -1,10 +1,17 @@
 package net.atos.entng.support.services;
 
 import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.Message;
 import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
 import io.vertx.ext.unit.Async;
 import io.vertx.ext.unit.TestContext;
 import io.vertx.ext.unit.junit.VertxUnitRunner;
+import net.atos.entng.support.enums.BugTracker;
+import net.atos.entng.support.enums.TicketHisto;
+import net.atos.entng.support.helpers.CursorHelper;
+import net.atos.entng.support.histo.HistoJournal;
 import net.atos.entng.support.services.impl.TicketServiceSqlImpl;
 import org.entcore.common.service.impl.SqlCrudService;
 import org.entcore.common.sql.Sql;
@@ -27,7 +34,16 @@ import java.util.*;
 @PrepareForTest({Sql.class, TicketServiceSql.class, SqlCrudService.class}) //Prepare the static class you want to test
 public class TicketServiceSqlImplTest {
 
+    // Columns of the list projection after t.id, t.owner and the sort column
+    private static final String LIST_FIELDS = "t.subject, t.created, t.modified, t.category, t.category_label, t.status," +
+            " t.school_id, t.escalation_status, t.escalation_date, t.event_count, t.locale, t.issue_update_date," +
+            " u.username AS owner_name, u.profile, COALESCE(t.short_desc, substring(t.description, 0, 101)) AS short_desc";
+    private static final String ZENDESK_ISSUE_FIELD = ", i.content->>'updated_at' AS last_issue_update";
+    private static final String LIST_FROM = " FROM support.tickets AS t INNER JOIN support.users AS u ON t.owner = u.id" +
+            " LEFT JOIN support.bug_tracker_issues AS i ON t.id=i.ticket_id";
+
     private TicketServiceSql service;
+    private TicketServiceSql zendeskService;
     private Sql sql;
 
     @Before
@@ -40,6 +56,7 @@ public class TicketServiceSqlImplTest {
         //sql est une propriété de la classe SqlCrudService et non pas la classe Sql même, il faut donc utiliser whitebox
         //Pour faire changer d'état à sql.
         Whitebox.setInternalState(service, "sql", sql);
+        this.zendeskService = serviceWith(new JsonObject());
     }
     @Test
     public void getListEvents(TestContext ctx) {
@@ -99,4 +116,540 @@ public class TicketServiceSqlImplTest {
         this.service.getUserTickets(userInfos);
         async.awaitSuccess(10000);
     }
+
+    @Test
+    public void testListFilteredTicketsWithCursor(TestContext ctx) {
+        Async async = ctx.async();
+        String after = CursorHelper.encode("modified", "DESC", "2024-01-01T10:00:00.000", 42L);
+
+        Mockito.doAnswer(invocation -> {
+            ctx.assertEquals("SELECT t.id, t.owner, t.modified, " + LIST_FIELDS.replace(" t.modified,", "") + ZENDESK_ISSUE_FIELD +
+                    LIST_FROM + " WHERE 1=1 AND t.owner = ? AND t.school_id = ANY(?::varchar[])" +
+                    " AND (t.modified, t.id) < (?::timestamp, ?) ORDER BY t.modified DESC, t.id DESC LIMIT ?", invocation.getArgument(0));
+            ctx.assertEquals(new JsonArray().add("userId").add("{\"structureId\"}").add("2024-01-01T10:00:00.000").add(42L).add(25),
+                    invocation.getArgument(1));
+            async.complete();
+            return null;
+        }).when(sql).prepared(Mockito.anyString(), Mockito.any(JsonArray.class), Mockito.any(Handler.class));
+
+        zendeskService.listFilteredTickets(user("structureId"), 3, null, null, null, true, "modified", "DESC", 25, null, after, null);
+        async.awaitSuccess(10000);
+    }
+
+    @Test
+    public void testListFilteredTicketsByProfile(TestContext ctx) {
+        Async async = ctx.async();
+        String after = CursorHelper.encode("profile", "ASC", 3, 42L);
+
+        Mockito.doAnswer(invocation -> {
+            ctx.assertEquals("SELECT t.id, t.owner, t.owner_profile_rank, " + LIST_FIELDS + ZENDESK_ISSUE_FIELD + LIST_FROM +
+                    " WHERE 1=1 AND t.owner = ? AND t.school_id = ANY(?::varchar[])" +
+                    " AND (t.owner_profile_rank, t.id) > (?, ?) ORDER BY t.owner_profile_rank ASC, t.id ASC LIMIT ?", invocation.getArgument(0));
+            ctx.assertEquals(new JsonArray().add("userId").add("{\"structureId\"}").add(3).add(42L).add(25), invocation.getArgument(1));
+            async.complete();
+            return null;
+        }).when(sql).prepared(Mockito.anyString(), Mockito.any(JsonArray.class), Mockito.any(Handler.class));
+
+        zendeskService.listFilteredTickets(user("structureId"), 1, null, null, null, true, "profile", "ASC", 25, null, after, null);
+        async.awaitSuccess(10000);
+    }
+
+    @Test
+    public void testProfileRankIsOnlyUsedForCursors(TestContext ctx) {
+        Async async = ctx.async();
+
+        Mockito.doAnswer(invocation -> {
+            ctx.assertEquals("SELECT t.id, t.owner, t.owner_profile_rank, " + LIST_FIELDS + ZENDESK_ISSUE_FIELD + LIST_FROM +
+                    " WHERE 1=1 AND t.owner = ? AND t.school_id = ANY(?::varchar[])" +
+                    " ORDER BY t.owner_profile_rank ASC, t.id ASC", invocation.getArgument(0));
+            ctx.assertEquals(new JsonArray().add("userId").add("{\"structureId\"}"), invocation.getArgument(1));
+            reply(invocation.getArgument(2), new JsonArray().add("id").add("owner").add("owner_profile_rank"),
+                    new JsonArray().add(new JsonArray().add(42L).add("userId").add(3)));
+            return null;
+        }).when(sql).prepared(Mockito.anyString(), Mockito.any(JsonArray.class), Mockito.any(Handler.class));
+
+        zendeskService.listFilteredTickets(user("structureId"), 0, null, null, null, true, "profile", "ASC", 25, null, null, null)
+                .onComplete(ctx.asyncAssertSuccess(tickets -> {
+                    JsonObject ticket = tickets.getJsonObject(0);
+                    ctx.assertEquals(CursorHelper.encode("profile", "ASC", 3, 42L), ticket.getString("cursor"));
+                    ctx.assertFalse(ticket.containsKey("owner_profile_rank"));
+                    async.complete();
+                }));
+        async.awaitSuccess(10000);
+    }
+
+    @Test
+    public void testGetTicketDoesNotSelectProfileRank(TestContext ctx) {
+        Async async = ctx.async();
+
+        Mockito.doAnswer(invocation -> {
+            ctx.assertEquals("SELECT t.id, t.owner, t.subject, t.description, t.created, t.modified, t.category, t.status," +
+                    " t.school_id, t.escalation_status, t.escalation_date, t.event_count, t.locale, t.issue_update_date, t.category_label," +
+                    " u.username AS owner_name, u.profile, i.content->>'updated_at' AS last_issue_update, " +
+                    " COALESCE(t.short_desc, substring(t.description, 0, 101)) AS short_desc" + LIST_FROM + " WHERE t.id = ?",
+                    invocation.getArgument(0));
+            ctx.assertEquals(new JsonArray().add(42), invocation.getArgument(1));
+            async.complete();
+            return null;
+        }).when(sql).prepared(Mockito.anyString(), Mockito.any(JsonArray.class), Mockito.any(Handler.class));
+
+        zendeskService.getTicket(user(), 42, event -> {});
+        async.awaitSuccess(10000);
+    }
+
+    @Test
+    public void testListFilteredTicketsWithFields(TestContext ctx) {
+        Async async = ctx.async();
+
+        Mockito.doAnswer(invocation -> {
+            // The sort column is kept for the cursors, unknown fields are ignored
+            ctx.assertEquals("SELECT t.id, t.owner, t.modified, t.subject, u.username AS owner_name" + LIST_FROM +
+                    " WHERE 1=1 AND t.owner = ? AND t.school_id = ANY(?::varchar[])" +
+                    " ORDER BY t.modified DESC, t.id DESC LIMIT ? OFFSET 0", invocation.getArgument(0));
+            ctx.assertEquals(new JsonArray().add("userId").add("{\"structureId\"}").add(25), invocation.getArgument(1));
+            async.complete();
+            return null;
+        }).when(sql).prepared(Mockito.anyString(), Mockito.any(JsonArray.class), Mockito.any(Handler.class));
+
+        zendeskService.listFilteredTickets(user("structureId"), 1, null, null, null, true, "modified", "DESC", 25, null, null,
+                Arrays.asList("subject", "owner_name", "description"));
+        async.awaitSuccess(10000);
+    }
+
+    @Test
+    public void testListTicketsChunk(TestContext ctx) {
+        Async async = ctx.async();
+
+        Mockito.doAnswer(invocation -> {
+            ctx.assertEquals("SELECT t.id, t.owner, " + LIST_FIELDS + LIST_FROM +
+                    " WHERE t.school_id = ANY(?::varchar[]) AND t.id < ? ORDER BY t.id DESC LIMIT ?", invocation.getArgument(0));
+            ctx.assertEquals(new JsonArray().add("{\"structureId\"}").add(42L).add(500), invocation.getArgument(1));
+            async.complete();
+            return null;
+        }).when(sql).prepared(Mockito.anyString(), Mockito.any(JsonArray.class), Mockito.any(Handler.class));
+
+        this.service.listTicketsChunk(adminUser(DefaultFunctions.ADMIN_LOCAL, Collections.singletonList("structureId")),
+                Collections.emptyList(), Collections.emptyList(), "*", null, null, "DESC", new JsonObject().put("id", 42L), 500);
+        async.awaitSuccess(10000);
+    }
+
+    @Test
+    public void testListTicketsChunkSortedByStatus(TestContext ctx) {
+        Async async = ctx.async();
+
+        Mockito.doAnswer(invocation -> {
+            ctx.assertEquals("SELECT t.id, t.owner, t.status, " + LIST_FIELDS.replace(" t.status,", "") + LIST_FROM +
+                    " WHERE 1=1 AND (t.status, t.id) > (?, ?) ORDER BY t.status ASC, t.id ASC LIMIT ?", invocation.getArgument(0));
+            ctx.assertEquals(new JsonArray().add(2).add(42L).add(500), invocation.getArgument(1));
+            async.complete();
+            return null;
+        }).when(sql).prepared(Mockito.anyString(), Mockito.any(JsonArray.class), Mockito.any(Handler.class));
+
+        ctx.assertTrue(this.service.canListChunksSortedBy("status"));
+        ctx.assertFalse(this.service.canListChunksSortedBy("school_id"));
+        this.service.listTicketsChunk(adminUser(DefaultFunctions.SUPER_ADMIN, Collections.emptyList()),
+                Collections.emptyList(), Collections.emptyList(), "*", null, "status", "ASC",
+                new JsonObject().put("id", 42L).put("status", 2), 500);
+        async.awaitSuccess(10000);
+    }
+
+    @Test
+    public void testListTicketsChunkHasTheScopeOfListTickets(TestContext ctx) {
+        JsonObject structureChildren = new JsonObject().put("structureIds", new JsonArray().add("school-1").add("school-2"));
+        // Local admin of school-1 and member of school-9, asking for school-1 and its child
+        UserInfos localAdmin = adminUser(DefaultFunctions.ADMIN_LOCAL, Collections.singletonList("school-1"));
+        localAdmin.setStructures(Arrays.asList("school-1", "school-9"));
+        assertSameScope(ctx, localAdmin, Arrays.asList("1", "2"), Collections.singletonList("ME"), "school-1", structureChildren);
+        assertSameScope(ctx, localAdmin, Collections.singletonList("1"), Collections.emptyList(), "*", null);
+        // Super admin of every structure
+        UserInfos superAdmin = adminUser(DefaultFunctions.SUPER_ADMIN, Collections.emptyList());
+        assertSameScope(ctx, superAdmin, Collections.singletonList("3"), Collections.singletonList("OTHER"), "school-1", structureChildren);
+        assertSameScope(ctx, superAdmin, Collections.singletonList("3"), Collections.emptyList(), "*", null);
+    }
+
+    /**
+     * The chunks of a streamed listing must read the tickets of its pages: same WHERE clause, same parameters
+     */
+    private void assertSameScope(TestContext ctx, UserInfos user, List<String> statuses, List<String> applicants,
+                                 String schoolId, JsonObject structureChildren) {
+        List<String> queries = new ArrayList<>();
+        List<JsonArray> params = new ArrayList<>();
+        Mockito.doAnswer(invocation -> {
+            queries.add(invocation.getArgument(0));
+            params.add(invocation.getArgument(1));
+            return null;
+        }).when(sql).prepared(Mockito.anyString(), Mockito.any(JsonArray.class), Mockito.any(Handler.class));
+
+        this.service.listTickets(user, 0, statuses, applicants, schoolId, "id", "DESC", 25, structureChildren);
+        this.service.listTicketsChunk(user, statuses, applicants, schoolId, structureChildren, "id", "DESC", null, 500);
+
+        ctx.assertEquals(2, queries.size());
+        String paged = queries.get(0);
+        String chunk = queries.get(1);
+        ctx.assertEquals(paged.substring(paged.indexOf(" WHERE "), paged.indexOf(" ORDER BY ")),
+                chunk.substring(chunk.indexOf(" WHERE "), chunk.indexOf(" ORDER BY ")));
+        ctx.assertEquals(params.get(0).copy().add(500), params.get(1));
+    }
+
+    @Test
+    public void testFingerprintIsCachedPerScope(TestContext ctx) {
+        Async async = ctx.async();
+        List<JsonArray> params = new ArrayList<>();
+        Mockito.doAnswer(invocation -> {
+            ctx.assertEquals("SELECT count(*) || ':' || COALESCE(max(t.row_version), 0) AS fingerprint" +
+                    " FROM support.tickets AS t WHERE t.school_id = ANY(?::varchar[])", invocation.getArgument(0));
+            params.add(invocation.getArgument(1));
+            Handler<Message<JsonObject>> handler = invocation.getArgument(2);
+            Message<JsonObject> message = Mockito.mock(Message.class);
+            Mockito.when(message.body()).thenReturn(new JsonObject()
+                    .put("status", "ok")
+                    .put("fields", new JsonArray().add("fingerprint"))
+                    .put("results", new JsonArray().add(new JsonArray().add("12:345"))));
+            handler.handle(message);
+            return null;
+        }).when(sql).prepared(Mockito.anyString(), Mockito.any(JsonArray.class), Mockito.any(Handler.class));
+
+        UserInfos user = adminUser(DefaultFunctions.ADMIN_LOCAL, Collections.singletonList("school-1"));
+        this.service.fingerprintTickets(user, Collections.singletonList("school-2"))
+                .compose(first -> {
+                    ctx.assertEquals("12:345", first);
+                    return this.service.fingerprintTickets(user, Collections.singletonList("school-2"));
+                })
+                .compose(second -> {
+                    ctx.assertEquals("12:345", second);
+                    return this.service.fingerprintTickets(user, Collections.singletonList("school-3"));
+                })
+                .onComplete(ctx.asyncAssertSuccess(third -> {
+                    // The repeated scope is read once
+                    ctx.assertEquals(Arrays.asList(new JsonArray().add("{\"school-2\"}"), new JsonArray().add("{\"school-3\"}")), params);
+                    async.complete();
+                }));
+        async.awaitSuccess(10000);
+    }
+
+    @Test
+    public void testListStructureTicketsChunkIgnoresUserScope(TestContext ctx) {
+        Async async = ctx.async();
+
+        Mockito.doAnswer(invocation -> {
+            ctx.assertEquals("SELECT t.id, t.owner, " + LIST_FIELDS + ZENDESK_ISSUE_FIELD + LIST_FROM +
+                    " WHERE t.school_id = ANY(?::varchar[]) ORDER BY t.id ASC LIMIT ?", invocation.getArgument(0));
+            ctx.assertEquals(new JsonArray().add("{\"structureId\",\"childId\"}").add(500), invocation.getArgument(1));
+            async.complete();
+            return null;
+        }).when(sql).prepared(Mockito.anyString(), Mockito.any(JsonArray.class), Mockito.any(Handler.class));
+
+        zendeskService.listStructureTicketsChunk(Arrays.asList("structureId", "childId"), "ASC", null, 500);
+        async.awaitSuccess(10000);
+    }
+
+    @Test
+    public void testListFilteredTicketsWithCursorOfAnotherSort(TestContext ctx) {
+        String after = CursorHelper.encode("id", "DESC", 42L, 42L);
+
+        zendeskService.listFilteredTickets(user("structureId"), 1, null, null, null, true, "modified", "DESC", 25, null, after, null)
+                .onComplete(ctx.asyncAssertFailure());
+        Mockito.verify(sql, Mockito.never()).prepared(Mockito.anyString(), Mockito.any(JsonArray.class), Mockito.any(Handler.class));
+    }
+
+    @Test
+    public void testCountFilteredTicketsIsCached(TestContext ctx) {
+        TicketServiceSql countService = serviceWith(new JsonObject().put("count-estimate-threshold", 0));
+        UserInfos userInfos = user("structureId");
+        List<String> statuses = Collections.singletonList("1");
+
+        Mockito.doAnswer(invocation -> {
+            ctx.assertEquals("SELECT COUNT(*) AS count FROM support.tickets AS t" +
+                    " WHERE 1=1 AND t.owner = ? AND t.school_id = ANY(?::varchar[]) AND t.status IN (?)", invocation.getArgument(0));
+            ctx.assertEquals(new JsonArray().add("userId").add("{\"structureId\"}").add("1"), invocation.getArgument(1));
+            reply(invocation.getArgument(2), new JsonArray().add("count"), new JsonArray().add(new JsonArray().add(12)));
+            return null;
+        }).when(sql).prepared(Mockito.anyString(), Mockito.any(JsonArray.class), Mockito.any(Handler.class));
+
+        countService.countFilteredTickets(userInfos, statuses, null, null, true, null)
+                .compose(first -> {
+                    ctx.assertEquals(12L, first.getLong("count"));
+                    ctx.assertFalse(first.getBoolean("estimated"));
+                    return countService.countFilteredTickets(userInfos, statuses, null, null, true, null);
+                })
+                .onComplete(ctx.asyncAssertSuccess(second -> {
+                    ctx.assertEquals(12L, second.getLong("count"));
+                    Mockito.verify(sql, Mockito.times(1)).prepared(Mockito.anyString(), Mockito.any(JsonArray.class), Mockito.any(Handler.class));
+                }));
+    }
+
+    @Test
+    public void testFacetTickets(TestContext ctx) {
+        UserInfos userInfos = user("structureId");
+
+        Mockito.doAnswer(invocation -> {
+            ctx.assertEquals("SELECT t.status, t.school_id, t.category, GROUPING(t.status, t.school_id, t.category) AS grouping_set," +
+                    " COUNT(*) AS count FROM support.tickets AS t WHERE 1=1 AND t.owner = ? AND t.school_id = ANY(?::varchar[])" +
+                    " GROUP BY GROUPING SETS ((t.status), (t.school_id), (t.category), ())", invocation.getArgument(0));
+            ctx.assertEquals(new JsonArray().add("userId").add("{\"structureId\"}"), invocation.getArgument(1));
+            reply(invocation.getArgument(2), new JsonArray().add("status").add("school_id").add("category").add("grouping_set").add("count"),
+                    new JsonArray()
+                            .add(new JsonArray().add(1).addNull().addNull().add(3).add(4))
+                            .add(new JsonArray().add(2).addNull().addNull().add(3).add(1))
+                            .add(new JsonArray().addNull().add("structureId").addNull().add(5).add(5))
+                            .add(new JsonArray().addNull().addNull().add("/workspace").add(6).add(5))
+                            .add(new JsonArray().addNull().addNull().addNull().add(7).add(5)));
+            return null;
+        }).when(sql).prepared(Mockito.anyString(), Mockito.any(JsonArray.class), Mockito.any(Handler.class));
+
+        zendeskService.facetTickets(userInfos, null, true)
+                .compose(first -> {
+                    ctx.assertEquals(5L, first.getLong("total"));
+                    ctx.assertEquals(2, first.getJsonArray("statuses").size());
+                    ctx.assertEquals(4L, first.getJsonArray("statuses").getJsonObject(0).getLong("count"));
+                    ctx.assertEquals("structureId", first.getJsonArray("schools").getJsonObject(0).getString("school_id"));
+                    ctx.assertEquals("/workspace", first.getJsonArray("categories").getJsonObject(0).getString("category"));
+                    return zendeskService.facetTickets(userInfos, null, true);
+                })
+                .onComplete(ctx.asyncAssertSuccess(second -> {
+                    ctx.assertEquals(5L, second.getLong("total"));
+                    Mockito.verify(sql, Mockito.times(1)).prepared(Mockito.anyString(), Mockito.any(JsonArray.class), Mockito.any(Handler.class));
+                }));
+    }
+
+    @Test
+    public void testGetFullTicket(TestContext ctx) {
+        String expectedQuery = "SELECT t.id, t.owner, t.subject, t.description, t.created, t.modified, t.category, t.status," +
+                " t.school_id, t.escalation_status, t.escalation_date, t.event_count, t.locale, t.issue_update_date, t.category_label," +
+                " u.username AS owner_name, u.profile, i.content->>'updated_at' AS last_issue_update," +
+                " COALESCE(t.short_desc, substring(t.description, 0, 101)) AS short_desc," +
+                " COALESCE((SELECT json_agg(tc ORDER BY tc.modified) FROM (SELECT c.*, v.username AS owner_name" +
+                " FROM support.comments AS c INNER JOIN support.users AS v ON c.owner = v.id" +
+                " WHERE c.ticket_id = t.id) AS tc), '[]'::json) AS comments," +
+                " COALESCE((SELECT json_agg(ta ORDER BY ta.created) FROM (SELECT a.*, v.username AS owner_name" +
+                " FROM support.attachments AS a INNER JOIN support.users AS v ON a.owner = v.id" +
+                " WHERE a.ticket_id = t.id) AS ta), '[]'::json) AS attachments," +
+                " COALESCE((SELECT json_agg(te ORDER BY te.event_date) FROM (SELECT v.username, th.event, th.status," +
+                " th.event_date, th.user_id, th.event_type, t.school_id" +
+                " FROM support.tickets_histo AS th LEFT JOIN support.users AS v ON v.id = th.user_id" +
+                " WHERE th.ticket_id = t.id) AS te), '[]'::json) AS events," +
+                " CASE WHEN i.id IS NULL THEN NULL" +
+                " ELSE json_build_object('id', i.id, 'content', i.content, 'attachments', COALESCE((SELECT json_agg(" +
+                "json_build_object('id', ba.id, 'filename', ba.name, 'content_type', NULL, 'size', ba.size," +
+                " 'created_on', ba.created, 'document_id', ba.document_id, 'gridfs_id', ba.gridfs_id) ORDER BY ba.id)" +
+                " FROM support.bug_tracker_attachments AS ba WHERE ba.issue_id = i.id AND ba.bugtracker = i.bugtracker), '[]'::json))" +
+                " END AS issue FROM support.tickets AS t INNER JOIN support.users AS u ON t.owner = u.id" +
+                " LEFT JOIN support.bug_tracker_issues AS i ON t.id = i.ticket_id" +
+                " WHERE t.id = ? AND (t.owner = ? OR t.school_id = ANY(?::varchar[]))";
+
+        Mockito.doAnswer(invocation -> {
+            ctx.assertEquals(expectedQuery, invocation.getArgument(0));
+            ctx.assertEquals(new JsonArray().add(12).add("userId").add("{\"structureId\"}"), invocation.getArgument(1));
+            reply(invocation.getArgument(2), new JsonArray().add("id").add("comments").add("attachments").add("events").add("issue"),
+                    new JsonArray().add(new JsonArray().add(12)
+                            .add("[{\"id\":1,\"content\":\"comment\",\"owner_name\":\"owner\"}]")
+                            .add("[]")
+                            .add("[{\"event\":\"created\",\"status\":1}]")
+                            .addNull()));
+            return null;
+        }).when(sql).prepared(Mockito.anyString(), Mockito.any(JsonArray.class), Mockito.any(Handler.class));
+
+        zendeskService.getFullTicket(adminUser(DefaultFunctions.ADMIN_LOCAL, Collections.singletonList("structureId")), 12)
+                .onComplete(ctx.asyncAssertSuccess(ticket -> {
+                    ctx.assertEquals("comment", ticket.getJsonArray("comments").getJsonObject(0).getString("content"));
+                    ctx.assertTrue(ticket.getJsonArray("attachments").isEmpty());
+                    ctx.assertEquals("created", ticket.getJsonArray("events").getJsonObject(0).getString("event"));
+                    ctx.assertNull(ticket.getJsonObject("issue"));
+                }));
+    }
+
+    @Test
+    public void testUpdateTicketHistorizesInTransaction(TestContext ctx) {
+        Async async = ctx.async();
+        UserInfos userInfos = user();
+        userInfos.setUsername("username");
+
+        Mockito.doAnswer(invocation -> {
+            JsonArray statements = invocation.getArgument(0);
+            ctx.assertEquals(3, statements.size());
+            ctx.assertEquals(new JsonArray().add("userId").add("username").addNull(),
+                    statements.getJsonObject(0).getJsonArray("values"));
+            ctx.assertEquals("UPDATE support.tickets SET status = ?, event_count = event_count + 1," +
+                    " modified = timezone('UTC', NOW()) WHERE id = ? RETURNING id, modified, subject, owner, school_id, status",
+                    statements.getJsonObject(1).getString("statement"));
+            ctx.assertEquals(new JsonArray().add(3).add(7L), statements.getJsonObject(1).getJsonArray("values"));
+            ctx.assertEquals("INSERT INTO support.tickets_histo (ticket_id, event, status, user_id, event_type)" +
+                    " SELECT id, ?, status, ?, ? FROM support.tickets WHERE id = ?",
+                    statements.getJsonObject(2).getString("statement"));
+            ctx.assertEquals(new JsonArray().add("modification").add("userId").add(2).add(7L),
+                    statements.getJsonObject(2).getJsonArray("values"));
+            async.complete();
+            return null;
+        }).when(sql).transaction(Mockito.any(JsonArray.class), Mockito.any(Handler.class));
+
+        zendeskService.updateTicket("7", new JsonObject().put("status", 3), userInfos, "modification", result -> {});
+        async.awaitSuccess(10000);
+    }
+
+    @Test
+    public void testUpdateTicketStatusHistorizesInOneStatement(TestContext ctx) {
+        Async async = ctx.async();
+        String expectedQuery = "WITH updated_tickets AS ( UPDATE support.tickets SET status = ?, event_count = event_count + 1 " +
+                " WHERE id = ANY(?::int[]) RETURNING id), histo AS (INSERT INTO support.tickets_histo" +
+                " (ticket_id, event, status, user_id, event_type) SELECT id, ?, ?, ?, ? FROM updated_tickets)" +
+                " SELECT u.id FROM updated_tickets AS u" +
+                " WHERE EXISTS (SELECT 1 FROM support.bug_tracker_issues AS i WHERE i.ticket_id = u.id) ORDER BY u.id";
+
+        Mockito.doAnswer(invocation -> {
+            ctx.assertEquals(expectedQuery, invocation.getArgument(0));
+            ctx.assertEquals(new JsonArray().add(4).add("{\"1\",\"2\"}").add("mass modification").add(4).add("userId").add(2),
+                    invocation.getArgument(1));
+            async.complete();
+            return null;
+        }).when(sql).prepared(Mockito.anyString(), Mockito.any(JsonArray.class), Mockito.any(Handler.class));
+
+        this.service.updateTicketStatus(4, Arrays.asList(1, 2), "mass modification", "userId", result -> {});
+        async.awaitSuccess(10000);
+    }
+
+    @Test
+    public void testUpsertOfKnownUserIsSkipped(TestContext ctx) {
+        UserInfos userInfos = user();
+        userInfos.setUsername("username");
+        userInfos.setType("Teacher");
+        List<JsonArray> transactions = new ArrayList<>();
+
+        Mockito.doAnswer(invocation -> {
+            transactions.add(invocation.getArgument(0));
+            Handler<Message<JsonObject>> handler = invocation.getArgument(1);
+            Message<JsonObject> message = Mockito.mock(Message.class);
+            Mockito.when(message.body()).thenReturn(new JsonObject().put("status", "ok").put("results", new JsonArray()));
+            handler.handle(message);
+            return null;
+        }).when(sql).transaction(Mockito.any(JsonArray.class), Mockito.any(Handler.class));
+
+        zendeskService.updateTicket("7", new JsonObject().put("status", 3), userInfos, result -> {});
+        zendeskService.updateTicket("7", new JsonObject().put("status", 4), userInfos, result -> {});
+        userInfos.setUsername("renamed");
+        zendeskService.updateTicket("7", new JsonObject().put("status", 2), userInfos, result -> {});
+
+        String upsert = "INSERT INTO support.users AS u (id, username, profile) VALUES (?, ?, ?)" +
+                " ON CONFLICT (id) DO UPDATE SET username = EXCLUDED.username, profile = COALESCE(EXCLUDED.profile, u.profile)" +
+                " WHERE u.username IS DISTINCT FROM EXCLUDED.username" +
+                " OR (EXCLUDED.profile IS NOT NULL AND u.profile IS DISTINCT FROM EXCLUDED.profile)";
+        ctx.assertEquals(3, transactions.size());
+        ctx.assertEquals(upsert, transactions.get(0).getJsonObject(0).getString("statement"));
+        ctx.assertEquals(new JsonArray().add("userId").add("username").add("Teacher"), transactions.get(0).getJsonObject(0).getJsonArray("values"));
+        ctx.assertEquals(1, transactions.get(1).size());
+        ctx.assertTrue(transactions.get(1).getJsonObject(0).getString("statement").startsWith("UPDATE support.tickets SET status = ?"));
+        ctx.assertEquals(upsert, transactions.get(2).getJsonObject(0).getString("statement"));
+        ctx.assertEquals(new JsonArray().add("userId").add("renamed").add("Teacher"), transactions.get(2).getJsonObject(0).getJsonArray("values"));
+    }
+
+    @Test
+    public void testBackfillShortDescriptionsWithoutBugTracker(TestContext ctx) {
+        Async async = ctx.async();
+        // The service of the setup is built like the ShortDescBackfillWorker builds it
+        String expectedQuery = "UPDATE support.tickets AS t SET short_desc = substring(t.description, 0, 101)" +
+                " FROM (SELECT id FROM support.tickets WHERE short_desc IS NULL AND description IS NOT NULL ORDER BY id LIMIT ?) AS batch" +
+                " WHERE t.id = batch.id";
+
+        Mockito.doAnswer(invocation -> {
+            ctx.assertEquals(expectedQuery, invocation.getArgument(0));
+            ctx.assertEquals(new JsonArray().add(1000), invocation.getArgument(1));
+            async.complete();
+            return null;
+        }).when(sql).prepared(Mockito.anyString(), Mockito.any(JsonArray.class), Mockito.any(Handler.class));
+
+        this.service.backfillShortDescriptions(1000);
+        async.awaitSuccess(10000);
+    }
+
+    @Test
+    public void testBackfillCategoryLabelsUpdatesAndCheckpointsInOneStatement(TestContext ctx) {
+        Async async = ctx.async();
+        String expectedQuery = "WITH job AS (SELECT name, last_id FROM support.backfill_jobs" +
+                " WHERE name = ? AND status = ? FOR UPDATE SKIP LOCKED)," +
+                " batch AS (SELECT t.id, t.category FROM support.tickets AS t, job" +
+                " WHERE t.id > job.last_id AND t.category_label IS NULL ORDER BY t.id LIMIT ?)," +
+                " updated_tickets AS (UPDATE support.tickets AS t SET category_label = l.label FROM batch AS b" +
+                " JOIN (VALUES (?, ?), (?, ?)) AS l (category, label) ON l.category = b.category WHERE t.id = b.id RETURNING t.id)," +
+                " progress AS (UPDATE support.backfill_jobs AS j SET last_id = COALESCE((SELECT max(id) FROM batch), j.last_id)," +
+                " processed = j.processed + (SELECT count(*) FROM updated_tickets), updated = timezone('UTC', NOW())" +
+                " FROM job WHERE j.name = job.name RETURNING j.last_id, j.processed)" +
+                " SELECT (SELECT count(*) FROM batch) AS scanned, p.last_id, p.processed FROM progress AS p";
+
+        Mockito.doAnswer(invocation -> {
+            ctx.assertEquals(expectedQuery, invocation.getArgument(0));
+            ctx.assertEquals(new JsonArray().add("category_label").add("running").add(500).add("/blog").add("Blog")
+                    .add("support.category.other").add("Autre"), invocation.getArgument(1));
+            async.complete();
+            return null;
+        }).when(sql).prepared(Mockito.anyString(), Mockito.any(JsonArray.class), Mockito.any(Handler.class));
+
+        JsonObject categoryLabels = new JsonObject().put("/blog", "Blog").put("support.category.other", "Autre");
+        this.service.backfillCategoryLabels(categoryLabels, 500);
+        async.awaitSuccess(10000);
+    }
+
+    @Test
+    public void testHistoIsInsertedDirectlyWithoutJournal(TestContext ctx) {
+        Async async = ctx.async();
+        Vertx vertx = Vertx.vertx();
+        // The journal is enabled but its worker is not deployed, the event bus answers NO_HANDLERS
+        HistoJournal.init(vertx.eventBus(), new JsonObject().put("histo-journal-enabled", true));
+
+        Mockito.doAnswer(invocation -> {
+            ctx.assertEquals("INSERT INTO support.tickets_histo( ticket_id, event, status, user_id, event_type) " +
+                    " values( ?, ?, ?, ?, ? )", invocation.getArgument(0));
+            ctx.assertEquals(new JsonArray().add(42L).add("created").add(1).add("userId").add(TicketHisto.NEW.eventType()),
+                    invocation.getArgument(1));
+            async.complete();
+            return null;
+        }).when(sql).prepared(Mockito.anyString(), Mockito.any(JsonArray.class), Mockito.any(Handler.class));
+
+        try {
+            this.service.createTicketHisto("42", "created", 1, "userId", TicketHisto.NEW, result -> {});
+            async.awaitSuccess(10000);
+        } finally {
+            HistoJournal.init(vertx.eventBus(), new JsonObject().put("histo-journal-enabled", false));
+            vertx.close();
+        }
+    }
+
+    /**
+     * Service with a bug tracker, reading the mocked sql like the service of the setup
+     */
+    private TicketServiceSql serviceWith(JsonObject config) {
+        TicketServiceSql ticketService = new TicketServiceSqlImpl(BugTracker.ZENDESK, config);
+        Whitebox.setInternalState(ticketService, "sql", sql);
+        return ticketService;
+    }
+
+    /**
+     * User without admin function, member of the given structures
+     */
+    private UserInfos user(String... structures) {
+        UserInfos user = new UserInfos();
+        user.setUserId("userId");
+        user.setStructures(Arrays.asList(structures));
+        user.setFunctions(new HashMap<>());
+        return user;
+    }
+
+    private UserInfos adminUser(String function, List<String> scope) {
+        UserInfos user = new UserInfos();
+        user.setUserId("userId");
+        user.setStructures(scope.isEmpty() ? Collections.singletonList("structureId") : scope);
+        UserInfos.Function adminFunction = new UserInfos.Function();
+        adminFunction.setScope(scope);
+        Map<String, UserInfos.Function> functions = new HashMap<>();
+        functions.put(function, adminFunction);
+        user.setFunctions(functions);
+        return user;
+    }
+
+    private void reply(Handler<Message<JsonObject>> handler, JsonArray fields, JsonArray results) {
+        Message<JsonObject> message = Mockito.mock(Message.class);
+        Mockito.when(message.body()).thenReturn(new JsonObject()
+                .put("status", "ok")
+                .put("fields", fields)
+                .put("results", results));
+        handler.handle(message);
+    }
 }
@@ -0,0 +1,231 @@
+package net.atos.entng.support.services;
+
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import net.atos.entng.support.enums.BugTracker;
+import net.atos.entng.support.helpers.CursorHelper;
+import net.atos.entng.support.services.impl.TicketServiceSqlImpl;
+import org.entcore.common.sql.Sql;
+import org.entcore.common.user.DefaultFunctions;
+import org.entcore.common.user.UserInfos;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.powermock.reflect.Whitebox;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+
+/**
+ * Runs EXPLAIN on the queries built by {@link TicketServiceSqlImpl} against a seeded Postgres database,
+ * and fails when one of them reads a large table with a sequential scan.
+ * Only scoped queries are checked: counting the facets or the fingerprint of every ticket reads the whole table by design.
+ * The suite is skipped when no database is given, see {@link SupportTestDatabase}.
+ */
+public class TicketServiceSqlQueryPlanTest {
+
+    private static final List<String> LARGE_TABLES = Arrays.asList("tickets", "tickets_histo", "comments", "attachments",
+            "bug_tracker_issues");
+
+    private static Connection connection;
+
+    private TicketServiceSql service;
+    private final List<String> queries = new ArrayList<>();
+    private final List<JsonArray> params = new ArrayList<>();
+
+    @BeforeClass
+    public static void setupDatabase() throws SQLException, IOException {
+        connection = SupportTestDatabase.open();
+    }
+
+    @AfterClass
+    public static void closeDatabase() throws SQLException {
+        if (connection != null) {
+            connection.close();
+        }
+    }
+
+    @Before
+    public void setup() {
+        // Queries are only captured, they are run by EXPLAIN in the tests
+        Sql sql = Mockito.mock(Sql.class);
+        Mockito.doAnswer(invocation -> {
+            queries.add(invocation.getArgument(0));
+            params.add(invocation.getArgument(1));
+            return null;
+        }).when(sql).prepared(Mockito.anyString(), Mockito.any(JsonArray.class), Mockito.any(Handler.class));
+        // AUTO runs short searches on the trigram indexes, so that both search plans are checked
+        service = new TicketServiceSqlImpl(BugTracker.ZENDESK, new JsonObject().put("count-estimate-threshold", 0)
+                .put("search-mode", "auto"));
+        Whitebox.setInternalState(service, "sql", sql);
+    }
+
+    @Test
+    public void testListFilteredTicketsOfUser() throws SQLException {
+        UserInfos user = user(null);
+        service.listFilteredTickets(user, 1, Collections.emptyList(), Collections.emptyList(), Collections.emptyList(), true,
+                "modified", "DESC", 25, null, null, null);
+        service.countFilteredTickets(user, Collections.emptyList(), Collections.emptyList(), Collections.emptyList(), true, null);
+        assertNoSeqScan();
+    }
+
+    @Test
+    public void testListFilteredTicketsOfLocalAdmin() throws SQLException {
+        UserInfos user = user(Arrays.asList("school-1", "school-2"));
+        List<String> statuses = Arrays.asList("1", "2");
+        service.listFilteredTickets(user, 2, statuses, Collections.emptyList(), Collections.emptyList(), true,
+                "modified", "DESC", 25, null, null, null);
+        service.listFilteredTickets(user, 1, statuses, Collections.emptyList(), Collections.emptyList(), true,
+                "modified", "DESC", 25, null, CursorHelper.encode("modified", "DESC", "2024-01-01T00:00:00.000", 1000L), null);
+        service.listFilteredTickets(user, 1, statuses, Collections.emptyList(), Collections.emptyList(), true,
+                "profile", "ASC", 25, null, CursorHelper.encode("profile", "ASC", 3, 1000L), null);
+        service.countFilteredTickets(user, statuses, Collections.emptyList(), Collections.emptyList(), true, null);
+        assertNoSeqScan();
+    }
+
+    @Test
+    public void testListFilteredTicketsOfSuperAdminOnStructures() throws SQLException {
+        UserInfos user = user(Collections.emptyList());
+        user.getFunctions().put(DefaultFunctions.SUPER_ADMIN, user.getFunctions().remove(DefaultFunctions.ADMIN_LOCAL));
+        List<String> schools = Collections.singletonList("school-3");
+        service.listFilteredTickets(user, 1, Collections.emptyList(), Collections.emptyList(), schools, false,
+                "id", "ASC", 25, null, null, null);
+        service.countFilteredTickets(user, Collections.emptyList(), Collections.emptyList(), schools, false, null);
+        assertNoSeqScan();
+    }
+
+    @Test
+    public void testSearchTickets() throws SQLException {
+        UserInfos user = user(Arrays.asList("school-1", "school-2"));
+        // Full-text then trigram search
+        service.listFilteredTickets(user, 1, Collections.emptyList(), Collections.emptyList(), Collections.emptyList(), true,
+                null, null, 25, "ref123456", null, null);
+        service.listFilteredTickets(user, 1, Collections.emptyList(), Collections.emptyList(), Collections.emptyList(), true,
+                null, null, 25, "ref12", null, null);
+        service.countFilteredTickets(user, Collections.emptyList(), Collections.emptyList(), Collections.emptyList(), true, "ref12");
+        assertNoSeqScan();
+    }
+
+    @Test
+    public void testListTicketsOfStructure() throws SQLException {
+        UserInfos user = user(Collections.singletonList("school-1"));
+        JsonObject structureChildren = new JsonObject().put("structureIds", new JsonArray().add("school-1"));
+        service.listTickets(user, 1, Collections.singletonList("1"), Collections.emptyList(), "school-1",
+                "modified", "DESC", 25, structureChildren);
+        service.listTickets(user, 1, Collections.emptyList(), Collections.emptyList(), "*",
+                "school_id", "ASC", 25, null);
+        service.countTickets(user, structureChildren);
+        service.getUserTickets(user);
+        assertNoSeqScan();
+    }
+
+    @Test
+    public void testListMyTickets() throws SQLException {
+        UserInfos user = user(null);
+        service.listMyTickets(user, 1, Collections.singletonList("1"), "*", "modified", "DESC", 25, event -> {});
+        service.getMyTicket(user, 42, event -> {});
+        service.getTicket(user, 42, event -> {});
+        assertNoSeqScan();
+    }
+
+    @Test
+    public void testBackfillShortDescriptions() throws SQLException {
+        service.backfillShortDescriptions(1000);
+        assertNoSeqScan();
+    }
+
+    @Test
+    public void testListTicketsChunks() throws SQLException {
+        UserInfos user = user(Arrays.asList("school-1", "school-2"));
+        JsonObject structureChildren = new JsonObject().put("structureIds", new JsonArray().add("school-1"));
+        service.listTicketsChunk(user, Collections.emptyList(), Collections.emptyList(), "*", null, "modified", "DESC", null, 500);
+        service.listTicketsChunk(user, Collections.emptyList(), Collections.emptyList(), "*", null, "modified", "DESC",
+                new JsonObject().put("modified", "2024-01-01T00:00:00.000").put("id", 1000L), 500);
+        service.listTicketsChunk(user, Collections.singletonList("1"), Collections.emptyList(), "school-1", structureChildren,
+                "id", "ASC", new JsonObject().put("id", 1000L), 500);
+        service.listStructureTicketsChunk(Collections.singletonList("school-3"), "ASC", null, 500);
+        service.listStructureTicketsChunk(Collections.singletonList("school-3"), "ASC", new JsonObject().put("id", 1003L), 500);
+        // Export of every ticket, read backwards along the primary key
+        UserInfos superAdmin = user(Collections.emptyList());
+        superAdmin.getFunctions().put(DefaultFunctions.SUPER_ADMIN, superAdmin.getFunctions().remove(DefaultFunctions.ADMIN_LOCAL));
+        service.listTicketsChunk(superAdmin, Collections.emptyList(), Collections.emptyList(), "*", null, "id", "DESC",
+                new JsonObject().put("id", 100000L), 500);
+        assertNoSeqScan();
+    }
+
+    @Test
+    public void testFingerprintAndFacetTickets() throws SQLException {
+        UserInfos user = user(Arrays.asList("school-1", "school-2"));
+        service.fingerprintTickets(user, null);
+        service.fingerprintTickets(user, Collections.singletonList("school-3"));
+        service.fingerprintTickets(user(null), null);
+        service.facetTickets(user, null, true);
+        service.facetTickets(user, Collections.singletonList("school-3"), false);
+        assertNoSeqScan();
+    }
+
+    @Test
+    public void testListEvents() throws SQLException {
+        service.getlistEvents("42");
+        assertNoSeqScan();
+    }
+
+    /**
+     * @param adminScope structures the user administrates, null for a regular user
+     */
+    private UserInfos user(List<String> adminScope) {
+        UserInfos user = new UserInfos();
+        user.setUserId("user-42");
+        user.setUsername("Utilisateur 42");
+        user.setStructures(Arrays.asList("school-42", "school-43"));
+        Map<String, UserInfos.Function> functions = new HashMap<>();
+        if (adminScope != null) {
+            UserInfos.Function function = new UserInfos.Function();
+            function.setScope(adminScope);
+            functions.put(DefaultFunctions.ADMIN_LOCAL, function);
+        }
+        user.setFunctions(functions);
+        return user;
+    }
+
+    private void assertNoSeqScan() throws SQLException {
+        Assert.assertFalse("No query has been built", queries.isEmpty());
+        for (int i = 0; i < queries.size(); i++) {
+            JsonObject plan = explain(queries.get(i), params.get(i));
+            List<String> seqScans = new ArrayList<>();
+            collectSeqScans(plan, seqScans);
+            Assert.assertTrue(String.format("Sequential scan on %s for query %s\n%s", seqScans, queries.get(i), plan.encodePrettily()),
+                    seqScans.isEmpty());
+        }
+    }
+
+    private JsonObject explain(String query, JsonArray values) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("EXPLAIN (FORMAT JSON) " + query)) {
+            for (int i = 0; i < values.size(); i++) {
+                statement.setObject(i + 1, values.getValue(i));
+            }
+            try (ResultSet result = statement.executeQuery()) {
+                Assert.assertTrue(result.next());
+                return new JsonArray(result.getString(1)).getJsonObject(0).getJsonObject("Plan");
+            }
+        }
+    }
+
+    private void collectSeqScans(JsonObject plan, List<String> seqScans) {
+        if ("Seq Scan".equals(plan.getString("Node Type")) && LARGE_TABLES.contains(plan.getString("Relation Name"))) {
+            seqScans.add(plan.getString("Relation Name"));
+        }
+        plan.getJsonArray("Plans", new JsonArray()).stream()
+            .filter(JsonObject.class::isInstance)
+            .map(JsonObject.class::cast)
+            .forEach(child -> collectSeqScans(child, seqScans));
+    }
+}
@@ -0,0 +1,117 @@
+package net.atos.entng.support.services;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Checks the statistics maintained in the database, the ticket counters of migration 037 and the daily statistics of
+ * migration 038, against the tickets and their history.
+ * The suite is skipped when no database is given, see {@link SupportTestDatabase}.
+ */
+public class TicketStatsDbTest {
+
+    // Both ways: missing counters as well as stale or negative ones, a counter left at 0 matches no ticket
+    private static final String COUNTER_DIFFS = "SELECT COUNT(*)" +
+            " FROM (SELECT school_id, status, COUNT(*) AS count FROM support.tickets GROUP BY school_id, status) AS t" +
+            " FULL OUTER JOIN support.ticket_counters AS c ON c.school_id = t.school_id AND c.status = t.status" +
+            " WHERE COALESCE(t.count, 0) <> COALESCE(c.count, 0)";
+
+    private static Connection connection;
+
+    @BeforeClass
+    public static void setupDatabase() throws SQLException, IOException {
+        connection = SupportTestDatabase.open();
+    }
+
+    @AfterClass
+    public static void closeDatabase() throws SQLException {
+        if (connection != null) {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void testTicketCountersMatchSeededTickets() throws SQLException {
+        Assert.assertEquals("Counters differ from the tickets", 0, countCounterDiffs());
+    }
+
+    @Test
+    public void testTicketCountersFollowTickets() throws SQLException {
+        connection.setAutoCommit(false);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("UPDATE support.tickets SET status = 3 WHERE school_id = 'school-7' AND status = 1");
+            statement.execute("UPDATE support.tickets SET school_id = 'school-8' WHERE id IN (7, 507)");
+            statement.execute("DELETE FROM support.tickets_histo WHERE ticket_id = 1007");
+            statement.execute("DELETE FROM support.comments WHERE ticket_id = 1007");
+            statement.execute("DELETE FROM support.attachments WHERE ticket_id = 1007");
+            statement.execute("DELETE FROM support.bug_tracker_issues WHERE ticket_id = 1007");
+            statement.execute("DELETE FROM support.tickets WHERE id = 1007");
+            statement.execute("INSERT INTO support.tickets (owner, subject, description, category, status, school_id)" +
+                    " VALUES ('user-1', 'Sujet', 'Description', 'category-1', 1, 'school-new')");
+            Assert.assertEquals("Counters differ from the tickets", 0, countCounterDiffs());
+        } finally {
+            connection.rollback();
+            connection.setAutoCommit(true);
+        }
+    }
+
+    @Test
+    public void testRefreshDailyStatsCatchesUp() throws SQLException {
+        connection.setAutoCommit(false);
+        try (Statement statement = connection.createStatement()) {
+            long moved;
+            do {
+                try (ResultSet result = statement.executeQuery("SELECT support.refresh_ticket_daily_stats(100000, 'Europe/Paris')")) {
+                    result.next();
+                    moved = result.getLong(1);
+                }
+            } while (moved > 0);
+            try (ResultSet result = statement.executeQuery("SELECT (SELECT COALESCE(SUM(opened), 0) FROM support.ticket_daily_stats)" +
+                    " - (SELECT COUNT(*) FROM support.tickets_histo AS h INNER JOIN support.tickets AS t ON t.id = h.ticket_id" +
+                    " WHERE h.event_type = 1)")) {
+                result.next();
+                Assert.assertEquals("Opened tickets differ from the history", 0, result.getLong(1));
+            }
+        } finally {
+            connection.rollback();
+            connection.setAutoCommit(true);
+        }
+    }
+
+    @Test
+    public void testHistoryKeepsTheScopeOfItsTicketAtWriteTime() throws SQLException {
+        connection.setAutoCommit(false);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("INSERT INTO support.tickets (id, owner, subject, description, category, status, school_id)" +
+                    " VALUES (900001, 'user-1', 'Sujet', 'Description', 'category-1', 1, 'school-before')");
+            statement.execute("INSERT INTO support.tickets_histo (ticket_id, event, status, user_id, event_type)" +
+                    " VALUES (900001, 'created', 1, 'user-1', 1)");
+            statement.execute("UPDATE support.tickets SET school_id = 'school-after', category = 'category-2' WHERE id = 900001");
+            try (ResultSet result = statement.executeQuery("SELECT school_id, category FROM support.tickets_histo" +
+                    " WHERE ticket_id = 900001")) {
+                Assert.assertTrue(result.next());
+                Assert.assertEquals("school-before", result.getString(1));
+                Assert.assertEquals("category-1", result.getString(2));
+            }
+        } finally {
+            connection.rollback();
+            connection.setAutoCommit(true);
+        }
+    }
+
+    private long countCounterDiffs() throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery(COUNTER_DIFFS)) {
+            result.next();
+            return result.getLong(1);
+        }
+    }
+}